@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.benchmark;
+
+import com.mrd.bitlib.bitcoinj.Base58;
+import com.mrd.bitlib.crypto.HdKeyNode;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.util.HashUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base58 encoding of addresses and extended keys, one at a time and in
+ * batches
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Base58Benchmark {
+   private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+   private static final int BATCH_SIZE = 1000;
+
+   private byte[] _addressBytes;
+   private String _address;
+   private byte[][] _batchBytes;
+   private String[] _batch;
+   private HdKeyNode _node;
+   private String _xpub;
+
+   @Setup
+   public void setup() throws Exception {
+      _batchBytes = new byte[BATCH_SIZE][];
+      for (int i = 0; i < BATCH_SIZE; i++) {
+         byte[] hash = HashUtils.addressHash(new byte[]{(byte) i, (byte) (i >> 8)});
+         _batchBytes[i] = Address.fromStandardBytes(hash, NETWORK).getAllAddressBytes();
+      }
+      _batch = Base58.encodeWithChecksum(_batchBytes);
+      _addressBytes = _batchBytes[0];
+      _address = _batch[0];
+      _node = HdKeyNode.fromSeed(HashUtils.sha256("seed".getBytes()).getBytes()).getPublicNode();
+      _xpub = _node.serialize(NETWORK);
+   }
+
+   @Benchmark
+   public String encodeAddress() {
+      return Base58.encodeWithChecksum(_addressBytes);
+   }
+
+   @Benchmark
+   public byte[] decodeAddress() {
+      return Base58.decodeChecked(_address);
+   }
+
+   @Benchmark
+   public String[] encodeAddressBatch() {
+      return Base58.encodeWithChecksum(_batchBytes);
+   }
+
+   @Benchmark
+   public byte[][] decodeAddressBatch() {
+      return Base58.decodeChecked(_batch);
+   }
+
+   @Benchmark
+   public String serializeXpub() throws Exception {
+      return _node.serialize(NETWORK);
+   }
+
+   @Benchmark
+   public HdKeyNode parseXpub() throws Exception {
+      return HdKeyNode.parse(_xpub, NETWORK);
+   }
+}
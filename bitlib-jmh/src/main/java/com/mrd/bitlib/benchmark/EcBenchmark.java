@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.benchmark;
+
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.crypto.PublicKey;
+import com.mrd.bitlib.crypto.ec.EcTools;
+import com.mrd.bitlib.crypto.ec.Parameters;
+import com.mrd.bitlib.crypto.ec.Point;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elliptic curve multiplication, signing and signature verification
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EcBenchmark {
+   private BigInteger _scalar;
+   private Point _point;
+   private InMemoryPrivateKey _privateKey;
+   private PublicKey _publicKey;
+   private Sha256Hash _hash;
+   private byte[] _signature;
+
+   @Setup
+   public void setup() {
+      _scalar = new BigInteger(1, HashUtils.sha256("scalar".getBytes()).getBytes()).mod(Parameters.n);
+      _point = EcTools.multiply(Parameters.G, BigInteger.valueOf(4711));
+      _privateKey = new InMemoryPrivateKey(HashUtils.sha256("private key".getBytes()), true);
+      _publicKey = _privateKey.getPublicKey();
+      _hash = HashUtils.doubleSha256("message".getBytes());
+      _signature = _privateKey.makeStandardBitcoinSignature(_hash);
+   }
+
+   @Benchmark
+   public Point multiplyGenerator() {
+      return EcTools.multiply(Parameters.G, _scalar);
+   }
+
+   @Benchmark
+   public Point multiplyPoint() {
+      return EcTools.multiply(_point, _scalar);
+   }
+
+   @Benchmark
+   public byte[] sign() {
+      return _privateKey.makeStandardBitcoinSignature(_hash);
+   }
+
+   @Benchmark
+   public boolean verify() {
+      return _publicKey.verifyStandardBitcoinSignature(_hash, _signature, true);
+   }
+}
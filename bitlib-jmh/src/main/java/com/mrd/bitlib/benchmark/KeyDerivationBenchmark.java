@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.benchmark;
+
+import com.mrd.bitlib.crypto.Bip38;
+import com.mrd.bitlib.crypto.Bip39;
+import com.mrd.bitlib.crypto.HdKeyNode;
+import com.mrd.bitlib.lambdaworks.crypto.SCrypt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HD key derivation and the key stretching functions used for BIP38 and
+ * BIP39
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyDerivationBenchmark {
+   // The 12 word mnemonic of the BIP39 test vectors
+   private static final List<String> WORDS = Arrays.asList("abandon", "abandon", "abandon", "abandon", "abandon",
+         "abandon", "abandon", "abandon", "abandon", "abandon", "abandon", "about");
+
+   private HdKeyNode _root;
+   private HdKeyNode _account;
+   private int _index;
+
+   @Setup
+   public void setup() throws Exception {
+      _root = HdKeyNode.fromSeed(Bip39.generateSeedFromWordList(WORDS, "").getBip32Seed());
+      _account = _root.createHardenedChildNode(0).createChildNode(0);
+   }
+
+   @Benchmark
+   public HdKeyNode createHardenedChildNode() throws Exception {
+      return _root.createHardenedChildNode(_index++ & 0xFFFF);
+   }
+
+   @Benchmark
+   public HdKeyNode createChildNode() throws Exception {
+      return _account.createChildNode(_index++ & 0xFFFF);
+   }
+
+   @Benchmark
+   public HdKeyNode createPublicChildNode() throws Exception {
+      return _account.getPublicNode().createChildNode(_index++ & 0xFFFF);
+   }
+
+   /**
+    * Scrypt with the parameters of BIP38
+    */
+   @Benchmark
+   public byte[] scryptBip38() throws Exception {
+      return SCrypt.scrypt("passphrase".getBytes(), new byte[]{1, 2, 3, 4}, Bip38.SCRYPT_N, Bip38.SCRYPT_R,
+            Bip38.SCRYPT_P, Bip38.SCRYPT_LENGTH, null);
+   }
+
+   @Benchmark
+   public Bip39.MasterSeed bip39Seed() {
+      return Bip39.generateSeedFromWordList(WORDS, "TREZOR");
+   }
+}
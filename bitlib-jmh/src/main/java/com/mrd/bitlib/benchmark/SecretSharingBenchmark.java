@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.benchmark;
+
+import com.mrd.bitlib.crypto.Gf256;
+import com.mrd.bitlib.crypto.Gf256.Share;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting and combining master seed sized secrets with Shamir's secret
+ * sharing, 3 of 5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecretSharingBenchmark {
+   private static final int BATCH_SIZE = 100;
+
+   private final Gf256 _gf = Gf256.getDefault();
+   private List<byte[]> _secrets;
+   private List<Share> _shares;
+
+   @Setup
+   public void setup() {
+      Random random = new Random(3);
+      _secrets = new ArrayList<>(BATCH_SIZE);
+      for (int i = 0; i < BATCH_SIZE; i++) {
+         byte[] secret = new byte[64];
+         random.nextBytes(secret);
+         _secrets.add(secret);
+      }
+      _shares = _gf.makeShares(_secrets.get(0), 3, 5).subList(1, 4);
+   }
+
+   @Benchmark
+   public List<Share> split() {
+      return _gf.makeShares(_secrets.get(0), 3, 5);
+   }
+
+   @Benchmark
+   public List<List<Share>> splitBatch() {
+      return _gf.makeShares(_secrets, 3, 5);
+   }
+
+   @Benchmark
+   public byte[] combine() {
+      return _gf.combineShares(_shares);
+   }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.benchmark;
+
+import com.mrd.bitlib.StandardTransactionBuilder;
+import com.mrd.bitlib.StandardTransactionBuilder.UnsignedTransaction;
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.crypto.PrivateKeyRing;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.LazyTransaction;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.model.ScriptOutputStandard;
+import com.mrd.bitlib.model.Transaction;
+import com.mrd.bitlib.model.UnspentTransactionOutput;
+import com.mrd.bitlib.util.ByteReader;
+import com.mrd.bitlib.util.HashUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transaction serialization and building on a synthetic wallet. The wallet
+ * has the given number of unspent outputs spread over a few addresses, and
+ * the transaction spends about a third of its balance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionBenchmark {
+   private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+   private static final int ADDRESSES = 20;
+   private static final long FEE_PER_KB = 20000;
+
+   @Param({"10", "100", "1000"})
+   public int unspentCount;
+
+   private PrivateKeyRing _keyRing;
+   private Address[] _addresses;
+   private List<UnspentTransactionOutput> _unspent;
+   private long _amount;
+   private Transaction _transaction;
+   private byte[] _transactionBytes;
+
+   @Setup
+   public void setup() throws Exception {
+      Random random = new Random(4711);
+      _keyRing = new PrivateKeyRing();
+      _addresses = new Address[ADDRESSES];
+      for (int i = 0; i < ADDRESSES; i++) {
+         InMemoryPrivateKey key = new InMemoryPrivateKey(HashUtils.sha256(new byte[]{(byte) i}), true);
+         _keyRing.addPrivateKey(key, NETWORK);
+         _addresses[i] = key.getPublicKey().toAddress(NETWORK);
+      }
+
+      _unspent = new ArrayList<>(unspentCount);
+      long balance = 0;
+      for (int i = 0; i < unspentCount; i++) {
+         long value = 10000 + (long) (random.nextDouble() * 10000000);
+         byte[] txid = new byte[32];
+         random.nextBytes(txid);
+         OutPoint outPoint = new OutPoint(HashUtils.sha256(txid), random.nextInt(4));
+         Address address = _addresses[random.nextInt(ADDRESSES)];
+         _unspent.add(new UnspentTransactionOutput(outPoint, 500000, value,
+               new ScriptOutputStandard(address.getTypeSpecificBytes())));
+         balance += value;
+      }
+      _amount = balance / 3;
+
+      UnsignedTransaction unsigned = createUnsignedTransaction();
+      List<byte[]> signatures = StandardTransactionBuilder.generateSignatures(unsigned.getSignatureInfo(), _keyRing);
+      _transaction = StandardTransactionBuilder.finalizeTransaction(unsigned, signatures);
+      _transactionBytes = _transaction.toBytes();
+   }
+
+   @Benchmark
+   public UnsignedTransaction createUnsignedTransaction() throws Exception {
+      StandardTransactionBuilder builder = new StandardTransactionBuilder(NETWORK);
+      builder.addOutput(_addresses[0], _amount);
+      return builder.createUnsignedTransaction(_unspent, _addresses[1], _keyRing, NETWORK, FEE_PER_KB);
+   }
+
+   @Benchmark
+   public Transaction parse() throws Exception {
+      return Transaction.fromByteReader(new ByteReader(_transactionBytes));
+   }
+
+   @Benchmark
+   public Transaction parseAndHash() throws Exception {
+      Transaction transaction = Transaction.fromByteReader(new ByteReader(_transactionBytes));
+      transaction.getId();
+      return transaction;
+   }
+
+   @Benchmark
+   public LazyTransaction parseLazilyAndHash() throws Exception {
+      LazyTransaction transaction = LazyTransaction.fromBytes(_transactionBytes);
+      transaction.getId();
+      return transaction;
+   }
+
+   @Benchmark
+   public byte[] serialize() {
+      return _transaction.toBytes();
+   }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib;
+
+import com.mrd.bitlib.StandardTransactionBuilder.CoinSelector;
+import com.mrd.bitlib.StandardTransactionBuilder.InsufficientFundsException;
+import com.mrd.bitlib.model.ScriptOutputStandard;
+import com.mrd.bitlib.model.UnspentTransactionOutput;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.mrd.bitlib.StandardTransactionBuilder.MAX_INPUT_SIZE;
+import static com.mrd.bitlib.StandardTransactionBuilder.estimateFee;
+import static com.mrd.bitlib.TransactionUtils.MINIMUM_OUTPUT_VALUE;
+
+/**
+ * The coin selection strategies for {@link StandardTransactionBuilder}.
+ * <p>
+ * Only outputs with standard scripts are spent. Apart from FIFO, the
+ * strategies sort the candidates by value once and work on a primitive array
+ * of their effective values, the value minus the fee to spend the output.
+ */
+public class CoinSelectors {
+   /**
+    * Spend the oldest outputs first, then drop the smallest ones that are not
+    * needed
+    */
+   public static final CoinSelector FIFO = new FifoCoinSelector();
+
+   /**
+    * Search for a set of outputs that pays the outputs and the fee without a
+    * change output, with a time budget of a few milliseconds. Falls back to
+    * {@link #KNAPSACK} if there is no such set.
+    */
+   public static final CoinSelector BRANCH_AND_BOUND = new BranchAndBoundCoinSelector(2, TimeUnit.MILLISECONDS);
+
+   /**
+    * Spend the smallest single output that pays for everything, or else the
+    * largest outputs until they pay for everything, replacing the last one
+    * with the smallest output that still does
+    */
+   public static final CoinSelector KNAPSACK = new KnapsackCoinSelector();
+
+   /**
+    * Spend all outputs that are worth more than the fee to spend them, to
+    * merge many small outputs into one while fees are low
+    */
+   public static final CoinSelector CONSOLIDATE = new ConsolidatingCoinSelector();
+
+   public static final CoinSelector DEFAULT = BRANCH_AND_BOUND;
+
+   private static final Comparator<UnspentTransactionOutput> LARGEST_FIRST = new Comparator<UnspentTransactionOutput>() {
+      @Override
+      public int compare(UnspentTransactionOutput o1, UnspentTransactionOutput o2) {
+         return o1.value < o2.value ? 1 : (o1.value == o2.value ? 0 : -1);
+      }
+   };
+
+   private CoinSelectors() {
+   }
+
+   /**
+    * Get the fee for a transaction spending outputs worth found, including a
+    * change output if the change is large enough to get one
+    */
+   static long getFee(int inputs, long found, long outputSum, int outputCount, long feeSatPerKb) {
+      long fee = estimateFee(inputs, outputCount, feeSatPerKb);
+      if (found - outputSum - fee >= MINIMUM_OUTPUT_VALUE) {
+         fee = estimateFee(inputs, outputCount + 1, feeSatPerKb);
+      }
+      return fee;
+   }
+
+   private static boolean isFunded(int inputs, long found, long outputSum, int outputCount, long feeSatPerKb) {
+      return found >= outputSum + getFee(inputs, found, outputSum, outputCount, feeSatPerKb);
+   }
+
+   /**
+    * The standard outputs worth more than the fee to spend them, sorted from
+    * largest to smallest
+    */
+   private static List<UnspentTransactionOutput> getCandidates(List<UnspentTransactionOutput> unspent,
+                                                                long inputFee) {
+      List<UnspentTransactionOutput> candidates = new ArrayList<>(unspent.size());
+      for (UnspentTransactionOutput output : unspent) {
+         if (output.script instanceof ScriptOutputStandard && output.value > inputFee) {
+            candidates.add(output);
+         }
+      }
+      Collections.sort(candidates, LARGEST_FIRST);
+      return candidates;
+   }
+
+   private static long getInputFee(long feeSatPerKb) {
+      return (MAX_INPUT_SIZE * feeSatPerKb + 999) / 1000;
+   }
+
+   private static InsufficientFundsException insufficientFunds(int inputs, long outputSum, int outputCount,
+                                                               long feeSatPerKb) {
+      return new InsufficientFundsException(outputSum, estimateFee(inputs, outputCount, feeSatPerKb));
+   }
+
+   private static class FifoCoinSelector implements CoinSelector {
+      @Override
+      public List<UnspentTransactionOutput> select(List<UnspentTransactionOutput> unspent, long outputSum,
+                                                   int outputCount, long feeSatPerKb)
+            throws InsufficientFundsException {
+         // Make a copy so we can mutate the list
+         List<UnspentTransactionOutput> remaining = new LinkedList<>(unspent);
+         List<UnspentTransactionOutput> allFunding = new ArrayList<>();
+         long feeSat = estimateFee(remaining.size(), 1, feeSatPerKb);
+         long foundSat = 0;
+         while (foundSat < feeSat + outputSum) {
+            UnspentTransactionOutput unspentTransactionOutput = extractOldest(remaining);
+            if (unspentTransactionOutput == null) {
+               // We do not have enough funds
+               throw new InsufficientFundsException(outputSum, feeSat);
+            }
+            foundSat += unspentTransactionOutput.value;
+            allFunding.add(unspentTransactionOutput);
+            feeSat = getFee(allFunding.size(), foundSat, outputSum, outputCount, feeSatPerKb);
+         }
+         return pruneRedundantOutputs(allFunding, feeSat + outputSum);
+      }
+
+      private UnspentTransactionOutput extractOldest(List<UnspentTransactionOutput> unspent) {
+         // find the "oldest" output
+         int minHeight = Integer.MAX_VALUE;
+         UnspentTransactionOutput oldest = null;
+         for (UnspentTransactionOutput output : unspent) {
+            if (!(output.script instanceof ScriptOutputStandard)) {
+               // only look for standard scripts
+               continue;
+            }
+
+            // Unconfirmed outputs have height = -1 -> change this to Int.MAX-1, so that we
+            // choose them as the last possible option
+            int height = output.height > 0 ? output.height : Integer.MAX_VALUE - 1;
+
+            if (height < minHeight) {
+               minHeight = height;
+               oldest = output;
+            }
+         }
+         if (oldest == null) {
+            // There were no outputs
+            return null;
+         }
+         unspent.remove(oldest);
+         return oldest;
+      }
+
+      /**
+       * Greedy picks the biggest UTXOs until the outputSum is met.
+       * @param funding UTXO list in any order
+       * @param outputSum amount to spend
+       * @return shuffled list of UTXOs
+       */
+      private List<UnspentTransactionOutput> pruneRedundantOutputs(List<UnspentTransactionOutput> funding,
+                                                                   long outputSum) {
+         List<UnspentTransactionOutput> largestToSmallest = new ArrayList<>(funding);
+         Collections.sort(largestToSmallest, LARGEST_FIRST);
+
+         long target = 0;
+         for (int i = 0; i < largestToSmallest.size(); i++) {
+            target += largestToSmallest.get(i).value;
+            if (target >= outputSum) {
+               List<UnspentTransactionOutput> ret = new ArrayList<>(largestToSmallest.subList(0, i + 1));
+               Collections.shuffle(ret);
+               return ret;
+            }
+         }
+         return largestToSmallest;
+      }
+   }
+
+   /**
+    * Depth first search over the candidates from largest to smallest, deciding
+    * to spend or skip one at a time. Branches that cannot reach the target any
+    * more, or that overshoot it by enough to need a change output, are cut.
+    * Of the sets found within the tries and the time budget, the one with the
+    * least excess is used.
+    */
+   static class BranchAndBoundCoinSelector implements CoinSelector {
+      private static final int MAX_TRIES = 100000;
+      // how often to look at the clock
+      private static final int CLOCK_INTERVAL = 1024;
+
+      private final long _budgetNanos;
+
+      BranchAndBoundCoinSelector(long budget, TimeUnit unit) {
+         _budgetNanos = unit.toNanos(budget);
+      }
+
+      @Override
+      public List<UnspentTransactionOutput> select(List<UnspentTransactionOutput> unspent, long outputSum,
+                                                   int outputCount, long feeSatPerKb)
+            throws InsufficientFundsException {
+         long inputFee = getInputFee(feeSatPerKb);
+         List<UnspentTransactionOutput> candidates = getCandidates(unspent, inputFee);
+         int n = candidates.size();
+         long[] values = new long[n];
+         // remaining[i] is the sum of the effective values from i to the end
+         long[] remaining = new long[n + 1];
+         for (int i = n - 1; i >= 0; i--) {
+            values[i] = candidates.get(i).value - inputFee;
+            remaining[i] = remaining[i + 1] + values[i];
+         }
+         long target = outputSum + estimateFee(0, outputCount, feeSatPerKb);
+         // anything from here on would pay for a change output
+         long limit = target + MINIMUM_OUTPUT_VALUE - 1;
+
+         boolean[] selected = new boolean[n];
+         boolean[] best = null;
+         long bestExcess = Long.MAX_VALUE;
+         long current = 0;
+         int depth = 0;
+         long deadline = System.nanoTime() + _budgetNanos;
+         if (remaining[0] >= target) {
+            for (int tries = 0; tries < MAX_TRIES; tries++) {
+               if (tries % CLOCK_INTERVAL == CLOCK_INTERVAL - 1 && System.nanoTime() > deadline) {
+                  break;
+               }
+               boolean backtrack;
+               if (current + remaining[depth] < target || current > limit) {
+                  backtrack = true;
+               } else if (current >= target) {
+                  long excess = current - target;
+                  if (excess < bestExcess && isNoChangeSelection(candidates, selected, depth, outputSum,
+                        outputCount, feeSatPerKb)) {
+                     best = selected.clone();
+                     bestExcess = excess;
+                     if (excess == 0) {
+                        break;
+                     }
+                  }
+                  backtrack = true;
+               } else {
+                  backtrack = false;
+               }
+
+               if (backtrack) {
+                  // Skip the last candidate we spent and continue after it
+                  depth--;
+                  while (depth >= 0 && !selected[depth]) {
+                     depth--;
+                  }
+                  if (depth < 0) {
+                     // all combinations tried
+                     break;
+                  }
+                  selected[depth] = false;
+                  current -= values[depth];
+                  depth++;
+               } else {
+                  selected[depth] = true;
+                  current += values[depth];
+                  depth++;
+               }
+            }
+         }
+
+         if (best == null) {
+            return KNAPSACK.select(unspent, outputSum, outputCount, feeSatPerKb);
+         }
+         List<UnspentTransactionOutput> funding = new ArrayList<>();
+         for (int i = 0; i < n; i++) {
+            if (best[i]) {
+               funding.add(candidates.get(i));
+            }
+         }
+         return funding;
+      }
+
+      /**
+       * The effective values only approximate the fee, so check the selection
+       * with the exact fee estimation
+       */
+      private boolean isNoChangeSelection(List<UnspentTransactionOutput> candidates, boolean[] selected, int depth,
+                                          long outputSum, int outputCount, long feeSatPerKb) {
+         int inputs = 0;
+         long found = 0;
+         for (int i = 0; i < depth; i++) {
+            if (selected[i]) {
+               inputs++;
+               found += candidates.get(i).value;
+            }
+         }
+         long fee = estimateFee(inputs, outputCount, feeSatPerKb);
+         long change = found - outputSum - fee;
+         return change >= 0 && change < MINIMUM_OUTPUT_VALUE;
+      }
+   }
+
+   private static class KnapsackCoinSelector implements CoinSelector {
+      @Override
+      public List<UnspentTransactionOutput> select(List<UnspentTransactionOutput> unspent, long outputSum,
+                                                   int outputCount, long feeSatPerKb)
+            throws InsufficientFundsException {
+         List<UnspentTransactionOutput> candidates = getCandidates(unspent, getInputFee(feeSatPerKb));
+         int n = candidates.size();
+
+         // The smallest single output that pays for everything
+         for (int i = n - 1; i >= 0; i--) {
+            if (isFunded(1, candidates.get(i).value, outputSum, outputCount, feeSatPerKb)) {
+               return new ArrayList<>(candidates.subList(i, i + 1));
+            }
+         }
+
+         // The largest outputs until they pay for everything
+         long found = 0;
+         for (int last = 0; last < n; last++) {
+            found += candidates.get(last).value;
+            if (isFunded(last + 1, found, outputSum, outputCount, feeSatPerKb)) {
+               List<UnspentTransactionOutput> funding = new ArrayList<>(candidates.subList(0, last + 1));
+               // Swap the last output for the smallest one that does as well
+               long withoutLast = found - candidates.get(last).value;
+               for (int i = n - 1; i > last; i--) {
+                  if (isFunded(last + 1, withoutLast + candidates.get(i).value, outputSum, outputCount,
+                        feeSatPerKb)) {
+                     funding.set(last, candidates.get(i));
+                     break;
+                  }
+               }
+               return funding;
+            }
+         }
+         throw insufficientFunds(n, outputSum, outputCount, feeSatPerKb);
+      }
+   }
+
+   private static class ConsolidatingCoinSelector implements CoinSelector {
+      @Override
+      public List<UnspentTransactionOutput> select(List<UnspentTransactionOutput> unspent, long outputSum,
+                                                   int outputCount, long feeSatPerKb)
+            throws InsufficientFundsException {
+         List<UnspentTransactionOutput> candidates = getCandidates(unspent, getInputFee(feeSatPerKb));
+         long found = 0;
+         for (UnspentTransactionOutput output : candidates) {
+            found += output.value;
+         }
+         if (!isFunded(candidates.size(), found, outputSum, outputCount, feeSatPerKb)) {
+            throw insufficientFunds(candidates.size(), outputSum, outputCount, feeSatPerKb);
+         }
+         return candidates;
+      }
+   }
+}
@@ -21,15 +21,12 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
-import com.google.common.collect.Ordering;
 import com.mrd.bitlib.crypto.BitcoinSigner;
 import com.mrd.bitlib.crypto.IPrivateKeyRing;
 import com.mrd.bitlib.crypto.IPublicKeyRing;
 import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.model.*;
-import com.mrd.bitlib.util.ByteWriter;
 import com.mrd.bitlib.util.CoinUtil;
-import com.mrd.bitlib.util.HashUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 
 import java.io.Serializable;
@@ -129,6 +126,7 @@ public class StandardTransactionBuilder {
 
          // Create transaction with valid outputs and empty inputs
          Transaction transaction = new Transaction(1, inputs, _outputs, getLockTime(), false);
+         SigHashCalculator sigHashCalculator = new SigHashCalculator(transaction);
 
          for (int i = 0; i < _funding.length; i++) {
             UnspentTransactionOutput utxo = _funding[i];
@@ -149,14 +147,9 @@ public class StandardTransactionBuilder {
                throw new RuntimeException("Public key not found");
             }
 
-            // Set the input script to the funding output script
-            inputs[i].script = ScriptInput.fromOutputScript(_funding[i].script);
-
-            // Calculate the transaction hash that has to be signed
-            Sha256Hash hash = hashTransaction(transaction);
-
-            // Set the input to the empty script again
-            inputs[i] = new TransactionInput(_funding[i].outPoint, ScriptInput.EMPTY);
+            // Calculate the transaction hash that has to be signed, with the
+            // funding output script in place of the input script
+            Sha256Hash hash = sigHashCalculator.getLegacySigHash(i, utxo.script.getScriptBytes());
 
             _signingRequests[i] = new SigningRequest(publicKey, hash);
          }
@@ -297,12 +290,25 @@ public class StandardTransactionBuilder {
                                                         Address changeAddress, IPublicKeyRing keyRing,
                                                         NetworkParameters network, long minerFeeToUse)
        throws InsufficientFundsException, UnableToBuildTransactionException {
-      // Make a copy so we can mutate the list
-      List<UnspentTransactionOutput> unspent = new LinkedList<>(inventory);
-      CoinSelector coinSelector = new FifoCoinSelector(minerFeeToUse, unspent);
-      long fee = coinSelector.getFee();
-      long outputSum = coinSelector.getOutputSum();
-      List<UnspentTransactionOutput> funding = pruneRedundantOutputs(coinSelector.getFundings(), fee + outputSum);
+      return createUnsignedTransaction(inventory, changeAddress, keyRing, network, minerFeeToUse,
+          CoinSelectors.DEFAULT);
+   }
+
+   /**
+    * Create an unsigned transaction and automatically calculate the miner fee, selecting the funding with the given
+    * strategy.
+    *
+    * @param coinSelector The strategy that selects the funding from the inventory, see {@link CoinSelectors}
+    * @see #createUnsignedTransaction(Collection, Address, IPublicKeyRing, NetworkParameters, long)
+    */
+   public UnsignedTransaction createUnsignedTransaction(Collection<UnspentTransactionOutput> inventory,
+                                                        Address changeAddress, IPublicKeyRing keyRing,
+                                                        NetworkParameters network, long minerFeeToUse,
+                                                        CoinSelector coinSelector)
+       throws InsufficientFundsException, UnableToBuildTransactionException {
+      long outputSum = outputSum();
+      List<UnspentTransactionOutput> funding = new ArrayList<>(coinSelector.select(
+          new ArrayList<>(inventory), outputSum, _outputs.size(), minerFeeToUse));
       boolean needChangeOutputInEstimation = needChangeOutputInEstimation(funding, outputSum, minerFeeToUse);
 
       // the number of inputs might have changed - recalculate the fee
@@ -310,7 +316,7 @@ public class StandardTransactionBuilder {
       if (needChangeOutputInEstimation) {
          outputsSizeInFeeEstimation += 1;
       }
-      fee = estimateFee(funding.size(), outputsSizeInFeeEstimation, minerFeeToUse);
+      long fee = estimateFee(funding.size(), outputsSizeInFeeEstimation, minerFeeToUse);
 
       long found = 0;
       for (UnspentTransactionOutput output : funding) {
@@ -383,34 +389,6 @@ public class StandardTransactionBuilder {
    }
 
 
-   /**
-    * Greedy picks the biggest UTXOs until the outputSum is met.
-    * @param funding UTXO list in any order
-    * @param outputSum amount to spend
-    * @return shuffled list of UTXOs
-    */
-   private List<UnspentTransactionOutput> pruneRedundantOutputs(List<UnspentTransactionOutput> funding, long outputSum) {
-      List<UnspentTransactionOutput> largestToSmallest = Ordering.natural().reverse().onResultOf(new Function<UnspentTransactionOutput, Comparable>() {
-         @Override
-         public Comparable apply(UnspentTransactionOutput input) {
-            return input.value;
-         }
-      }).sortedCopy(funding);
-
-      long target = 0;
-      for (int i = 0; i < largestToSmallest.size(); i++) {
-         UnspentTransactionOutput output = largestToSmallest.get(i);
-         target += output.value;
-         if (target >= outputSum) {
-
-            List<UnspentTransactionOutput> ret = largestToSmallest.subList(0, i + 1);
-            Collections.shuffle(ret);
-            return ret;
-         }
-      }
-      return largestToSmallest;
-   }
-
    @VisibleForTesting
    Address getRichest(Collection<UnspentTransactionOutput> unspent, final NetworkParameters network) {
       Preconditions.checkArgument(!unspent.isEmpty());
@@ -461,33 +439,6 @@ public class StandardTransactionBuilder {
       return new Transaction(1, inputs, unsigned._outputs, unsigned.getLockTime(), false);
    }
 
-   private UnspentTransactionOutput extractOldest(Collection<UnspentTransactionOutput> unspent) {
-      // find the "oldest" output
-      int minHeight = Integer.MAX_VALUE;
-      UnspentTransactionOutput oldest = null;
-      for (UnspentTransactionOutput output : unspent) {
-         if (!(output.script instanceof ScriptOutputStandard)) {
-            // only look for standard scripts
-            continue;
-         }
-
-         // Unconfirmed outputs have height = -1 -> change this to Int.MAX-1, so that we
-         // choose them as the last possible option
-         int height = output.height > 0 ? output.height : Integer.MAX_VALUE - 1;
-
-         if (height < minHeight) {
-            minHeight = height;
-            oldest = output;
-         }
-      }
-      if (oldest == null) {
-         // There were no outputs
-         return null;
-      }
-      unspent.remove(oldest);
-      return oldest;
-   }
-
    private long outputSum() {
       long sum = 0;
       for (TransactionOutput output : _outputs) {
@@ -496,18 +447,6 @@ public class StandardTransactionBuilder {
       return sum;
    }
 
-   private static Sha256Hash hashTransaction(Transaction t) {
-      ByteWriter writer = new ByteWriter(1024);
-      t.toByteWriter(writer);
-      // We also have to write a hash type.
-      int hashType = 1;
-      writer.putIntLE(hashType);
-      // Note that this is NOT reversed to ensure it will be signed
-      // correctly. If it were to be printed out
-      // however then we would expect that it is IS reversed.
-      return HashUtils.doubleSha256(writer.toBytes());
-   }
-
    /**
     * Estimate the size of a transaction by taking the number of inputs and outputs into account. This allows us to
     * give a good estimate of the final transaction size, and determine whether out fee size is large enough.
@@ -542,52 +481,21 @@ public class StandardTransactionBuilder {
       return (long) (txSizeKb * minerFeePerKb);
    }
 
-   private interface CoinSelector {
-      List<UnspentTransactionOutput> getFundings();
-      long getFee();
-      long getOutputSum();
-   }
-
-   private class FifoCoinSelector implements CoinSelector {
-      private List<UnspentTransactionOutput> allFunding;
-      private long feeSat;
-      private long outputSum;
-
-      public FifoCoinSelector(long feeSatPerKb, List<UnspentTransactionOutput> unspent)
-          throws InsufficientFundsException {
-         // Find the funding for this transaction
-         allFunding = new LinkedList<>();
-         feeSat = estimateFee(unspent.size(), 1, feeSatPerKb);
-         outputSum = outputSum();
-         long foundSat = 0;
-         while (foundSat < feeSat + outputSum) {
-            UnspentTransactionOutput unspentTransactionOutput = extractOldest(unspent);
-            if (unspentTransactionOutput == null) {
-               // We do not have enough funds
-               throw new InsufficientFundsException(outputSum, feeSat);
-            }
-            foundSat += unspentTransactionOutput.value;
-            allFunding.add(unspentTransactionOutput);
-            feeSat = estimateFee(allFunding.size(),
-                needChangeOutputInEstimation(allFunding, outputSum, feeSatPerKb)
-                    ? _outputs.size() + 1
-                    : _outputs.size(), feeSatPerKb);
-         }
-      }
-
-      @Override
-      public List<UnspentTransactionOutput> getFundings() {
-         return allFunding;
-      }
-
-      @Override
-      public long getFee() {
-         return feeSat;
-      }
-
-      @Override
-      public long getOutputSum() {
-         return outputSum;
-      }
+   /**
+    * A strategy to select the unspent outputs that fund a transaction
+    */
+   public interface CoinSelector {
+      /**
+       * Select the outputs to spend.
+       *
+       * @param unspent     the outputs that may be spent
+       * @param outputSum   the sum of the outputs of the transaction
+       * @param outputCount the number of outputs of the transaction, not counting a change output
+       * @param feeSatPerKb the miner fee in sat to pay for every kilobytes of transaction size
+       * @return the outputs that pay for the outputs and the fee
+       * @throws InsufficientFundsException if the unspent outputs do not suffice
+       */
+      List<UnspentTransactionOutput> select(List<UnspentTransactionOutput> unspent, long outputSum,
+                                            int outputCount, long feeSatPerKb) throws InsufficientFundsException;
    }
 }
@@ -23,9 +23,7 @@ package com.mrd.bitlib.bitcoinj;
 import com.mrd.bitlib.util.HashUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 
-import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
-import java.util.Arrays;
 
 /**
  * <p>
@@ -62,45 +60,81 @@ public class Base58 {
       }
    }
 
+   // Numbers are converted in limbs instead of single digits. When encoding
+   // a limb holds 5 base58 digits, when decoding it holds 4 bytes. Both fit
+   // into an int, and a limb times the multiplier of a step fits into a long.
+   private static final int DIGITS_PER_LIMB = 5;
+   private static final int[] POWERS_OF_58 = new int[DIGITS_PER_LIMB + 1];
+   static {
+      POWERS_OF_58[0] = 1;
+      for (int i = 1; i < POWERS_OF_58.length; i++) {
+         POWERS_OF_58[i] = POWERS_OF_58[i - 1] * 58;
+      }
+   }
+   private static final int LIMB_BASE = POWERS_OF_58[DIGITS_PER_LIMB];
+
    /** Encodes the given bytes in base58. No checksum is appended. */
    public static String encode(byte[] input) {
-      if (input.length == 0) {
+      return encode(input, 0, input.length, null);
+   }
+
+   /**
+    * Encode a range of bytes. The scratch array is used for the limbs if it
+    * is large enough.
+    */
+   private static String encode(byte[] input, int offset, int length, int[] scratch) {
+      if (length == 0) {
          return "";
       }
-      input = copyOfRange(input, 0, input.length);
+      int end = offset + length;
       // Count leading zeroes.
       int zeroCount = 0;
-      while (zeroCount < input.length && input[zeroCount] == 0) {
+      while (zeroCount < length && input[offset + zeroCount] == 0) {
          ++zeroCount;
       }
-      // The actual encoding.
-      byte[] temp = new byte[input.length * 2];
-      int j = temp.length;
 
-      int startAt = zeroCount;
-      while (startAt < input.length) {
-         byte mod = divmod58(input, startAt);
-         if (input[startAt] == 0) {
-            ++startAt;
+      // Feed the bytes 4 at a time into little endian base 58^5 limbs. The
+      // first step takes the bytes that are left over.
+      int[] limbs = limbs(scratch, length / 3 + 2);
+      int used = 0;
+      int position = offset + zeroCount;
+      int step = (end - position) % 4 == 0 ? 4 : (end - position) % 4;
+      while (position < end) {
+         long carry = 0;
+         for (int i = 0; i < step; i++) {
+            carry = carry << 8 | input[position++] & 0xFF;
          }
-         temp[--j] = (byte) ALPHABET[mod];
+         int shift = step * 8;
+         for (int j = 0; j < used; j++) {
+            long t = ((long) limbs[j] << shift) + carry;
+            limbs[j] = (int) (t % LIMB_BASE);
+            carry = t / LIMB_BASE;
+         }
+         while (carry != 0) {
+            limbs[used++] = (int) (carry % LIMB_BASE);
+            carry /= LIMB_BASE;
+         }
+         step = 4;
       }
 
-      // Strip extra '1' if there are some after decoding.
-      while (j < temp.length && temp[j] == ALPHABET[0]) {
+      char[] output = new char[zeroCount + used * DIGITS_PER_LIMB];
+      int j = output.length;
+      for (int i = 0; i < used; i++) {
+         int limb = limbs[i];
+         for (int k = 0; k < DIGITS_PER_LIMB; k++) {
+            output[--j] = ALPHABET[limb % 58];
+            limb /= 58;
+         }
+      }
+      // Strip the leading zero digits of the most significant limb, and add
+      // as many leading '1' as there were leading zeros.
+      while (j < output.length && output[j] == ALPHABET[0]) {
          ++j;
       }
-      // Add as many leading '1' as there were leading zeros.
       while (--zeroCount >= 0) {
-         temp[--j] = (byte) ALPHABET[0];
-      }
-
-      byte[] output = copyOfRange(temp, j, temp.length);
-      try {
-         return new String(output, "US-ASCII");
-      } catch (UnsupportedEncodingException e) {
-         throw new RuntimeException(e); // Cannot happen.
+         output[--j] = ALPHABET[0];
       }
+      return new String(output, j, output.length - j);
    }
 
    /**
@@ -108,62 +142,102 @@ public class Base58 {
     * address encoding
     */
    public static String encodeWithChecksum(byte[] input) {
-      byte[] b = new byte[input.length + 4];
-      System.arraycopy(input, 0, b, 0, input.length);
-      Sha256Hash checkSum = HashUtils.doubleSha256(b, 0, input.length);
-      System.arraycopy(checkSum.getBytes(), 0, b, input.length, 4);
-      return encode(b);
+      byte[] b = new byte[input.length + Sha256Hash.HASH_LENGTH];
+      return encodeWithChecksum(input, b, null);
+   }
+
+   /**
+    * Encode many arrays of bytes as Base58 with an appended checksum. Scratch
+    * space is shared, so this is faster than encoding one at a time.
+    */
+   public static String[] encodeWithChecksum(byte[][] inputs) {
+      int maxLength = 0;
+      for (byte[] input : inputs) {
+         maxLength = Math.max(maxLength, input.length);
+      }
+      byte[] buffer = new byte[maxLength + Sha256Hash.HASH_LENGTH];
+      int[] limbs = new int[(maxLength + 4) / 3 + 2];
+      String[] encoded = new String[inputs.length];
+      for (int i = 0; i < inputs.length; i++) {
+         encoded[i] = encodeWithChecksum(inputs[i], buffer, limbs);
+      }
+      return encoded;
+   }
+
+   private static String encodeWithChecksum(byte[] input, byte[] buffer, int[] limbs) {
+      System.arraycopy(input, 0, buffer, 0, input.length);
+      // The whole hash is written, of which the first 4 bytes get encoded
+      HashUtils.doubleSha256(buffer, 0, input.length, buffer, input.length);
+      return encode(buffer, 0, input.length + 4, limbs);
    }
-   
+
    public static byte[] decode(String input) {
+      return decode(input, null);
+   }
 
+   private static byte[] decode(String input, int[] scratch) {
       if (input.length() == 0) {
          return new byte[0];
       }
       // Get rid of any UTF-8 BOM marker. Those should not be present, but might have slipped in nonetheless,
       // since Java does not automatically discard them when reading a stream. Only remove it, if at the beginning
       // of the string. Otherwise, something is probably seriously wrong.
-      if (input.charAt(0) == '\uFEFF') input = input.substring(1);
-
-      byte[] input58 = new byte[input.length()];
-      // Transform the String to a base58 byte sequence
-      for (int i = 0; i < input.length(); ++i) {
-         char c = input.charAt(i);
+      int start = input.charAt(0) == '\uFEFF' ? 1 : 0;
+      int end = input.length();
 
-         int digit58 = -1;
-         if (c >= 0 && c < 128) {
-            digit58 = INDEXES[c];
-         }
-         if (digit58 < 0) {
-            return null;
-         }
-
-         input58[i] = (byte) digit58;
-      }
       // Count leading zeroes
       int zeroCount = 0;
-      while (zeroCount < input58.length && input58[zeroCount] == 0) {
+      while (start + zeroCount < end && input.charAt(start + zeroCount) == ALPHABET[0]) {
          ++zeroCount;
       }
-      // The encoding
-      byte[] temp = new byte[input.length()];
-      int j = temp.length;
 
-      int startAt = zeroCount;
-      while (startAt < input58.length) {
-         byte mod = divmod256(input58, startAt);
-         if (input58[startAt] == 0) {
-            ++startAt;
+      // Feed the digits 5 at a time into little endian base 2^32 limbs. The
+      // first step takes the digits that are left over.
+      int[] limbs = limbs(scratch, (end - start) / 5 + 2);
+      int used = 0;
+      int position = start + zeroCount;
+      int step = (end - position) % DIGITS_PER_LIMB == 0 ? DIGITS_PER_LIMB : (end - position) % DIGITS_PER_LIMB;
+      while (position < end) {
+         long carry = 0;
+         for (int i = 0; i < step; i++) {
+            char c = input.charAt(position++);
+            int digit58 = c < 128 ? INDEXES[c] : -1;
+            if (digit58 < 0) {
+               return null;
+            }
+            carry = carry * 58 + digit58;
          }
+         long multiplier = POWERS_OF_58[step];
+         for (int j = 0; j < used; j++) {
+            long t = (limbs[j] & 0xFFFFFFFFL) * multiplier + carry;
+            limbs[j] = (int) t;
+            carry = t >>> 32;
+         }
+         while (carry != 0) {
+            limbs[used++] = (int) carry;
+            carry >>>= 32;
+         }
+         step = DIGITS_PER_LIMB;
+      }
 
-         temp[--j] = mod;
+      // Do no add extra leading zeroes, skip the zero bytes of the most
+      // significant limb.
+      int significant = used * 4;
+      while (significant > 0 && (limbs[(significant - 1) / 4] >>> ((significant - 1) % 4 * 8) & 0xFF) == 0) {
+         --significant;
       }
-      // Do no add extra leading zeroes, move j to first non null byte.
-      while (j < temp.length && temp[j] == 0) {
-         ++j;
+      byte[] output = new byte[zeroCount + significant];
+      for (int i = 0; i < significant; i++) {
+         output[output.length - 1 - i] = (byte) (limbs[i / 4] >>> (i % 4 * 8));
       }
+      return output;
+   }
 
-      return copyOfRange(temp, j - zeroCount, temp.length);
+   private static int[] limbs(int[] scratch, int size) {
+      if (scratch != null && scratch.length >= size) {
+         return scratch;
+      }
+      return new int[size];
    }
 
    public static BigInteger decodeToBigInteger(String input) {
@@ -175,54 +249,45 @@ public class Base58 {
     * rest are correct. The checksum is removed from the returned data.
     */
    public static byte[] decodeChecked(String input) {
-      byte tmp[] = decode(input);
-      if (tmp == null || tmp.length < 4) {
-         return null;
-      }
-      byte[] bytes = copyOfRange(tmp, 0, tmp.length - 4);
-      byte[] checksum = copyOfRange(tmp, tmp.length - 4, tmp.length);
-
-      Sha256Hash sha256Hash = HashUtils.doubleSha256(bytes);
-      byte[] hash = sha256Hash.firstFourBytes();
-      if (!Arrays.equals(checksum, hash)) {
-         return null;
-      }
-
-      return bytes;
+      return decodeChecked(input, null, new byte[Sha256Hash.HASH_LENGTH]);
    }
 
-   //
-   // number -> number / 58, returns number % 58
-   //
-   private static byte divmod58(byte[] number, int startAt) {
-      int remainder = 0;
-      for (int i = startAt; i < number.length; i++) {
-         int digit256 = (int) number[i] & 0xFF;
-         int temp = remainder * 256 + digit256;
-
-         number[i] = (byte) (temp / 58);
-
-         remainder = temp % 58;
+   /**
+    * Decode many strings and verify their checksums. Scratch space is shared,
+    * so this is faster than decoding one at a time. Strings that do not decode
+    * or have a wrong checksum give null, as do null strings.
+    */
+   public static byte[][] decodeChecked(String[] inputs) {
+      int maxLength = 0;
+      for (String input : inputs) {
+         if (input != null) {
+            maxLength = Math.max(maxLength, input.length());
+         }
       }
-
-      return (byte) remainder;
+      int[] limbs = new int[maxLength / 5 + 2];
+      byte[] hash = new byte[Sha256Hash.HASH_LENGTH];
+      byte[][] decoded = new byte[inputs.length][];
+      for (int i = 0; i < inputs.length; i++) {
+         if (inputs[i] != null) {
+            decoded[i] = decodeChecked(inputs[i], limbs, hash);
+         }
+      }
+      return decoded;
    }
 
-   //
-   // number -> number / 256, returns number % 256
-   //
-   private static byte divmod256(byte[] number58, int startAt) {
-      int remainder = 0;
-      for (int i = startAt; i < number58.length; i++) {
-         int digit58 = (int) number58[i] & 0xFF;
-         int temp = remainder * 58 + digit58;
-
-         number58[i] = (byte) (temp / 256);
-
-         remainder = temp % 256;
+   private static byte[] decodeChecked(String input, int[] limbs, byte[] hash) {
+      byte tmp[] = decode(input, limbs);
+      if (tmp == null || tmp.length < 4) {
+         return null;
       }
-
-      return (byte) remainder;
+      int length = tmp.length - 4;
+      HashUtils.doubleSha256(tmp, 0, length, hash, 0);
+      for (int i = 0; i < 4; i++) {
+         if (tmp[length + i] != hash[i]) {
+            return null;
+         }
+      }
+      return copyOfRange(tmp, 0, length);
    }
 
    private static byte[] copyOfRange(byte[] source, int from, int to) {
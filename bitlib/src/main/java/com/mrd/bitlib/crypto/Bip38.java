@@ -20,6 +20,16 @@ import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.security.GeneralSecurityException;
 import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import Rijndael.Rijndael;
 import com.mrd.bitlib.bitcoinj.Base58;
@@ -30,6 +40,7 @@ import com.mrd.bitlib.crypto.ec.Parameters;
 import com.mrd.bitlib.model.Address;
 import com.mrd.bitlib.model.NetworkParameters;
 import com.mrd.bitlib.util.BitUtils;
+import com.mrd.bitlib.util.DaemonExecutors;
 import com.mrd.bitlib.util.HashUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 
@@ -41,6 +52,23 @@ public class Bip38 {
    public static final int SCRYPT_P = 8;
    public static final int SCRYPT_LENGTH = 64;
 
+   private static class BatchExecutorHolder {
+      private static final ExecutorService EXECUTOR = DaemonExecutors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * Receives the results of a batch operation one key at a time, on the thread
+    * that started the batch, in the order in which the keys complete
+    */
+   public interface BatchListener {
+      /**
+       * @param index  the index of the key in the batch
+       * @param result the encrypted or decrypted key, or null if no passphrase
+       *               decrypted the key
+       */
+      void onKeyCompleted(int index, String result);
+   }
+
    /**
     * Encrypt a SIPA formatted private key with a passphrase using BIP38.
     * <p/>
@@ -52,21 +80,59 @@ public class Bip38 {
       InMemoryPrivateKey key = new InMemoryPrivateKey(base58EncodedPrivateKey, NetworkParameters.productionNetwork);
       Address address = key.getPublicKey().toAddress(NetworkParameters.productionNetwork);
       byte[] salt = Bip38.calculateScryptSalt(address);
-      byte[] stretchedKeyMaterial = bip38Stretch1(passphrase, salt, progressTracker, SCRYPT_LENGTH);
+      byte[] stretchedKeyMaterial = bip38Stretch1(passphrase, salt, progressTracker, SCRYPT_LENGTH, SCRYPT_P);
       return encryptNoEcMultiply(stretchedKeyMaterial, key, salt);
    }
 
+   /**
+    * Encrypt many SIPA formatted private keys with the same passphrase.
+    * <p/>
+    * The keys are stretched in parallel, as many at a time as the memory
+    * budget of {@link SCrypt#getMaxParallelLanes} allows.
+    *
+    * @param progressTracker optional, a tracker from
+    *                        {@link #getScryptProgressTracker(int)} for the
+    *                        number of keys. Terminating it cancels the batch.
+    * @param listener        optional, receives every result as soon as it is
+    *                        ready
+    * @return the encrypted keys in the order of the given keys
+    */
+   public static String[] encryptNoEcMultiply(final String passphrase, List<String> base58EncodedPrivateKeys,
+                                              SCryptProgress progressTracker, BatchListener listener)
+         throws InterruptedException {
+      List<Callable<String>> jobs = new ArrayList<>(base58EncodedPrivateKeys.size());
+      for (final String base58EncodedPrivateKey : base58EncodedPrivateKeys) {
+         final SCryptProgress laneProgress = BatchLaneProgress.of(progressTracker);
+         jobs.add(new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+               InMemoryPrivateKey key = new InMemoryPrivateKey(base58EncodedPrivateKey, NetworkParameters.productionNetwork);
+               Address address = key.getPublicKey().toAddress(NetworkParameters.productionNetwork);
+               byte[] salt = Bip38.calculateScryptSalt(address);
+               byte[] stretchedKeyMaterial = bip38Stretch1(passphrase, salt, laneProgress, SCRYPT_LENGTH, 1);
+               return encryptNoEcMultiply(stretchedKeyMaterial, key, salt);
+            }
+         });
+      }
+      return runBatch(jobs, listener);
+   }
+
    /**
     * Perform BIP38 compatible password stretching on a password to derive the
     * BIP38 key material
     */
    public static byte[] bip38Stretch1(String passphrase, byte[] salt, SCryptProgress progressTracker, int outputSize)
            throws InterruptedException {
+      return bip38Stretch1(passphrase, salt, progressTracker, outputSize, SCRYPT_P);
+   }
+
+   private static byte[] bip38Stretch1(String passphrase, byte[] salt, SCryptProgress progressTracker, int outputSize,
+                                       int maxParallelLanes) throws InterruptedException {
       byte[] derived;
       String normalizedPassphrase = Normalizer.normalize(passphrase, Normalizer.Form.NFC);
       try {
          derived = SCrypt.scrypt(normalizedPassphrase.getBytes("UTF-8"), salt, SCRYPT_N, SCRYPT_R, SCRYPT_P, outputSize,
-                 progressTracker);
+                 progressTracker, maxParallelLanes);
          return derived;
       } catch (UnsupportedEncodingException | GeneralSecurityException e) {
          throw new RuntimeException(e);
@@ -227,20 +293,69 @@ public class Bip38 {
     */
    public static String decrypt(String bip38PrivateKeyString, String passphrase, SCryptProgress progressTracker,
                                 NetworkParameters network) throws InterruptedException {
+      return decrypt(bip38PrivateKeyString, passphrase, progressTracker, network, SCRYPT_P);
+   }
+
+   private static String decrypt(String bip38PrivateKeyString, String passphrase, SCryptProgress progressTracker,
+                                 NetworkParameters network, int maxParallelLanes) throws InterruptedException {
       Bip38PrivateKey bip38Key = parseBip38PrivateKey(bip38PrivateKeyString);
       if (bip38Key == null) {
          return null;
       }
       if (bip38Key.ecMultiply) {
-         return decryptEcMultiply(bip38Key, passphrase, progressTracker, network);
+         return decryptEcMultiply(bip38Key, passphrase, progressTracker, network, maxParallelLanes);
       } else {
-         byte[] stretcedKeyMaterial = bip38Stretch1(passphrase, bip38Key.salt, progressTracker, SCRYPT_LENGTH);
+         byte[] stretcedKeyMaterial = bip38Stretch1(passphrase, bip38Key.salt, progressTracker, SCRYPT_LENGTH,
+               maxParallelLanes);
          return decryptNoEcMultiply(bip38Key, stretcedKeyMaterial, network);
       }
    }
 
+   /**
+    * Decrypt many BIP38 formatted private keys, trying the passphrases of
+    * every key in the given order until one of them fits.
+    * <p/>
+    * The keys are stretched in parallel, as many at a time as the memory
+    * budget of {@link SCrypt#getMaxParallelLanes} allows. Keys that are no
+    * valid BIP38 keys or that no passphrase decrypts have a null result.
+    *
+    * @param progressTracker optional, a tracker from
+    *                        {@link #getScryptProgressTracker(int)} for the
+    *                        number of keys. Terminating it cancels the batch.
+    * @param listener        optional, receives every result as soon as it is
+    *                        ready
+    * @return the decrypted keys in SIPA format in the order of the given keys
+    */
+   public static String[] decrypt(List<String> bip38PrivateKeyStrings, final List<String> passphrases,
+                                  SCryptProgress progressTracker, final NetworkParameters network,
+                                  BatchListener listener) throws InterruptedException {
+      List<Callable<String>> jobs = new ArrayList<>(bip38PrivateKeyStrings.size());
+      for (final String bip38PrivateKeyString : bip38PrivateKeyStrings) {
+         final SCryptProgress laneProgress = BatchLaneProgress.of(progressTracker);
+         jobs.add(new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+               for (String passphrase : passphrases) {
+                  String result = decrypt(bip38PrivateKeyString, passphrase, laneProgress, network, 1);
+                  if (result != null) {
+                     return result;
+                  }
+               }
+               return null;
+            }
+         });
+      }
+      return runBatch(jobs, listener);
+   }
+
    public static String decryptEcMultiply(Bip38PrivateKey bip38Key, String passphrase, SCryptProgress progressTracker,
                                           NetworkParameters network) throws InterruptedException {
+      return decryptEcMultiply(bip38Key, passphrase, progressTracker, network, SCRYPT_P);
+   }
+
+   private static String decryptEcMultiply(Bip38PrivateKey bip38Key, String passphrase, SCryptProgress progressTracker,
+                                           NetworkParameters network, int maxParallelLanes)
+         throws InterruptedException {
       // Get 8 byte Owner Salt
       byte[] ownerEntropy = new byte[8];
       System.arraycopy(bip38Key.data, 0, ownerEntropy, 0, 8);
@@ -252,7 +367,7 @@ public class Bip38 {
       }
 
       // Stretch to get Pass Factor
-      byte[] passFactor = bip38Stretch1(passphrase, ownerSalt, progressTracker, 32);
+      byte[] passFactor = bip38Stretch1(passphrase, ownerSalt, progressTracker, 32, maxParallelLanes);
 
       if (bip38Key.lotSequence) {
          byte[] tmp = new byte[40];
@@ -392,6 +507,108 @@ public class Bip38 {
       return new SCryptProgress(SCRYPT_N, SCRYPT_R, SCRYPT_P);
    }
 
+   /**
+    * Get a progress tracker for a batch operation on the given number of keys
+    */
+   public static SCryptProgress getScryptProgressTracker(int keys) {
+      return new SCryptProgress(SCRYPT_N, SCRYPT_R, SCRYPT_P * keys);
+   }
+
+   /**
+    * Run the jobs of a batch with as many jobs at the same time as the memory
+    * budget allows. Every job mixes its lanes one at a time, so each running
+    * job needs the memory of one lane. Results are handed to the listener on
+    * the calling thread as they complete.
+    */
+   private static String[] runBatch(List<Callable<String>> jobs, BatchListener listener) throws InterruptedException {
+      String[] results = new String[jobs.size()];
+      // Always at least one, even for an empty batch
+      int parallelJobs = Math.min(SCrypt.getMaxParallelLanes(SCRYPT_N, SCRYPT_R, jobs.size()), jobs.size());
+      CompletionService<String> completionService = new ExecutorCompletionService<>(BatchExecutorHolder.EXECUTOR);
+      Map<Future<String>, Integer> running = new HashMap<>();
+      int next = 0;
+      try {
+         while (next < parallelJobs) {
+            running.put(completionService.submit(jobs.get(next)), next);
+            next++;
+         }
+         while (!running.isEmpty()) {
+            Future<String> future = completionService.take();
+            int index = running.remove(future);
+            results[index] = getResult(future);
+            if (listener != null) {
+               listener.onKeyCompleted(index, results[index]);
+            }
+            if (next < jobs.size()) {
+               running.put(completionService.submit(jobs.get(next)), next);
+               next++;
+            }
+         }
+      } finally {
+         for (Future<String> future : running.keySet()) {
+            future.cancel(true);
+         }
+      }
+      return results;
+   }
+
+   private static String getResult(Future<String> future) throws InterruptedException {
+      try {
+         return future.get();
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+         }
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new RuntimeException(cause);
+      }
+   }
+
+   /**
+    * The progress of a single job of a batch. It only checks for termination
+    * while mixing and counts its completed lanes in the progress of the batch.
+    */
+   private static class BatchLaneProgress extends SCryptProgress {
+      private static final long serialVersionUID = 1L;
+
+      private final SCryptProgress _batchProgress;
+
+      private BatchLaneProgress(SCryptProgress batchProgress) {
+         super(SCRYPT_N, SCRYPT_R, SCRYPT_P);
+         _batchProgress = batchProgress;
+      }
+
+      private static SCryptProgress of(SCryptProgress batchProgress) {
+         return batchProgress == null ? null : new BatchLaneProgress(batchProgress);
+      }
+
+      @Override
+      public void setProgressN1(int n1) throws InterruptedException {
+         _batchProgress.checkTerminated();
+      }
+
+      @Override
+      public void setProgressN2(int n2) throws InterruptedException {
+         _batchProgress.checkTerminated();
+      }
+
+      @Override
+      public void setProgressP(int p) throws InterruptedException {
+         _batchProgress.completeLane();
+      }
+
+      @Override
+      public void checkTerminated() throws InterruptedException {
+         _batchProgress.checkTerminated();
+      }
+   }
+
    /**
     * Calculate scrypt salt from Bitcoin address
     * <p/>
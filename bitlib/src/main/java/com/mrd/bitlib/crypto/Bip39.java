@@ -17,25 +17,28 @@
 package com.mrd.bitlib.crypto;
 
 import com.google.common.base.Optional;
-import com.mrd.bitlib.lambdaworks.crypto.PBKDF;
+import com.mrd.bitlib.crypto.digest.Pbkdf2HmacSha512;
 import com.mrd.bitlib.util.BitUtils;
 import com.mrd.bitlib.util.ByteReader;
 import com.mrd.bitlib.util.ByteWriter;
+import com.mrd.bitlib.util.DaemonExecutors;
 import com.mrd.bitlib.util.HashUtils;
 
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
-import java.security.GeneralSecurityException;
 import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Implementation of Bip39
  */
 public class Bip39 {
-   private static final String ALGORITHM = "HmacSHA512";
    private static final int REPETITIONS = 2048;
    private static final int BIP32_SEED_LENGTH = 64;
    private static final String BASE_SALT = "mnemonic";
@@ -394,19 +397,82 @@ public class Bip39 {
     * @param passphrase the optional passphrase
     * @return the BIP32 master seed
     */
-   @SuppressWarnings("NewApi")
    public static MasterSeed generateSeedFromWordList(List<String> wordList, String passphrase) {
-      // Null passphrase defaults to the empty string
-      if (passphrase == null) {
-         passphrase = "";
+      return generateSeed(wordList, new Pbkdf2HmacSha512(getMnemonicBytes(wordList)), passphrase);
+   }
+
+   /**
+    * Generate the master seeds of a BIP39 word list for many passphrases, such
+    * as when searching for the passphrase of a wallet.
+    * <p/>
+    * The seeds are calculated in parallel on all cores. This method does not
+    * check whether the check sum of the word list id valid
+    *
+    * @param wordList    the word list
+    * @param passphrases the passphrases
+    * @return the BIP32 master seeds in the order of the passphrases
+    */
+   public static List<MasterSeed> generateSeeds(final List<String> wordList, Iterable<String> passphrases) {
+      final Pbkdf2HmacSha512 pbkdf2 = new Pbkdf2HmacSha512(getMnemonicBytes(wordList));
+      List<Future<MasterSeed>> futures = new ArrayList<>();
+      for (final String passphrase : passphrases) {
+         futures.add(ExecutorHolder.EXECUTOR.submit(new Callable<MasterSeed>() {
+            @Override
+            public MasterSeed call() {
+               return generateSeed(wordList, pbkdf2, passphrase);
+            }
+         }));
+      }
+      List<MasterSeed> seeds = new ArrayList<>(futures.size());
+      try {
+         for (Future<MasterSeed> future : futures) {
+            seeds.add(future.get());
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new RuntimeException(cause);
+      } finally {
+         for (Future<MasterSeed> future : futures) {
+            future.cancel(true);
+         }
       }
+      return seeds;
+   }
+
+   private static class ExecutorHolder {
+      private static final ExecutorService EXECUTOR = DaemonExecutors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+   }
 
+   private static byte[] getMnemonicBytes(List<String> wordList) {
       // Concatenate all words using a single space as separator
       StringBuilder sb = new StringBuilder();
       for (String s : wordList) {
          sb.append(s).append(' ');
       }
       String mnemonic = sb.toString().trim();
+      try {
+         return mnemonic.getBytes(UTF8);
+      } catch (UnsupportedEncodingException e) {
+         // UTF-8 should be supported by every system we run on
+         throw new RuntimeException(e);
+      }
+   }
+
+   @SuppressWarnings("NewApi")
+   private static MasterSeed generateSeed(List<String> wordList, Pbkdf2HmacSha512 pbkdf2, String passphrase) {
+      // Null passphrase defaults to the empty string
+      if (passphrase == null) {
+         passphrase = "";
+      }
 
       // The salt is the passphrase with a prefix
       String salt = BASE_SALT + passphrase;
@@ -415,8 +481,8 @@ public class Bip39 {
       byte[] seed;
       try {
          byte[] saltBytes = Normalizer.normalize(salt, Normalizer.Form.NFKD).getBytes(UTF8);
-         seed = PBKDF.pbkdf2(ALGORITHM, mnemonic.getBytes(UTF8), saltBytes, REPETITIONS, BIP32_SEED_LENGTH);
-      } catch (UnsupportedEncodingException | GeneralSecurityException e) {
+         seed = pbkdf2.derive(saltBytes, REPETITIONS, BIP32_SEED_LENGTH);
+      } catch (UnsupportedEncodingException e) {
          // UTF-8 should be supported by every system we run on
          throw new RuntimeException(e);
       }
@@ -110,7 +110,7 @@ public class BipSss {
       }
 
       // Combine
-      Gf256 gf = new Gf256();
+      Gf256 gf = Gf256.getDefault();
       List<Gf256.Share> gfShares = new ArrayList<Gf256.Share>();
       for (Share s : selection) {
          gfShares.add(new Gf256.Share((byte) s.shareNumber, s.shareData));
@@ -21,7 +21,6 @@ import java.util.List;
 
 import com.google.common.base.Preconditions;
 import com.mrd.bitlib.util.BitUtils;
-import com.mrd.bitlib.util.ByteWriter;
 import com.mrd.bitlib.util.HashUtils;
 
 /**
@@ -51,11 +50,23 @@ public class Gf256 {
 
    }
 
-   private int[] _logTable = new int[256];
-   private int[] _expTable = new int[256];
-
    private static final int INFINITY = 255;
 
+   private static final Gf256 DEFAULT = new Gf256();
+
+   // The product of a and b is at index a * 256 + b
+   private final byte[] _mulTable;
+   // The multiplicative inverse of every non-zero element
+   private final byte[] _invTable;
+
+   /**
+    * Get the Galois Field with the default polynomial 0x11d. Instances are
+    * immutable, so this one can be shared.
+    */
+   public static Gf256 getDefault() {
+      return DEFAULT;
+   }
+
    /*
     * Create a Galois Field with the default polynomial 0x11d
     */
@@ -69,82 +80,41 @@ public class Gf256 {
    public Gf256(int polynomial) {
       // Initialize log and exponent tables by computing b = 2**i in GF
       // sequentially for all i from 0 to 254
-      _logTable = new int[256];
-      _expTable = new int[256];
+      int[] logTable = new int[256];
+      int[] expTable = new int[256];
       int b = 1; // 2**0
       for (int i = 0; i < 255; i++) {
-         _logTable[b] = i;
-         _expTable[i] = b;
+         logTable[b] = i;
+         expTable[i] = b;
          b <<= 1;
          if ((b & 0x100) > 0) {
             b ^= polynomial;
          }
       }
-      _logTable[0] = (byte) INFINITY;
-      _expTable[INFINITY] = 0;
+      logTable[0] = INFINITY;
+      expTable[INFINITY] = 0;
       // Check that this polynomial really generates a GF by checking that we
       // are back to square one
       Preconditions.checkState(b == 1);
-   }
-
-   private int log(int n) {
-      return _logTable[n];
-   }
-
-   private int exp(int n) {
-      return _expTable[n];
-   }
-
-   /**
-    * Addition. This is a simple X-or of two byte arrays
-    */
-   private byte[] add(byte[] a, byte[] b) {
-      Preconditions.checkState(a.length == b.length);
-      byte[] c = new byte[a.length];
-      for (int i = 0; i < a.length; i++) {
-         c[i] = add(a[i], b[i]);
-      }
-      return c;
-   }
-
-   /**
-    * Addition. This is a simple X-or of two bytes
-    */
-   private byte add(byte a, byte b) {
-      return (byte) (a ^ b);
-   }
-
-   /**
-    * Substitution, same as addition
-    */
-   private byte sub(byte a, byte b) {
-      return add(a, b);
-   }
 
-   /**
-    * Multiplication.
-    */
-   private byte[] mul(byte[] a, byte[] b) {
-      Preconditions.checkState(a.length == b.length);
-      byte[] c = new byte[a.length];
-      for (int i = 0; i < a.length; i++) {
-         c[i] = mul(a[i], b[i]);
+      // Expand the log and exponent tables into a full multiplication table,
+      // so that multiplying is a single lookup. The log of the product is the
+      // sum of the log of the multiplicands modulo 255
+      _mulTable = new byte[256 * 256];
+      _invTable = new byte[256];
+      for (int x = 1; x < 256; x++) {
+         for (int y = 1; y < 256; y++) {
+            _mulTable[x << 8 | y] = (byte) expTable[(logTable[x] + logTable[y]) % 255];
+         }
+         _invTable[x] = (byte) expTable[(255 - logTable[x]) % 255];
       }
-      return c;
    }
 
    /**
     * Multiplication.
     */
    private byte mul(byte a, byte b) {
-      if (a == 0 || b == 0) {
-         return 0;
-      } else {
-         // The log of the product is the sum of the log of the multiplicands
-         // modulo 255
-         int lp = mod255(log(b2i(a)) + log(b2i(b)));
-         return (byte) exp(lp);
-      }
+      return _mulTable[(a & 0xFF) << 8 | (b & 0xFF)];
    }
 
    /**
@@ -154,20 +124,19 @@ public class Gf256 {
       if (b == 0) {
          throw new RuntimeException("Division by zero");
       }
-      if (a == 0) {
-         return 0;
-      } else {
-         int lp = mod255(log(b2i(a)) - log(b2i(b)));
-         return (byte) exp(lp);
-      }
+      return mul(a, _invTable[b & 0xFF]);
    }
 
-   private int mod255(int n) {
-      return n % 255 + (n < 0 ? 255 : 0);
-   }
-
-   private int b2i(byte b) {
-      return ((int) b) & 0xFF;
+   /**
+    * Multiply every element of an array by a factor and add the product to
+    * the elements of another array. Addition is a simple X-or.
+    */
+   private void mulAdd(byte[] sum, byte[] a, byte factor) {
+      // The products with the factor are one row of the multiplication table
+      int row = (factor & 0xFF) << 8;
+      for (int i = 0; i < sum.length; i++) {
+         sum[i] ^= _mulTable[row | (a[i] & 0xFF)];
+      }
    }
 
    private byte[][] sha256Coefficients(byte[] secret, int m) {
@@ -175,12 +144,13 @@ public class Gf256 {
       byte[] coeff = BitUtils.copyByteArray(secret);
       res[0] = coeff;
       for (int n = 1; n < m; n++) {
-         ByteWriter writer = new ByteWriter(coeff.length + 32);
+         byte[] next = new byte[coeff.length];
          for (int i = 0; i < coeff.length; i += 32) {
             int toHash = Math.min(32, coeff.length - i);
-            writer.putBytes(HashUtils.sha256(coeff, i, toHash).getBytes());
+            byte[] hash = HashUtils.sha256(coeff, i, toHash).getBytes();
+            System.arraycopy(hash, 0, next, i, toHash);
          }
-         coeff = BitUtils.copyOf(writer.toBytes(), coeff.length);
+         coeff = next;
          res[n] = coeff;
       }
       return res;
@@ -188,16 +158,17 @@ public class Gf256 {
 
    private Share makeShare(byte x, byte[][] coeff) {
       Preconditions.checkArgument(x != 0);
-      int q = coeff[0].length;
-      byte[] s = coeff[0];
-
-      byte xpow = 1;
-
-      for (int i = 1; i < coeff.length; i++) {
-         xpow = mul(xpow, x);
-         s = add(s, mul(byteArrayOf(xpow, q), coeff[i]));
+      // Evaluate the polynomial at x with Horner's method, one multiply-add
+      // over the whole array per coefficient
+      byte[] s = BitUtils.copyByteArray(coeff[coeff.length - 1]);
+      int row = (x & 0xFF) << 8;
+      for (int i = coeff.length - 2; i >= 0; i--) {
+         byte[] c = coeff[i];
+         for (int j = 0; j < s.length; j++) {
+            s[j] = (byte) (_mulTable[row | (s[j] & 0xFF)] ^ c[j]);
+         }
       }
-      return new Share((byte) x, s);
+      return new Share(x, s);
    }
 
    /**
@@ -221,27 +192,23 @@ public class Gf256 {
          n = mul(n, share.index);
       }
 
+      // The secret is the sum of the shares, each weighted with its Lagrange
+      // coefficient at zero
       byte[] a = new byte[q];
       for (Share share : shares) {
+         Preconditions.checkArgument(share.data.length == q);
          byte lc = div(n, share.index);
          for (Share otherShare : shares) {
             if (otherShare.index != share.index) {
-               lc = div(lc, sub(otherShare.index, share.index));
+               // Subtraction is the same as addition, a simple X-or
+               lc = div(lc, (byte) (otherShare.index ^ share.index));
             }
          }
-         a = add(a, mul(share.data, byteArrayOf(lc, q)));
+         mulAdd(a, share.data, lc);
       }
       return a;
    }
 
-   private static byte[] byteArrayOf(byte b, int length) {
-      byte[] result = new byte[length];
-      for (int i = 0; i < length; i++) {
-         result[i] = b;
-      }
-      return result;
-   }
-
    /**
     * Shard a secret into a number of shares in such a way that only the
     * specified threshold number of shares can recreate the secret.
@@ -257,6 +224,7 @@ public class Gf256 {
     */
    public List<Share> makeShares(byte[] secret, int threshold, int shares) {
       Preconditions.checkArgument(shares > 0, "Number of shares must be larger than zero");
+      Preconditions.checkArgument(shares < 256, "Number of shares must be less than 256");
       Preconditions.checkArgument(threshold <= shares,
             "Number of shares needed must be less than or equal to the number of shares");
       byte[][] coeff = sha256Coefficients(secret, threshold);
@@ -266,4 +234,19 @@ public class Gf256 {
       }
       return shareList;
    }
+
+   /**
+    * Shard many secrets with the same threshold and number of shares.
+    *
+    * @see #makeShares(byte[], int, int)
+    * @return for every secret the list of its shares, in the order of the
+    *         secrets
+    */
+   public List<List<Share>> makeShares(List<byte[]> secrets, int threshold, int shares) {
+      List<List<Share>> result = new ArrayList<List<Share>>(secrets.size());
+      for (byte[] secret : secrets) {
+         result.add(makeShares(secret, threshold, shares));
+      }
+      return result;
+   }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto;
+
+import com.mrd.bitlib.util.DaemonExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Derives ranges of non-hardened child nodes of an HD key node on multiple
+ * threads.
+ * <p>
+ * Every child costs an HMAC-SHA512 and an EC multiplication, and the children
+ * do not depend on each other. A range is split into chunks of consecutive
+ * indexes, and the chunks are derived in parallel on a shared pool of daemon
+ * threads with one thread per available processor. Short ranges are derived on
+ * the calling thread.
+ */
+public class HdKeyDeriver {
+
+   /**
+    * Ranges are not split into chunks smaller than this, as handing a chunk to
+    * another thread is not free
+    */
+   private static final int MIN_CHUNK_SIZE = 8;
+
+   private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+   private static class ExecutorHolder {
+      private static final ExecutorService EXECUTOR = DaemonExecutors.newFixedThreadPool(THREADS);
+   }
+
+   private HdKeyDeriver() {
+   }
+
+   /**
+    * Create the non-hardened child nodes of a node for a range of indexes. The
+    * result is the same as calling {@link HdKeyNode#createChildNode(int)} for
+    * every index.
+    *
+    * @param parent
+    *           the node to derive the children of
+    * @param fromIndex
+    *           the first index to use
+    * @param toIndex
+    *           the last index to use, inclusive
+    * @return the child nodes in index order, empty if toIndex < fromIndex
+    * @throws HdKeyNode.KeyGenerationException
+    *            if no key can be created for one of the indexes (extremely
+    *            unlikely)
+    */
+   public static List<HdKeyNode> deriveRange(final HdKeyNode parent, int fromIndex, int toIndex)
+         throws HdKeyNode.KeyGenerationException {
+      int count = toIndex - fromIndex + 1;
+      int chunks = Math.min(THREADS, count / MIN_CHUNK_SIZE);
+      if (chunks <= 1) {
+         return parent.createChildNodes(fromIndex, toIndex);
+      }
+
+      // Hand all chunks but the last to the pool and derive the last one here
+      int chunkSize = (count + chunks - 1) / chunks;
+      List<Future<List<HdKeyNode>>> futures = new ArrayList<>(chunks - 1);
+      int chunkStart = fromIndex;
+      while (toIndex - chunkStart + 1 > chunkSize) {
+         final int start = chunkStart;
+         final int end = chunkStart + chunkSize - 1;
+         futures.add(ExecutorHolder.EXECUTOR.submit(new Callable<List<HdKeyNode>>() {
+            @Override
+            public List<HdKeyNode> call() {
+               return parent.createChildNodes(start, end);
+            }
+         }));
+         chunkStart += chunkSize;
+      }
+      List<HdKeyNode> last = parent.createChildNodes(chunkStart, toIndex);
+
+      List<HdKeyNode> result = new ArrayList<>(count);
+      for (Future<List<HdKeyNode>> future : futures) {
+         result.addAll(getResult(future));
+      }
+      result.addAll(last);
+      return result;
+   }
+
+   private static <T> T getResult(Future<T> future) {
+      try {
+         return future.get();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new RuntimeException(cause);
+      }
+   }
+}
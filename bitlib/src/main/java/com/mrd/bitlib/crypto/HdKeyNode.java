@@ -19,11 +19,13 @@ package com.mrd.bitlib.crypto;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 import com.mrd.bitlib.bitcoinj.Base58;
 import com.google.common.base.Preconditions;
+import com.mrd.bitlib.crypto.ec.EcTools;
 import com.mrd.bitlib.crypto.ec.Parameters;
 import com.mrd.bitlib.crypto.ec.Point;
 import com.mrd.bitlib.model.hdpath.HdKeyPath;
@@ -260,6 +262,84 @@ public class HdKeyNode implements Serializable {
     *            can be created for this index (extremely unlikely)
     */
    public HdKeyNode createChildNode(int index) throws KeyGenerationException {
+      return createChildNode(index, getFingerprint());
+   }
+
+   /**
+    * Create the non-hardened child nodes of this node for a range of indexes.
+    * <p>
+    * For a public key node this is faster than deriving the children one by
+    * one, as all child points are normalized with a single field inversion.
+    * See {@link HdKeyDeriver} for deriving large ranges on multiple threads.
+    * 
+    * @param fromIndex
+    *           the first index to use
+    * @param toIndex
+    *           the last index to use, inclusive
+    * @return the child nodes in index order, empty if toIndex < fromIndex
+    * @throws KeyGenerationException
+    *            if no key can be created for one of the indexes (extremely
+    *            unlikely)
+    */
+   public List<HdKeyNode> createChildNodes(int fromIndex, int toIndex) throws KeyGenerationException {
+      Preconditions.checkArgument(fromIndex >= 0, "Hardened indexes are not supported in a range");
+      int count = Math.max(0, toIndex - fromIndex + 1);
+      List<HdKeyNode> result = new ArrayList<>(count);
+      // The fingerprint is the same for all children
+      int fingerprint = getFingerprint();
+      if (isPrivateHdKeyNode()) {
+         for (int index = fromIndex; index <= toIndex; index++) {
+            result.add(createChildNode(index, fingerprint));
+         }
+         return result;
+      }
+
+      // Public derivation adds G * IL to the parent point for every child.
+      // Doing all of them together lets the child points share a single field
+      // inversion when they are converted to affine coordinates.
+      BigInteger[] tweaks = new BigInteger[count];
+      byte[][] chainCodes = new byte[count][];
+      for (int i = 0; i < count; i++) {
+         byte[] l = childHmac(fromIndex + i);
+         tweaks[i] = tweakFromHmac(l);
+         chainCodes[i] = BitUtils.copyOfRange(l, 32, 64);
+      }
+      Point[] points = EcTools.sumOfGeneratorMultiplesAndPoint(tweaks, _publicKey.getQ());
+      for (int i = 0; i < count; i++) {
+         PublicKey newPublicKey = toCompressedPublicKey(points[i]);
+         result.add(new HdKeyNode(newPublicKey, chainCodes[i], _depth + 1, fingerprint, fromIndex + i));
+      }
+      return result;
+   }
+
+   private HdKeyNode createChildNode(int index, int fingerprint) throws KeyGenerationException {
+      byte[] l = childHmac(index);
+      BigInteger m = tweakFromHmac(l);
+      byte[] lR = BitUtils.copyOfRange(l, 32, 64);
+
+      if (isPrivateHdKeyNode()) {
+
+         BigInteger kpar = new BigInteger(1, _privateKey.getPrivateKeyBytes());
+         BigInteger k = m.add(kpar).mod(Parameters.n);
+         if (k.equals(BigInteger.ZERO)) {
+            throw new KeyGenerationException("An unlikely thing happened: The derived key is zero");
+         }
+
+         // Make a 32 byte result where k is copied to the end
+         byte[] privateKeyBytes = bigIntegerTo32Bytes(k);
+         InMemoryPrivateKey key = new InMemoryPrivateKey(privateKeyBytes, true);
+         return new HdKeyNode(key, lR, _depth + 1, fingerprint, index);
+      } else {
+         Point q = EcTools.sumOfGeneratorMultipleAndPoint(m, _publicKey.getQ());
+         return new HdKeyNode(toCompressedPublicKey(q), lR, _depth + 1, fingerprint, index);
+      }
+   }
+
+   /**
+    * Calculate HMAC-SHA512(chain code, data) for a child index. The left half
+    * is the key tweak and the right half is the chain code of the child.
+    */
+   private byte[] childHmac(int index) throws KeyGenerationException {
       byte[] data;
       byte[] publicKeyBytes = _publicKey.getPublicKeyBytes();
       if (0 == (index & HARDENED_MARKER)) {
@@ -279,36 +359,23 @@ public class HdKeyNode implements Serializable {
          writer.putIntBE(index);
          data = writer.toBytes();
       }
-      byte[] l = Hmac.hmacSha512(_chainCode, data);
-      byte[] lL = BitUtils.copyOfRange(l, 0, 32);
-      byte[] lR = BitUtils.copyOfRange(l, 32, 64);
+      return Hmac.hmacSha512(_chainCode, data);
+   }
 
-      BigInteger m = new BigInteger(1, lL);
+   private static BigInteger tweakFromHmac(byte[] l) throws KeyGenerationException {
+      BigInteger m = new BigInteger(1, BitUtils.copyOfRange(l, 0, 32));
       if (m.compareTo(Parameters.n) >= 0) {
          throw new KeyGenerationException(
                "An unlikely thing happened: A key derivation parameter is larger than the N modulus of the curve");
       }
+      return m;
+   }
 
-      if (isPrivateHdKeyNode()) {
-
-         BigInteger kpar = new BigInteger(1, _privateKey.getPrivateKeyBytes());
-         BigInteger k = m.add(kpar).mod(Parameters.n);
-         if (k.equals(BigInteger.ZERO)) {
-            throw new KeyGenerationException("An unlikely thing happened: The derived key is zero");
-         }
-
-         // Make a 32 byte result where k is copied to the end
-         byte[] privateKeyBytes = bigIntegerTo32Bytes(k);
-         InMemoryPrivateKey key = new InMemoryPrivateKey(privateKeyBytes, true);
-         return new HdKeyNode(key, lR, _depth + 1, getFingerprint(), index);
-      } else {
-         Point q = Parameters.G.multiply(m).add(Parameters.curve.decodePoint(_publicKey.getPublicKeyBytes()));
-         if (q.isInfinity()) {
-            throw new KeyGenerationException("An unlikely thing happened: Invalid key point at infinity");
-         }
-         PublicKey newPublicKey = new PublicKey(new Point(Parameters.curve, q.getX(), q.getY(), true).getEncoded());
-         return new HdKeyNode(newPublicKey, lR, _depth + 1, getFingerprint(), index);
+   private static PublicKey toCompressedPublicKey(Point q) throws KeyGenerationException {
+      if (q.isInfinity()) {
+         throw new KeyGenerationException("An unlikely thing happened: Invalid key point at infinity");
       }
+      return new PublicKey(new Point(Parameters.curve, q.getX(), q.getY(), true).getEncoded());
    }
 
    private byte[] bigIntegerTo32Bytes(BigInteger b) {
@@ -20,11 +20,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.mrd.bitlib.crypto.ec.EcTools;
 import com.mrd.bitlib.crypto.ec.Parameters;
 import com.mrd.bitlib.crypto.ec.Point;
+import com.mrd.bitlib.crypto.ec.PrecomputedPoint;
 import com.mrd.bitlib.util.ByteReader;
 import com.mrd.bitlib.util.ByteWriter;
 
@@ -150,6 +155,86 @@ public class Signatures {
       return checkSignature(Q, n, e, r, s);
    }
 
+   /**
+    * A message hash, signature and public key triple to verify with
+    * {@link #verifySignatures}
+    */
+   public static class BatchItem {
+      public final byte[] message;
+      public final Signature signature;
+      public final PublicKey publicKey;
+
+      public BatchItem(byte[] message, Signature signature, PublicKey publicKey) {
+         this.message = message;
+         this.signature = signature;
+         this.publicKey = publicKey;
+      }
+   }
+
+   /**
+    * Verify many signatures at once.
+    * <p>
+    * The multiplication tables of every distinct public key are built once for
+    * the whole batch and normalized together, so keys that sign several items,
+    * like the inputs of a transaction spending many outputs of the same
+    * address, pay for their tables only once.
+    *
+    * @param items
+    *           the items to verify
+    * @param forceLowS
+    *           whether to reject signatures with an s value above n/2
+    * @return the verification result of every item, in the order of the items
+    */
+   public static boolean[] verifySignatures(List<BatchItem> items, boolean forceLowS) {
+      BigInteger n = Parameters.n;
+      boolean[] result = new boolean[items.size()];
+
+      // Collect the distinct keys of all items that pass the range checks
+      Map<PublicKey, Integer> keyIndexes = new HashMap<PublicKey, Integer>();
+      List<Point> keyPoints = new ArrayList<Point>();
+      for (int i = 0; i < items.size(); i++) {
+         BatchItem item = items.get(i);
+         if (!isInRange(item.signature, forceLowS) || keyIndexes.containsKey(item.publicKey)) {
+            continue;
+         }
+         Point Q;
+         try {
+            Q = item.publicKey.getQ();
+         } catch (RuntimeException e) {
+            // Not a valid encoding of a point, all items with this key fail
+            continue;
+         }
+         keyIndexes.put(item.publicKey, keyPoints.size());
+         keyPoints.add(Q);
+      }
+      PrecomputedPoint[] tables = PrecomputedPoint.create(keyPoints.toArray(new Point[keyPoints.size()]));
+
+      for (int i = 0; i < items.size(); i++) {
+         BatchItem item = items.get(i);
+         Integer keyIndex = keyIndexes.get(item.publicKey);
+         if (keyIndex == null || !isInRange(item.signature, forceLowS)) {
+            continue;
+         }
+         BigInteger e = calculateE(n, item.message);
+         BigInteger r = item.signature.r;
+         BigInteger c = item.signature.s.modInverse(n);
+         BigInteger u1 = e.multiply(c).mod(n);
+         BigInteger u2 = r.multiply(c).mod(n);
+         Point point = EcTools.sumOfTwoMultiplies(Parameters.G, u1, tables[keyIndex], u2);
+         result[i] = !point.isInfinity() && point.getX().toBigInteger().mod(n).equals(r);
+      }
+      return result;
+   }
+
+   private static boolean isInRange(Signature signature, boolean forceLowS) {
+      BigInteger n = Parameters.n;
+      BigInteger r = signature.r;
+      BigInteger s = signature.s;
+      BigInteger maxS = forceLowS ? Parameters.MAX_SIG_S : n.subtract(BigInteger.ONE);
+      return r.compareTo(BigInteger.ONE) >= 0 && r.compareTo(n) < 0 && s.compareTo(BigInteger.ONE) >= 0
+            && s.compareTo(maxS) <= 0;
+   }
+
    private static boolean checkSignature(Point Q, BigInteger n, BigInteger e, BigInteger r, BigInteger s) {
       BigInteger c = s.modInverse(n);
 
@@ -159,6 +244,9 @@ public class Signatures {
       Point G = Parameters.G;
 
       Point point = EcTools.sumOfTwoMultiplies(G, u1, Q, u2);
+      if (point.isInfinity()) {
+         return false;
+      }
 
       BigInteger v = point.getX().toBigInteger().mod(n);
 
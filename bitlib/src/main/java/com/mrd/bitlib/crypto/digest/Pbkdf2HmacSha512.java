@@ -0,0 +1,241 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.digest;
+
+/**
+ * PBKDF2 (RFC 2898) with HMAC-SHA512 as pseudo random function, as used by
+ * BIP39.
+ * <p>
+ * The SHA-512 states after hashing the inner and the outer HMAC pad of the
+ * password are calculated once per instance. Every iteration then only
+ * compresses one block for the inner and one block for the outer hash,
+ * working on long words without allocating. As the states only depend on the
+ * password, one instance can derive keys for many salts, and instances are
+ * thread safe.
+ */
+public class Pbkdf2HmacSha512 {
+   private static final int BLOCK_LENGTH = 128;
+   private static final int DIGEST_LENGTH = 64;
+   // the bit length of a HMAC pad followed by a digest
+   private static final long PAD_AND_DIGEST_BITS = (BLOCK_LENGTH + DIGEST_LENGTH) * 8;
+
+   private static final long[] K = {
+         0x428a2f98d728ae22L, 0x7137449123ef65cdL, 0xb5c0fbcfec4d3b2fL, 0xe9b5dba58189dbbcL,
+         0x3956c25bf348b538L, 0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L,
+         0xd807aa98a3030242L, 0x12835b0145706fbeL, 0x243185be4ee4b28cL, 0x550c7dc3d5ffb4e2L,
+         0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L, 0x9bdc06a725c71235L, 0xc19bf174cf692694L,
+         0xe49b69c19ef14ad2L, 0xefbe4786384f25e3L, 0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L,
+         0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L, 0x76f988da831153b5L,
+         0x983e5152ee66dfabL, 0xa831c66d2db43210L, 0xb00327c898fb213fL, 0xbf597fc7beef0ee4L,
+         0xc6e00bf33da88fc2L, 0xd5a79147930aa725L, 0x06ca6351e003826fL, 0x142929670a0e6e70L,
+         0x27b70a8546d22ffcL, 0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL, 0x53380d139d95b3dfL,
+         0x650a73548baf63deL, 0x766a0abb3c77b2a8L, 0x81c2c92e47edaee6L, 0x92722c851482353bL,
+         0xa2bfe8a14cf10364L, 0xa81a664bbc423001L, 0xc24b8b70d0f89791L, 0xc76c51a30654be30L,
+         0xd192e819d6ef5218L, 0xd69906245565a910L, 0xf40e35855771202aL, 0x106aa07032bbd1b8L,
+         0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L, 0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L,
+         0x391c0cb3c5c95a63L, 0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L,
+         0x748f82ee5defb2fcL, 0x78a5636f43172f60L, 0x84c87814a1f0ab72L, 0x8cc702081a6439ecL,
+         0x90befffa23631e28L, 0xa4506cebde82bde9L, 0xbef9a3f7b2c67915L, 0xc67178f2e372532bL,
+         0xca273eceea26619cL, 0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L,
+         0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L, 0x113f9804bef90daeL, 0x1b710b35131c471bL,
+         0x28db77f523047d84L, 0x32caab7b40c72493L, 0x3c9ebe0a15c9bebcL, 0x431d67c49c100d4cL,
+         0x4cc5d4becb3e42b6L, 0x597f299cfc657e2aL, 0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L
+   };
+
+   private static final long[] IV = {
+         0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+         0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+   };
+
+   private final long[] _innerState;
+   private final long[] _outerState;
+
+   public Pbkdf2HmacSha512(byte[] password) {
+      byte[] key = password;
+      if (key.length > BLOCK_LENGTH) {
+         key = new byte[DIGEST_LENGTH];
+         long[] state = IV.clone();
+         hashTail(state, password, 0, new long[80]);
+         unpackWords(state, key, DIGEST_LENGTH);
+      }
+      long[] W = new long[80];
+      _innerState = padState(key, (byte) 0x36, W);
+      _outerState = padState(key, (byte) 0x5c, W);
+   }
+
+   /**
+    * Derive a key
+    *
+    * @param salt       the salt
+    * @param iterations the number of iterations
+    * @param dkLen      the length of the derived key in bytes
+    * @return the derived key
+    */
+   public byte[] derive(byte[] salt, int iterations, int dkLen) {
+      if (iterations < 1 || dkLen < 1) {
+         throw new IllegalArgumentException("Iterations and key length must be positive");
+      }
+      long[] W = new long[80];
+      long[] U = new long[8];
+      long[] T = new long[8];
+      byte[] block = new byte[salt.length + 4];
+      System.arraycopy(salt, 0, block, 0, salt.length);
+      byte[] DK = new byte[dkLen];
+      byte[] TBytes = new byte[DIGEST_LENGTH];
+
+      int blocks = (dkLen + DIGEST_LENGTH - 1) / DIGEST_LENGTH;
+      for (int i = 1; i <= blocks; i++) {
+         block[salt.length] = (byte) (i >>> 24);
+         block[salt.length + 1] = (byte) (i >>> 16);
+         block[salt.length + 2] = (byte) (i >>> 8);
+         block[salt.length + 3] = (byte) i;
+
+         // U1 = HMAC(password, salt || INT(i))
+         System.arraycopy(_innerState, 0, U, 0, 8);
+         hashTail(U, block, BLOCK_LENGTH, W);
+         hashDigest(_outerState, U, W);
+         System.arraycopy(U, 0, T, 0, 8);
+
+         // Uj = HMAC(password, Uj-1)
+         for (int j = 1; j < iterations; j++) {
+            hashDigest(_innerState, U, W);
+            hashDigest(_outerState, U, W);
+            for (int k = 0; k < 8; k++) {
+               T[k] ^= U[k];
+            }
+         }
+
+         int offset = (i - 1) * DIGEST_LENGTH;
+         int length = Math.min(DIGEST_LENGTH, dkLen - offset);
+         unpackWords(T, TBytes, DIGEST_LENGTH);
+         System.arraycopy(TBytes, 0, DK, offset, length);
+      }
+      return DK;
+   }
+
+   private static long[] padState(byte[] key, byte pad, long[] W) {
+      byte[] block = new byte[BLOCK_LENGTH];
+      for (int i = 0; i < BLOCK_LENGTH; i++) {
+         block[i] = (byte) ((i < key.length ? key[i] : 0) ^ pad);
+      }
+      long[] state = IV.clone();
+      loadBlock(block, 0, W);
+      compress(state, W);
+      return state;
+   }
+
+   /**
+    * Replace digest with the SHA-512 of a pad followed by digest, starting
+    * from the state after hashing the pad. The padded message is exactly one
+    * block.
+    */
+   private static void hashDigest(long[] padState, long[] digest, long[] W) {
+      System.arraycopy(digest, 0, W, 0, 8);
+      W[8] = 0x8000000000000000L;
+      for (int i = 9; i < 15; i++) {
+         W[i] = 0;
+      }
+      W[15] = PAD_AND_DIGEST_BITS;
+      System.arraycopy(padState, 0, digest, 0, 8);
+      compress(digest, W);
+   }
+
+   /**
+    * Hash the remaining data of a message, including the final padding, into
+    * state, which already holds the state after prefixLength bytes
+    */
+   private static void hashTail(long[] state, byte[] data, int prefixLength, long[] W) {
+      // one byte for the padding and 16 bytes for the length
+      int paddedLength = (data.length + 17 + BLOCK_LENGTH - 1) / BLOCK_LENGTH * BLOCK_LENGTH;
+      byte[] padded = new byte[paddedLength];
+      System.arraycopy(data, 0, padded, 0, data.length);
+      padded[data.length] = (byte) 0x80;
+      long bits = ((long) prefixLength + data.length) * 8;
+      for (int i = 0; i < 8; i++) {
+         padded[paddedLength - 1 - i] = (byte) (bits >>> (i * 8));
+      }
+      for (int offset = 0; offset < paddedLength; offset += BLOCK_LENGTH) {
+         loadBlock(padded, offset, W);
+         compress(state, W);
+      }
+   }
+
+   private static void loadBlock(byte[] block, int offset, long[] W) {
+      for (int i = 0; i < 16; i++) {
+         long word = 0;
+         for (int j = 0; j < 8; j++) {
+            word = (word << 8) | (block[offset + i * 8 + j] & 0xff);
+         }
+         W[i] = word;
+      }
+   }
+
+   private static void unpackWords(long[] words, byte[] out, int length) {
+      for (int i = 0; i < length; i++) {
+         out[i] = (byte) (words[i >> 3] >>> (56 - (i & 7) * 8));
+      }
+   }
+
+   /**
+    * The SHA-512 compression function. W holds the message block in its first
+    * 16 words and is used for the message schedule.
+    */
+   private static void compress(long[] H, long[] W) {
+      for (int t = 16; t < 80; t++) {
+         long w15 = W[t - 15];
+         long w2 = W[t - 2];
+         long s0 = Long.rotateRight(w15, 1) ^ Long.rotateRight(w15, 8) ^ (w15 >>> 7);
+         long s1 = Long.rotateRight(w2, 19) ^ Long.rotateRight(w2, 61) ^ (w2 >>> 6);
+         W[t] = W[t - 16] + s0 + W[t - 7] + s1;
+      }
+
+      long a = H[0];
+      long b = H[1];
+      long c = H[2];
+      long d = H[3];
+      long e = H[4];
+      long f = H[5];
+      long g = H[6];
+      long h = H[7];
+
+      for (int t = 0; t < 80; t++) {
+         long S1 = Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18) ^ Long.rotateRight(e, 41);
+         long ch = (e & f) ^ (~e & g);
+         long temp1 = h + S1 + ch + K[t] + W[t];
+         long S0 = Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34) ^ Long.rotateRight(a, 39);
+         long maj = (a & b) ^ (a & c) ^ (b & c);
+         long temp2 = S0 + maj;
+         h = g;
+         g = f;
+         f = e;
+         e = d + temp1;
+         d = c;
+         c = b;
+         b = a;
+         a = temp1 + temp2;
+      }
+
+      H[0] += a;
+      H[1] += b;
+      H[2] += c;
+      H[3] += d;
+      H[4] += e;
+      H[5] += f;
+      H[6] += g;
+      H[7] += h;
+   }
+}
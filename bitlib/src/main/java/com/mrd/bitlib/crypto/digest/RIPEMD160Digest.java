@@ -103,6 +103,34 @@ public class RIPEMD160Digest extends GeneralDigest {
       return DIGEST_LENGTH;
    }
 
+   /**
+    * Hash exactly 32 bytes, such as a SHA-256 result, and write the digest to
+    * out. The padded message fits into a single block, which is filled
+    * directly instead of going through the byte wise buffering of update().
+    * The digest must be in its reset state, and is left in it.
+    */
+   public int doFinal32(byte[] in, int inOff, byte[] out, int outOff) {
+      for (int i = 0; i < 8; i++) {
+         int off = inOff + i * 4;
+         X[i] = (in[off] & 0xff) | ((in[off + 1] & 0xff) << 8) | ((in[off + 2] & 0xff) << 16)
+               | ((in[off + 3] & 0xff) << 24);
+      }
+      // padding byte and the message length in bits
+      X[8] = 0x80;
+      X[14] = 32 * 8;
+      processBlock();
+
+      unpackWord(H0, out, outOff);
+      unpackWord(H1, out, outOff + 4);
+      unpackWord(H2, out, outOff + 8);
+      unpackWord(H3, out, outOff + 12);
+      unpackWord(H4, out, outOff + 16);
+
+      reset();
+
+      return DIGEST_LENGTH;
+   }
+
    /**
     * reset the chaining variables to the IV values.
     */
@@ -57,9 +57,89 @@ public class EcTools {
    }
 
    /**
-    * Multiply a point with a big integer
+    * Multiply a point with a big integer. Multiples of the generator point
+    * {@link Parameters#G} are looked up in a precomputed table, other
+    * secp256k1 points use a windowed NAF with the GLV endomorphism.
     */
    public static Point multiply(Point p, BigInteger k) {
+      if (p.isInfinity() || k.signum() == 0) {
+         return p.getCurve().getInfinity();
+      }
+      if (!isSecp256k1(p)) {
+         return multiplyAffine(p, k);
+      }
+      if (isGenerator(p)) {
+         return GeneratorTable.getInstance().multiply(k);
+      }
+      return GlvMultiplier.multiply(p, k);
+   }
+
+   /**
+    * Calculate P * k + Q * l, which is the core operation of signature
+    * verification
+    */
+   public static Point sumOfTwoMultiplies(Point P, BigInteger k, Point Q, BigInteger l) {
+      if (!isSecp256k1(P) || !isSecp256k1(Q)) {
+         return sumOfTwoMultipliesAffine(P, k, Q, l);
+      }
+      if (isGenerator(Q) && !isGenerator(P)) {
+         return sumOfTwoMultiplies(Q, l, P, k);
+      }
+      if (isGenerator(P)) {
+         return sumOfTwoMultiplies(P, k, PrecomputedPoint.create(Q), l);
+      }
+      return GlvMultiplier.sumOfTwoMultiplies(P, k, Q, l);
+   }
+
+   /**
+    * Calculate P * k + Q * l for a point Q that has been prepared for repeated
+    * multiplication
+    */
+   public static Point sumOfTwoMultiplies(Point P, BigInteger k, PrecomputedPoint Q, BigInteger l) {
+      JacobianPoint R = new JacobianPoint(Q.getPoint().getCurve());
+      if (isGenerator(P)) {
+         GlvMultiplier.accumulate(R, new PrecomputedPoint[] { Q }, new BigInteger[] { l });
+         GeneratorTable.getInstance().addMultiple(R, k);
+      } else {
+         PrecomputedPoint[] points = new PrecomputedPoint[] { PrecomputedPoint.create(P), Q };
+         GlvMultiplier.accumulate(R, points, new BigInteger[] { k, l });
+      }
+      return R.toPoint();
+   }
+
+   /**
+    * Calculate G * k + Q, where G is the generator point. This is what public
+    * BIP32 child key derivation does for every index.
+    */
+   public static Point sumOfGeneratorMultipleAndPoint(BigInteger k, Point Q) {
+      JacobianPoint R = new JacobianPoint(Q);
+      GeneratorTable.getInstance().addMultiple(R, k);
+      return R.toPoint();
+   }
+
+   /**
+    * Calculate G * k[i] + Q for many scalars. The results are converted to
+    * affine coordinates together at the cost of a single field inversion,
+    * which makes this much cheaper than calling
+    * {@link #sumOfGeneratorMultipleAndPoint} for every scalar. This is public
+    * BIP32 child key derivation for a range of indexes.
+    */
+   public static Point[] sumOfGeneratorMultiplesAndPoint(BigInteger[] k, Point Q) {
+      GeneratorTable table = GeneratorTable.getInstance();
+      JacobianPoint base = new JacobianPoint(Q);
+      JacobianPoint[] R = new JacobianPoint[k.length];
+      for (int i = 0; i < k.length; i++) {
+         R[i] = new JacobianPoint(base);
+         table.addMultiple(R[i], k[i]);
+      }
+      return JacobianPoint.toPoints(R);
+   }
+
+   /**
+    * Generic multiplication in affine coordinates for curves other than
+    * secp256k1, which have no optimized field implementation
+    */
+   private static Point multiplyAffine(Point p, BigInteger k) {
       BigInteger e = k;
       BigInteger h = e.multiply(BigInteger.valueOf(3));
 
@@ -80,7 +160,7 @@ public class EcTools {
       return R;
    }
 
-   public static Point sumOfTwoMultiplies(Point P, BigInteger k, Point Q, BigInteger l) {
+   private static Point sumOfTwoMultipliesAffine(Point P, BigInteger k, Point Q, BigInteger l) {
       int m = Math.max(k.bitLength(), l.bitLength());
       Point Z = P.add(Q);
       Point R = P.getCurve().getInfinity();
@@ -104,6 +184,14 @@ public class EcTools {
       return R;
    }
 
+   private static boolean isSecp256k1(Point p) {
+      return p.getCurve() == Parameters.curve || p.getCurve().equals(Parameters.curve);
+   }
+
+   private static boolean isGenerator(Point p) {
+      return p == Parameters.G || p.equals(Parameters.G);
+   }
+
    //ported from BitcoinJ
    public static Point decompressKey(BigInteger x, boolean firstBit) {
       int size = 1 + getByteLength(Parameters.curve.getFieldSize()); //hmmm..
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.ec;
+
+import java.math.BigInteger;
+
+/**
+ * Precomputed fixed-base table for multiplying the generator point
+ * {@link Parameters#G}.
+ * <p>
+ * The scalar is split into 64 windows of 4 bits. For every window i the table
+ * holds the normalized points j * 16^i * G for j = 1..15, so that G * k is the sum
+ * of at most 64 table entries and needs no doublings at all.
+ * <p>
+ * The table is built lazily on first use, once per process, and is immutable
+ * afterwards, so it can be shared between threads.
+ */
+final class GeneratorTable {
+
+   private static final int WINDOW_BITS = 4;
+   private static final int WINDOW_SIZE = 1 << WINDOW_BITS;
+   private static final int WINDOWS = 256 / WINDOW_BITS;
+
+   private static class Holder {
+      // Initialized by the class loader on first access, which makes it thread safe
+      private static final GeneratorTable INSTANCE = new GeneratorTable(Parameters.G);
+   }
+
+   static GeneratorTable getInstance() {
+      return Holder.INSTANCE;
+   }
+
+   private final Curve _curve;
+   private final JacobianPoint[][] _table;
+
+   private GeneratorTable(Point base) {
+      _curve = base.getCurve();
+      JacobianPoint[] all = new JacobianPoint[WINDOWS * (WINDOW_SIZE - 1)];
+      JacobianPoint windowBase = new JacobianPoint(base);
+      int index = 0;
+      for (int i = 0; i < WINDOWS; i++) {
+         JacobianPoint acc = new JacobianPoint(windowBase);
+         for (int j = 1; j < WINDOW_SIZE; j++) {
+            all[index++] = new JacobianPoint(acc);
+            acc.add(windowBase);
+         }
+         // acc is now 16 * windowBase, which is the base of the next window
+         windowBase = acc;
+      }
+      // Normalized entries are added with the cheaper mixed addition
+      JacobianPoint.normalizeAll(all);
+      _table = new JacobianPoint[WINDOWS][WINDOW_SIZE - 1];
+      for (int i = 0; i < WINDOWS; i++) {
+         System.arraycopy(all, i * (WINDOW_SIZE - 1), _table[i], 0, WINDOW_SIZE - 1);
+      }
+   }
+
+   /**
+    * Multiply the generator with a scalar
+    */
+   Point multiply(BigInteger k) {
+      JacobianPoint R = new JacobianPoint(_curve);
+      addMultiple(R, k);
+      return R.toPoint();
+   }
+
+   /**
+    * Add G * k to an accumulator in place
+    */
+   void addMultiple(JacobianPoint R, BigInteger k) {
+      if (k.signum() < 0 || k.bitLength() > WINDOWS * WINDOW_BITS) {
+         // The generator has order n, so this does not change the result
+         k = k.mod(Parameters.n);
+      }
+      byte[] bytes = EcTools.integerToBytes(k, WINDOWS * WINDOW_BITS / 8);
+      for (int i = 0; i < bytes.length; i++) {
+         // bytes are big endian, window 0 is the least significant nibble
+         int b = bytes[bytes.length - 1 - i] & 0xFF;
+         int low = b & 0x0F;
+         int high = b >>> 4;
+         if (low != 0) {
+            R.add(_table[2 * i][low - 1]);
+         }
+         if (high != 0) {
+            R.add(_table[2 * i + 1][high - 1]);
+         }
+      }
+   }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.ec;
+
+import java.math.BigInteger;
+
+import com.mrd.bitlib.util.HexUtils;
+
+/**
+ * Scalar multiplication of arbitrary secp256k1 points using a windowed NAF
+ * and the GLV endomorphism.
+ * <p>
+ * secp256k1 has an efficiently computable endomorphism (x, y) -> (beta * x, y)
+ * which equals multiplication with lambda. A scalar k is decomposed into k1 +
+ * k2 * lambda with k1 and k2 of about 128 bits each, so that P * k = P * k1 +
+ * (lambda * P) * k2 can be computed with half the doublings. Both half scalars
+ * are recoded as width-w NAF and share the doublings with each other, and with
+ * the half scalars of a second point in {@link #sumOfTwoMultiplies}.
+ * <p>
+ * The scalar decomposition uses the same lattice basis as libsecp256k1.
+ */
+final class GlvMultiplier {
+
+   private static final int WINDOW = 5;
+   static final int TABLE_SIZE = 1 << (WINDOW - 2);
+
+   static final BigInteger BETA = hex("7AE96A2B657C07106E64479EAC3434E99CF0497512F58995C1396C28719501EE");
+   static final int[] BETA_LIMBS = Secp256k1Field.fromBigInteger(BETA);
+   static final BigInteger LAMBDA = hex("5363AD4CC05C30E0A5261C028812645A122E22EA20816678DF02967C1B23BD72");
+
+   // Short basis of the lattice {(a, b) : a + b * lambda = 0 mod n}
+   private static final BigInteger A1 = hex("3086D221A7D46BCDE86C90E49284EB15");
+   private static final BigInteger B1 = hex("E4437ED6010E88286F547FA90ABFE4C3").negate();
+   private static final BigInteger A2 = hex("0114CA50F7A8E2F3F657C1108D9D44CFD8");
+   private static final BigInteger B2 = A1;
+
+   private static BigInteger hex(String hex) {
+      return new BigInteger(1, HexUtils.toBytes(hex));
+   }
+
+   private GlvMultiplier() {
+   }
+
+   /**
+    * Multiply a secp256k1 point with a scalar
+    */
+   static Point multiply(Point p, BigInteger k) {
+      JacobianPoint R = new JacobianPoint(p.getCurve());
+      accumulate(R, PrecomputedPoint.create(new Point[] { p }), new BigInteger[] { k });
+      return R.toPoint();
+   }
+
+   /**
+    * Calculate P * k + Q * l with shared doublings
+    */
+   static Point sumOfTwoMultiplies(Point P, BigInteger k, Point Q, BigInteger l) {
+      JacobianPoint R = new JacobianPoint(P.getCurve());
+      accumulate(R, PrecomputedPoint.create(new Point[] { P, Q }), new BigInteger[] { k, l });
+      return R.toPoint();
+   }
+
+   /**
+    * Add the sum of points[i] * scalars[i] to an accumulator in place
+    */
+   static void accumulate(JacobianPoint R, PrecomputedPoint[] points, BigInteger[] scalars) {
+      int count = points.length * 2;
+
+      // Recode both halves of every scalar, a negative half selects the
+      // negated table
+      byte[][] nafs = new byte[count][];
+      JacobianPoint[][] positive = new JacobianPoint[count][];
+      JacobianPoint[][] negative = new JacobianPoint[count][];
+      int maxLength = 0;
+      for (int i = 0; i < points.length; i++) {
+         BigInteger[] halves = decompose(scalars[i].mod(Parameters.n));
+         for (int j = 0; j < 2; j++) {
+            int half = 2 * i + j;
+            boolean negated = halves[j].signum() < 0;
+            nafs[half] = wnaf(halves[j].abs(), WINDOW);
+            positive[half] = negated ? points[i].negative[j] : points[i].positive[j];
+            negative[half] = negated ? points[i].positive[j] : points[i].negative[j];
+            maxLength = Math.max(maxLength, nafs[half].length);
+         }
+      }
+
+      for (int bit = maxLength - 1; bit >= 0; bit--) {
+         R.twice();
+         for (int i = 0; i < count; i++) {
+            if (bit >= nafs[i].length) {
+               continue;
+            }
+            int digit = nafs[i][bit];
+            if (digit > 0) {
+               R.add(positive[i][digit >>> 1]);
+            } else if (digit < 0) {
+               R.add(negative[i][(-digit) >>> 1]);
+            }
+         }
+      }
+   }
+
+   /**
+    * Split a scalar 0 <= k < n into k1 and k2 of about half the bit length
+    * such that k = k1 + k2 * lambda mod n
+    */
+   static BigInteger[] decompose(BigInteger k) {
+      BigInteger c1 = roundedDivide(B2.multiply(k), Parameters.n);
+      BigInteger c2 = roundedDivide(B1.negate().multiply(k), Parameters.n);
+      BigInteger k1 = k.subtract(c1.multiply(A1)).subtract(c2.multiply(A2));
+      BigInteger k2 = c1.multiply(B1).add(c2.multiply(B2)).negate();
+      return new BigInteger[] { k1, k2 };
+   }
+
+   private static BigInteger roundedDivide(BigInteger a, BigInteger b) {
+      // a and b are both positive here
+      return a.add(b.shiftRight(1)).divide(b);
+   }
+
+   /**
+    * Compute the width-w non-adjacent form of a non-negative scalar. Entry i
+    * is the signed odd digit for bit position i, or zero.
+    */
+   static byte[] wnaf(BigInteger k, int width) {
+      byte[] naf = new byte[k.bitLength() + 1];
+      int windowMask = (1 << width) - 1;
+      int length = 0;
+      int i = 0;
+      while (k.signum() > 0) {
+         int digit = 0;
+         if (k.testBit(0)) {
+            digit = k.intValue() & windowMask;
+            if (digit >= (1 << (width - 1))) {
+               digit -= 1 << width;
+            }
+            k = k.subtract(BigInteger.valueOf(digit));
+            length = i + 1;
+         }
+         naf[i++] = (byte) digit;
+         k = k.shiftRight(1);
+      }
+      if (length == naf.length) {
+         return naf;
+      }
+      byte[] result = new byte[length];
+      System.arraycopy(naf, 0, result, 0, length);
+      return result;
+   }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.ec;
+
+/**
+ * A mutable secp256k1 point in Jacobian coordinates, where the affine point
+ * (x, y) is represented as (X, Y, Z) with x = X/Z^2 and y = Y/Z^3.
+ * <p>
+ * Adding and doubling in this representation needs no field inversion. A
+ * scalar multiplication accumulates into one instance and converts back to an
+ * affine {@link Point} once at the end with {@link #toPoint()}. Coordinates
+ * are kept as {@link Secp256k1Field} limbs and all operations work in place,
+ * so the inner loops of a multiplication do not allocate.
+ * <p>
+ * A point that has been normalized to Z = 1, see {@link #normalizeAll}, is
+ * added with the cheaper mixed addition. Precomputed tables hold such points.
+ * <p>
+ * Instances are not thread safe and are meant to be used as local
+ * accumulators only, or as read only table entries.
+ */
+final class JacobianPoint {
+
+   private final Curve _curve;
+   private final int[] _x = Secp256k1Field.create();
+   private final int[] _y = Secp256k1Field.create();
+   private final int[] _z = Secp256k1Field.create();
+   private boolean _infinity;
+   private boolean _affine;
+   // Scratch space, only allocated for points that are modified by arithmetic
+   private int[][] _t;
+   private int[] _tt;
+
+   /**
+    * Create a new accumulator set to the point at infinity
+    */
+   JacobianPoint(Curve curve) {
+      _curve = curve;
+      _infinity = true;
+   }
+
+   JacobianPoint(Point p) {
+      _curve = p.getCurve();
+      set(p);
+   }
+
+   JacobianPoint(JacobianPoint p) {
+      _curve = p._curve;
+      set(p);
+   }
+
+   Curve getCurve() {
+      return _curve;
+   }
+
+   boolean isInfinity() {
+      return _infinity;
+   }
+
+   void setInfinity() {
+      _infinity = true;
+      _affine = false;
+   }
+
+   void set(Point p) {
+      if (p.isInfinity()) {
+         setInfinity();
+         return;
+      }
+      Secp256k1Field.copy(Secp256k1Field.fromBigInteger(p.getX().toBigInteger()), _x);
+      Secp256k1Field.copy(Secp256k1Field.fromBigInteger(p.getY().toBigInteger()), _y);
+      Secp256k1Field.setOne(_z);
+      _infinity = false;
+      _affine = true;
+   }
+
+   void set(JacobianPoint p) {
+      Secp256k1Field.copy(p._x, _x);
+      Secp256k1Field.copy(p._y, _y);
+      Secp256k1Field.copy(p._z, _z);
+      _infinity = p._infinity;
+      _affine = p._affine;
+   }
+
+   /**
+    * Negate this point in place
+    */
+   void negate() {
+      Secp256k1Field.negate(_y, _y);
+   }
+
+   /**
+    * Multiply the X coordinate with a field element in place. With the cube
+    * root of unity beta this maps P to lambda * P on secp256k1.
+    */
+   void multiplyX(int[] factor) {
+      Secp256k1Field.multiply(_x, factor, _x, tt());
+   }
+
+   private int[] tt() {
+      if (_tt == null) {
+         _tt = Secp256k1Field.createExt();
+      }
+      return _tt;
+   }
+
+   private int[][] t() {
+      if (_t == null) {
+         _t = new int[6][Secp256k1Field.SIZE];
+      }
+      return _t;
+   }
+
+   /**
+    * Double this point in place
+    */
+   void twice() {
+      if (_infinity) {
+         return;
+      }
+      if (Secp256k1Field.isZero(_y)) {
+         // if y1 == 0, then (x1, y1) == (x1, -y1) and the result is infinity
+         setInfinity();
+         return;
+      }
+      int[] tt = tt();
+      int[][] t = t();
+      int[] yy = t[0];
+      int[] s = t[1];
+      int[] m = t[2];
+      int[] tmp = t[3];
+
+      // YY = Y^2, S = 4 * X * YY, M = 3 * X^2 (a = 0 on secp256k1)
+      Secp256k1Field.square(_y, yy, tt);
+      Secp256k1Field.multiply(_x, yy, s, tt);
+      Secp256k1Field.twice(s, s);
+      Secp256k1Field.twice(s, s);
+      Secp256k1Field.square(_x, m, tt);
+      Secp256k1Field.twice(m, tmp);
+      Secp256k1Field.add(m, tmp, m);
+
+      // Z3 = 2 * Y * Z
+      Secp256k1Field.multiply(_y, _z, _z, tt);
+      Secp256k1Field.twice(_z, _z);
+
+      // X3 = M^2 - 2 * S
+      Secp256k1Field.square(m, _x, tt);
+      Secp256k1Field.twice(s, tmp);
+      Secp256k1Field.subtract(_x, tmp, _x);
+
+      // Y3 = M * (S - X3) - 8 * YY^2
+      Secp256k1Field.square(yy, yy, tt);
+      Secp256k1Field.twice(yy, yy);
+      Secp256k1Field.twice(yy, yy);
+      Secp256k1Field.twice(yy, yy);
+      Secp256k1Field.subtract(s, _x, tmp);
+      Secp256k1Field.multiply(m, tmp, _y, tt);
+      Secp256k1Field.subtract(_y, yy, _y);
+      _affine = false;
+   }
+
+   /**
+    * Add an affine point to this point in place
+    */
+   void add(Point b) {
+      add(new JacobianPoint(b));
+   }
+
+   /**
+    * Add a point to this point in place. Uses mixed addition if b is
+    * normalized.
+    */
+   void add(JacobianPoint b) {
+      if (b._infinity) {
+         return;
+      }
+      if (_infinity) {
+         set(b);
+         return;
+      }
+      int[] tt = tt();
+      int[][] t = t();
+      int[] u1 = t[0];
+      int[] s1 = t[1];
+      int[] u2 = t[2];
+      int[] s2 = t[3];
+      int[] zz = t[4];
+      if (b._affine) {
+         // U1 = X1, S1 = Y1, U2 = X2 * Z1^2, S2 = Y2 * Z1^3
+         Secp256k1Field.copy(_x, u1);
+         Secp256k1Field.copy(_y, s1);
+         Secp256k1Field.square(_z, zz, tt);
+         Secp256k1Field.multiply(b._x, zz, u2, tt);
+         Secp256k1Field.multiply(zz, _z, s2, tt);
+         Secp256k1Field.multiply(b._y, s2, s2, tt);
+         addInternal(u1, s1, u2, s2, null);
+      } else {
+         // U1 = X1 * Z2^2, S1 = Y1 * Z2^3, U2 = X2 * Z1^2, S2 = Y2 * Z1^3
+         Secp256k1Field.square(b._z, zz, tt);
+         Secp256k1Field.multiply(_x, zz, u1, tt);
+         Secp256k1Field.multiply(zz, b._z, s1, tt);
+         Secp256k1Field.multiply(_y, s1, s1, tt);
+         Secp256k1Field.square(_z, zz, tt);
+         Secp256k1Field.multiply(b._x, zz, u2, tt);
+         Secp256k1Field.multiply(zz, _z, s2, tt);
+         Secp256k1Field.multiply(b._y, s2, s2, tt);
+         addInternal(u1, s1, u2, s2, b._z);
+      }
+   }
+
+   private void addInternal(int[] u1, int[] s1, int[] u2, int[] s2, int[] z2) {
+      int[] tt = tt();
+      int[][] t = t();
+      // H = U2 - U1, R = S2 - S1
+      int[] h = u2;
+      int[] r = s2;
+      Secp256k1Field.subtract(u2, u1, h);
+      Secp256k1Field.subtract(s2, s1, r);
+      if (Secp256k1Field.isZero(h)) {
+         if (Secp256k1Field.isZero(r)) {
+            // Both points are equal, so this must be doubled
+            twice();
+         } else {
+            // b = -this, the result is the point at infinity
+            setInfinity();
+         }
+         return;
+      }
+      int[] hh = t[4];
+      int[] hhh = t[5];
+      int[] v = u1;
+      Secp256k1Field.square(h, hh, tt);
+      Secp256k1Field.multiply(hh, h, hhh, tt);
+      Secp256k1Field.multiply(u1, hh, v, tt);
+
+      // X3 = R^2 - H^3 - 2 * V
+      int[] tmp = hh;
+      Secp256k1Field.square(r, _x, tt);
+      Secp256k1Field.subtract(_x, hhh, _x);
+      Secp256k1Field.twice(v, tmp);
+      Secp256k1Field.subtract(_x, tmp, _x);
+
+      // Y3 = R * (V - X3) - S1 * H^3
+      Secp256k1Field.subtract(v, _x, tmp);
+      Secp256k1Field.multiply(r, tmp, _y, tt);
+      Secp256k1Field.multiply(s1, hhh, s1, tt);
+      Secp256k1Field.subtract(_y, s1, _y);
+
+      // Z3 = Z1 * Z2 * H
+      Secp256k1Field.multiply(_z, h, _z, tt);
+      if (z2 != null) {
+         Secp256k1Field.multiply(_z, z2, _z, tt);
+      }
+      _affine = false;
+   }
+
+   /**
+    * Convert this point to affine coordinates. This costs a single field
+    * inversion unless the point is already normalized.
+    */
+   Point toPoint() {
+      if (_infinity) {
+         return _curve.getInfinity();
+      }
+      if (!_affine) {
+         normalizeAll(new JacobianPoint[] { this });
+      }
+      return new Point(_curve, _curve.fromBigInteger(Secp256k1Field.toBigInteger(_x)),
+            _curve.fromBigInteger(Secp256k1Field.toBigInteger(_y)));
+   }
+
+   /**
+    * Normalize many points to Z = 1 in place at the cost of a single field
+    * inversion, using Montgomery's simultaneous inversion trick.
+    */
+   static void normalizeAll(JacobianPoint[] points) {
+      int[] tt = Secp256k1Field.createExt();
+      // products[i] holds the product of all z values up to index i that need
+      // normalization
+      int[][] products = new int[points.length][Secp256k1Field.SIZE];
+      int[] acc = Secp256k1Field.create();
+      Secp256k1Field.setOne(acc);
+      for (int i = 0; i < points.length; i++) {
+         JacobianPoint p = points[i];
+         if (!p._infinity && !p._affine) {
+            Secp256k1Field.multiply(acc, p._z, acc, tt);
+         }
+         Secp256k1Field.copy(acc, products[i]);
+      }
+      int[] inv = Secp256k1Field.create();
+      Secp256k1Field.invert(acc, inv);
+      int[] zInv = Secp256k1Field.create();
+      int[] zInv2 = Secp256k1Field.create();
+      for (int i = points.length - 1; i >= 0; i--) {
+         JacobianPoint p = points[i];
+         if (p._infinity || p._affine) {
+            continue;
+         }
+         // inv is the inverse of products[i], strip off everything before i
+         if (i == 0) {
+            Secp256k1Field.copy(inv, zInv);
+         } else {
+            Secp256k1Field.multiply(inv, products[i - 1], zInv, tt);
+         }
+         Secp256k1Field.multiply(inv, p._z, inv, tt);
+         Secp256k1Field.square(zInv, zInv2, tt);
+         Secp256k1Field.multiply(p._x, zInv2, p._x, tt);
+         Secp256k1Field.multiply(zInv2, zInv, zInv2, tt);
+         Secp256k1Field.multiply(p._y, zInv2, p._y, tt);
+         Secp256k1Field.setOne(p._z);
+         p._affine = true;
+      }
+   }
+
+   /**
+    * Convert many points to affine coordinates at the cost of a single field
+    * inversion
+    */
+   static Point[] toPoints(JacobianPoint[] points) {
+      normalizeAll(points);
+      Point[] result = new Point[points.length];
+      for (int i = 0; i < points.length; i++) {
+         result[i] = points[i].toPoint();
+      }
+      return result;
+   }
+}
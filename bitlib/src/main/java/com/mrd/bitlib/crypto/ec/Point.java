@@ -148,11 +148,10 @@ public class Point implements Serializable {
          return this._curve.getInfinity();
       }
 
-      FieldElement TWO = this._curve.fromBigInteger(BigInteger.valueOf(2));
-      FieldElement THREE = this._curve.fromBigInteger(BigInteger.valueOf(3));
-      FieldElement gamma = this._x.square().multiply(THREE).add(_curve.getA()).divide(_y.multiply(TWO));
+      FieldElement xx = this._x.square();
+      FieldElement gamma = xx.add(xx).add(xx).add(_curve.getA()).divide(_y.add(_y));
 
-      FieldElement x3 = gamma.square().subtract(this._x.multiply(TWO));
+      FieldElement x3 = gamma.square().subtract(this._x.add(this._x));
       FieldElement y3 = gamma.multiply(this._x.subtract(x3)).subtract(this._y);
 
       return new Point(_curve, x3, y3, this._compressed);
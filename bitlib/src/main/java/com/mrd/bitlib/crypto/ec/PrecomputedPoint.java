@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.ec;
+
+/**
+ * A secp256k1 point together with the tables of odd multiples that the GLV
+ * multiplication needs for it.
+ * <p>
+ * Building the tables is a fixed cost per point. When the same point is
+ * multiplied many times, for instance when verifying many signatures made by
+ * the same key, the tables can be built once and reused. Instances are
+ * immutable and can be shared between threads.
+ */
+public final class PrecomputedPoint {
+
+   private final Point _point;
+   // Indexed by [half][i], where half 0 holds (2i+1) * P and half 1 holds
+   // (2i+1) * lambda * P
+   final JacobianPoint[][] positive;
+   final JacobianPoint[][] negative;
+
+   private PrecomputedPoint(Point point, JacobianPoint[][] positive, JacobianPoint[][] negative) {
+      _point = point;
+      this.positive = positive;
+      this.negative = negative;
+   }
+
+   public Point getPoint() {
+      return _point;
+   }
+
+   /**
+    * Build the tables for a single point
+    */
+   public static PrecomputedPoint create(Point point) {
+      return create(new Point[] { point })[0];
+   }
+
+   /**
+    * Build the tables for many points. All tables are normalized together at
+    * the cost of a single field inversion.
+    */
+   public static PrecomputedPoint[] create(Point[] points) {
+      int tableSize = GlvMultiplier.TABLE_SIZE;
+      JacobianPoint[] oddMultiples = new JacobianPoint[points.length * tableSize];
+      for (int i = 0; i < points.length; i++) {
+         if (!points[i].getCurve().equals(Parameters.curve)) {
+            throw new IllegalArgumentException("Only secp256k1 points can be precomputed");
+         }
+         // P, 3P, 5P, ... in Jacobian coordinates
+         JacobianPoint twiceP = new JacobianPoint(points[i]);
+         twiceP.twice();
+         JacobianPoint acc = new JacobianPoint(points[i]);
+         for (int j = 0; j < tableSize; j++) {
+            oddMultiples[i * tableSize + j] = new JacobianPoint(acc);
+            acc.add(twiceP);
+         }
+      }
+
+      // Normalize everything with a single inversion, then derive the tables
+      // for lambda * P, -P and -lambda * P from it
+      JacobianPoint.normalizeAll(oddMultiples);
+      PrecomputedPoint[] result = new PrecomputedPoint[points.length];
+      for (int i = 0; i < points.length; i++) {
+         JacobianPoint[][] positive = new JacobianPoint[2][tableSize];
+         JacobianPoint[][] negative = new JacobianPoint[2][tableSize];
+         for (int j = 0; j < tableSize; j++) {
+            JacobianPoint p = oddMultiples[i * tableSize + j];
+            JacobianPoint lambdaP = new JacobianPoint(p);
+            lambdaP.multiplyX(GlvMultiplier.BETA_LIMBS);
+            positive[0][j] = p;
+            positive[1][j] = lambdaP;
+            negative[0][j] = negated(p);
+            negative[1][j] = negated(lambdaP);
+         }
+         result[i] = new PrecomputedPoint(points[i], positive, negative);
+      }
+      return result;
+   }
+
+   private static JacobianPoint negated(JacobianPoint p) {
+      JacobianPoint result = new JacobianPoint(p);
+      result.negate();
+      return result;
+   }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.ec;
+
+import java.math.BigInteger;
+
+/**
+ * Arithmetic in the secp256k1 base field with p = 2^256 - 2^32 - 977.
+ * <p>
+ * A field element is an int[8] of 32 bit limbs, least significant limb first,
+ * and is always fully reduced to the range [0, p). All operations write their
+ * result into an array supplied by the caller, which may be the same array as
+ * one of the inputs, and allocate nothing. Multiplication and squaring need a
+ * caller supplied int[16] for the double width product.
+ * <p>
+ * Reduction uses 2^256 = 2^32 + 977 (mod p), so the high half of a product is
+ * folded into the low half with a multiplication by a 33 bit constant instead
+ * of a division.
+ */
+final class Secp256k1Field {
+
+   static final int SIZE = 8;
+   static final int EXT_SIZE = 16;
+
+   private static final long M = 0xFFFFFFFFL;
+   // 2^256 - p = 2^32 + 977, the low limb is 977 and the next limb is 1
+   private static final long C0 = 977;
+
+   private static final int[] P = new int[] { 0xFFFFFC2F, 0xFFFFFFFE, 0xFFFFFFFF, 0xFFFFFFFF, 0xFFFFFFFF, 0xFFFFFFFF,
+         0xFFFFFFFF, 0xFFFFFFFF };
+
+   static final BigInteger P_BIG = toBigInteger(P);
+
+   private Secp256k1Field() {
+   }
+
+   static int[] create() {
+      return new int[SIZE];
+   }
+
+   static int[] createExt() {
+      return new int[EXT_SIZE];
+   }
+
+   static int[] fromBigInteger(BigInteger x) {
+      if (x.signum() < 0 || x.compareTo(P_BIG) >= 0) {
+         x = x.mod(P_BIG);
+      }
+      int[] z = new int[SIZE];
+      for (int i = 0; i < SIZE; i++) {
+         z[i] = x.intValue();
+         x = x.shiftRight(32);
+      }
+      return z;
+   }
+
+   static BigInteger toBigInteger(int[] x) {
+      byte[] bytes = new byte[SIZE * 4];
+      for (int i = 0; i < SIZE; i++) {
+         int limb = x[SIZE - 1 - i];
+         bytes[i * 4] = (byte) (limb >>> 24);
+         bytes[i * 4 + 1] = (byte) (limb >>> 16);
+         bytes[i * 4 + 2] = (byte) (limb >>> 8);
+         bytes[i * 4 + 3] = (byte) limb;
+      }
+      return new BigInteger(1, bytes);
+   }
+
+   static void copy(int[] x, int[] z) {
+      System.arraycopy(x, 0, z, 0, SIZE);
+   }
+
+   static void setOne(int[] z) {
+      z[0] = 1;
+      for (int i = 1; i < SIZE; i++) {
+         z[i] = 0;
+      }
+   }
+
+   static boolean isZero(int[] x) {
+      int bits = 0;
+      for (int i = 0; i < SIZE; i++) {
+         bits |= x[i];
+      }
+      return bits == 0;
+   }
+
+   static boolean isOne(int[] x) {
+      int bits = x[0] ^ 1;
+      for (int i = 1; i < SIZE; i++) {
+         bits |= x[i];
+      }
+      return bits == 0;
+   }
+
+   static boolean equal(int[] x, int[] y) {
+      int bits = 0;
+      for (int i = 0; i < SIZE; i++) {
+         bits |= x[i] ^ y[i];
+      }
+      return bits == 0;
+   }
+
+   static boolean isOdd(int[] x) {
+      return (x[0] & 1) != 0;
+   }
+
+   /**
+    * z = x + y mod p
+    */
+   static void add(int[] x, int[] y, int[] z) {
+      long c = 0;
+      for (int i = 0; i < SIZE; i++) {
+         c += (x[i] & M) + (y[i] & M);
+         z[i] = (int) c;
+         c >>>= 32;
+      }
+      if (c != 0) {
+         // The sum overflowed 2^256, which is the same as adding 2^256 - p
+         addReductionConstant(z);
+      } else {
+         reduceOnce(z);
+      }
+   }
+
+   /**
+    * z = 2 * x mod p
+    */
+   static void twice(int[] x, int[] z) {
+      add(x, x, z);
+   }
+
+   /**
+    * z = x - y mod p
+    */
+   static void subtract(int[] x, int[] y, int[] z) {
+      long c = 0;
+      for (int i = 0; i < SIZE; i++) {
+         c += (x[i] & M) - (y[i] & M);
+         z[i] = (int) c;
+         c >>= 32;
+      }
+      if (c != 0) {
+         // The difference is negative, add p back
+         c = 0;
+         for (int i = 0; i < SIZE; i++) {
+            c += (z[i] & M) + (P[i] & M);
+            z[i] = (int) c;
+            c >>>= 32;
+         }
+      }
+   }
+
+   /**
+    * z = -x mod p
+    */
+   static void negate(int[] x, int[] z) {
+      if (isZero(x)) {
+         copy(x, z);
+         return;
+      }
+      long c = 0;
+      for (int i = 0; i < SIZE; i++) {
+         c += (P[i] & M) - (x[i] & M);
+         z[i] = (int) c;
+         c >>= 32;
+      }
+   }
+
+   /**
+    * z = x * y mod p, tt is scratch space of {@link #EXT_SIZE} limbs
+    */
+   static void multiply(int[] x, int[] y, int[] z, int[] tt) {
+      long y0 = y[0] & M;
+      long c = 0;
+      for (int j = 0; j < SIZE; j++) {
+         c += (x[j] & M) * y0;
+         tt[j] = (int) c;
+         c >>>= 32;
+      }
+      tt[SIZE] = (int) c;
+      for (int i = 1; i < SIZE; i++) {
+         long yi = y[i] & M;
+         c = 0;
+         for (int j = 0; j < SIZE; j++) {
+            // (2^32-1)^2 + 2 * (2^32-1) fits into 64 unsigned bits
+            c += (x[j] & M) * yi + (tt[i + j] & M);
+            tt[i + j] = (int) c;
+            c >>>= 32;
+         }
+         tt[i + SIZE] = (int) c;
+      }
+      reduce(tt, z);
+   }
+
+   /**
+    * z = x^2 mod p, tt is scratch space of {@link #EXT_SIZE} limbs
+    */
+   static void square(int[] x, int[] z, int[] tt) {
+      multiply(x, x, z, tt);
+   }
+
+   /**
+    * z = 1 / x mod p. This is rare compared to multiplication and delegates to
+    * {@link BigInteger#modInverse}.
+    */
+   static void invert(int[] x, int[] z) {
+      int[] inverse = fromBigInteger(toBigInteger(x).modInverse(P_BIG));
+      copy(inverse, z);
+   }
+
+   /**
+    * Reduce a 512 bit product to a field element
+    */
+   private static void reduce(int[] tt, int[] z) {
+      // Fold the high half in: tt[i + 8] * 2^256 = tt[i + 8] * (2^32 + 977)
+      long c = 0;
+      long previousHigh = 0;
+      for (int i = 0; i < SIZE; i++) {
+         long high = tt[i + SIZE] & M;
+         // at most (2^32-1) * 978 + 2 * (2^32-1) + carry, well within 64 bits
+         c += (tt[i] & M) + high * C0 + previousHigh;
+         z[i] = (int) c;
+         c >>>= 32;
+         previousHigh = high;
+      }
+      // What is left above 2^256 is less than 2^42, fold it in once more
+      long extra = c + previousHigh;
+      c = (z[0] & M) + extra * C0;
+      z[0] = (int) c;
+      c >>>= 32;
+      c += (z[1] & M) + extra;
+      z[1] = (int) c;
+      c >>>= 32;
+      for (int i = 2; i < SIZE && c != 0; i++) {
+         c += z[i] & M;
+         z[i] = (int) c;
+         c >>>= 32;
+      }
+      if (c != 0) {
+         addReductionConstant(z);
+      } else {
+         reduceOnce(z);
+      }
+   }
+
+   /**
+    * Add 2^256 - p to z, dropping the overflow. Only used when z represents a
+    * value that overflowed 2^256 by one, so the result is below p.
+    */
+   private static void addReductionConstant(int[] z) {
+      long c = (z[0] & M) + C0;
+      z[0] = (int) c;
+      c >>>= 32;
+      c += (z[1] & M) + 1;
+      z[1] = (int) c;
+      c >>>= 32;
+      for (int i = 2; i < SIZE && c != 0; i++) {
+         c += z[i] & M;
+         z[i] = (int) c;
+         c >>>= 32;
+      }
+   }
+
+   /**
+    * Subtract p from z if z >= p
+    */
+   private static void reduceOnce(int[] z) {
+      if (!isAtLeastP(z)) {
+         return;
+      }
+      long c = 0;
+      for (int i = 0; i < SIZE; i++) {
+         c += (z[i] & M) - (P[i] & M);
+         z[i] = (int) c;
+         c >>= 32;
+      }
+   }
+
+   private static boolean isAtLeastP(int[] z) {
+      for (int i = SIZE - 1; i >= 0; i--) {
+         long a = z[i] & M;
+         long b = P[i] & M;
+         if (a != b) {
+            return a > b;
+         }
+      }
+      return true;
+   }
+}
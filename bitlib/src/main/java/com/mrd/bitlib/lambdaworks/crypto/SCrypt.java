@@ -2,10 +2,19 @@
 
 package com.mrd.bitlib.lambdaworks.crypto;
 
+import com.mrd.bitlib.util.DaemonExecutors;
+
 import static java.lang.Integer.MAX_VALUE;
 import static java.lang.System.arraycopy;
 
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -18,8 +27,20 @@ import javax.crypto.spec.SecretKeySpec;
  * @author Will Glozer
  * Note: Removed native JNI calls for native implementation
  *         for use with BCCAPI
+ * <p>
+ * The p lanes of the mix are independent of each other and run in parallel on
+ * a pool of daemon threads, as far as the number of cores and the available
+ * memory allow, as every running lane needs its own N * 128 * r bytes. The
+ * mix works on little endian int words and does not allocate in its loops.
  */
 public class SCrypt {
+
+   private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+   private static class ExecutorHolder {
+      private static final ExecutorService EXECUTOR = DaemonExecutors.newFixedThreadPool(THREADS);
+   }
+
    /**
     * Pure Java implementation of the <a
     * href="http://www.tarsnap.com/scrypt/scrypt.pdf"/>scrypt KDF</a>.
@@ -45,6 +66,18 @@ public class SCrypt {
     */
    public static byte[] scrypt(byte[] passwd, byte[] salt, int N, int r, int p, int dkLen,
                                  SCryptProgress progressTracker) throws GeneralSecurityException, InterruptedException {
+      return scrypt(passwd, salt, N, r, p, dkLen, progressTracker, p);
+   }
+
+   /**
+    * Same as {@link #scrypt(byte[], byte[], int, int, int, int, SCryptProgress)},
+    * but mixes at most maxParallelLanes lanes at the same time. Callers that
+    * run several scrypt calls in parallel use this to stay within their
+    * memory budget.
+    */
+   public static byte[] scrypt(byte[] passwd, byte[] salt, int N, final int r, int p, int dkLen,
+                                 final SCryptProgress progressTracker, int maxParallelLanes)
+         throws GeneralSecurityException, InterruptedException {
       if (N == 0 || (N & (N - 1)) != 0)
          throw new IllegalArgumentException("N must be > 0 and a power of 2");
 
@@ -59,77 +92,149 @@ public class SCrypt {
       byte[] DK = new byte[dkLen];
 
       byte[] B = new byte[128 * r * p];
-      byte[] XY = new byte[256 * r];
-      // The original SCrypt implementation uses one big V array with N * 128 *
-      // r bytes. We have observed that this may cause problems on some android
-      // devices due to memory fragmentation. Instead we allocate N arrays of
-      // size 128 * r.
-      byte[][] V = new byte[N][];
-      for (int i = 0; i < N; i++) {
-         V[i] = new byte[128 * r];
-      }
-      
-      int i;
 
       PBKDF.pbkdf2(mac, salt, 1, B, p * 128 * r);
 
-      for (i = 0; i < p; i++) {
-         smix(B, i * 128 * r, r, N, V, XY, progressTracker);
-         if (progressTracker != null) {
-            progressTracker.setProgressP(i+1);
+      // Every lane is a block of 32 * r words
+      final int[][] lanes = new int[p][32 * r];
+      for (int i = 0; i < p; i++) {
+         decodeWords(B, i * 128 * r, lanes[i]);
+      }
+
+      // Worker w mixes the lanes w, w + workers, w + 2 * workers, ... The
+      // calling thread is worker 0 and the only one reporting the progress
+      // within a lane
+      final int workers = Math.min(getMaxParallelLanes(N, r, p), Math.max(1, maxParallelLanes));
+      final int n = N;
+      final AtomicInteger lanesDone = new AtomicInteger();
+      List<Future<Void>> futures = new ArrayList<>(workers - 1);
+      for (int w = 1; w < workers; w++) {
+         final int worker = w;
+         futures.add(ExecutorHolder.EXECUTOR.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+               mixLanes(lanes, worker, workers, n, r, progressTracker, false, lanesDone);
+               return null;
+            }
+         }));
+      }
+      try {
+         mixLanes(lanes, 0, workers, N, r, progressTracker, true, lanesDone);
+         for (Future<Void> future : futures) {
+            future.get();
+         }
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
          }
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new RuntimeException(cause);
+      }
+
+      for (int i = 0; i < p; i++) {
+         encodeWords(lanes[i], B, i * 128 * r);
       }
       PBKDF.pbkdf2(mac, B, 1, DK, dkLen);
 
       return DK;
    }
 
-   private static void smix(byte[] B, int Bi, int r, int N, byte[][] V, byte[] XY, SCryptProgress progressTracker)
-         throws InterruptedException {
-      int Xi = 0;
-      int Yi = 128 * r;
+   /**
+    * Get how many of the given number of lanes may be mixed at the same time,
+    * limited by the number of cores, and by allowing all of them together at
+    * most a quarter of the maximum heap size, as every lane needs N * 128 * r
+    * bytes
+    */
+   public static int getMaxParallelLanes(int N, int r, int lanes) {
+      long laneMemory = (long) N * 128 * r;
+      long memoryBudget = Runtime.getRuntime().maxMemory() / 4;
+      long byMemory = Math.max(1, memoryBudget / laneMemory);
+      return (int) Math.max(1, Math.min(Math.min(lanes, THREADS), byMemory));
+   }
+
+   private static void mixLanes(int[][] lanes, int worker, int workers, int N, int r, SCryptProgress progressTracker,
+                                boolean reportProgress, AtomicInteger lanesDone) throws InterruptedException {
+      // The original SCrypt implementation uses one big V array with N * 128 *
+      // r bytes. We have observed that this may cause problems on some android
+      // devices due to memory fragmentation. Instead we allocate N arrays of
+      // size 128 * r. They are reused for all lanes of this worker.
+      int[][] V = new int[N][32 * r];
+      int[] XY = new int[64 * r];
+      int[] X = new int[16];
+      int[] x = new int[16];
+      for (int i = worker; i < lanes.length; i += workers) {
+         smix(lanes[i], r, N, V, XY, X, x, progressTracker, reportProgress);
+         if (progressTracker != null) {
+            progressTracker.setProgressP(lanesDone.incrementAndGet());
+         }
+      }
+   }
+
+   private static void smix(int[] B, int r, int N, int[][] V, int[] XY, int[] X, int[] x,
+                            SCryptProgress progressTracker, boolean reportProgress) throws InterruptedException {
+      int blockWords = 32 * r;
+      int Yi = blockWords;
+      // The first word of the last 64 byte block
+      int integerifyIndex = (2 * r - 1) * 16;
       int i;
 
-      arraycopy(B, Bi, XY, Xi, 128 * r);
+      arraycopy(B, 0, XY, 0, blockWords);
 
       for (i = 0; i < N; i++) {
-         arraycopy(XY, Xi, V[i], 0, 128 * r);
-         blockmix_salsa8(XY, Xi, Yi, r);
+         arraycopy(XY, 0, V[i], 0, blockWords);
+         blockmix_salsa8(XY, Yi, r, X, x);
          if (progressTracker != null) {
-            progressTracker.setProgressN1(i);
+            if (reportProgress) {
+               progressTracker.setProgressN1(i);
+            } else {
+               progressTracker.checkTerminated();
+            }
          }
       }
 
       for (i = 0; i < N; i++) {
-         int j = integerify(XY, Xi, r) & (N - 1);
-         blockxor(V[j], 0, XY, Xi, 128 * r);
-         blockmix_salsa8(XY, Xi, Yi, r);
+         int[] Vj = V[XY[integerifyIndex] & (N - 1)];
+         for (int k = 0; k < blockWords; k++) {
+            XY[k] ^= Vj[k];
+         }
+         blockmix_salsa8(XY, Yi, r, X, x);
          if (progressTracker != null) {
-            progressTracker.setProgressN2(i);
+            if (reportProgress) {
+               progressTracker.setProgressN2(i);
+            } else {
+               progressTracker.checkTerminated();
+            }
          }
       }
 
-      arraycopy(XY, Xi, B, Bi, 128 * r);
+      arraycopy(XY, 0, B, 0, blockWords);
    }
 
-   private static void blockmix_salsa8(byte[] BY, int Bi, int Yi, int r) {
-      byte[] X = new byte[64];
+   private static void blockmix_salsa8(int[] BY, int Yi, int r, int[] X, int[] x) {
       int i;
 
-      arraycopy(BY, Bi + (2 * r - 1) * 64, X, 0, 64);
+      arraycopy(BY, (2 * r - 1) * 16, X, 0, 16);
 
       for (i = 0; i < 2 * r; i++) {
-         blockxor(BY, i * 64, X, 0, 64);
-         salsa20_8(X);
-         arraycopy(X, 0, BY, Yi + (i * 64), 64);
+         for (int k = 0; k < 16; k++) {
+            X[k] ^= BY[i * 16 + k];
+         }
+         salsa20_8(X, x);
+         arraycopy(X, 0, BY, Yi + (i * 16), 16);
       }
 
       for (i = 0; i < r; i++) {
-         arraycopy(BY, Yi + (i * 2) * 64, BY, Bi + (i * 64), 64);
+         arraycopy(BY, Yi + (i * 2) * 16, BY, i * 16, 16);
       }
 
       for (i = 0; i < r; i++) {
-         arraycopy(BY, Yi + (i * 2 + 1) * 64, BY, Bi + (i + r) * 64, 64);
+         arraycopy(BY, Yi + (i * 2 + 1) * 16, BY, (i + r) * 16, 16);
       }
    }
 
@@ -137,19 +242,13 @@ public class SCrypt {
       return (a << b) | (a >>> (32 - b));
    }
 
-   private static void salsa20_8(byte[] B) {
-      int[] B32 = new int[16];
-      int[] x = new int[16];
+   /**
+    * Apply salsa20/8 to the 16 words of B in place, using x as scratch space
+    */
+   private static void salsa20_8(int[] B, int[] x) {
       int i;
 
-      for (i = 0; i < 16; i++) {
-         B32[i] = (B[i * 4 + 0] & 0xff) << 0;
-         B32[i] |= (B[i * 4 + 1] & 0xff) << 8;
-         B32[i] |= (B[i * 4 + 2] & 0xff) << 16;
-         B32[i] |= (B[i * 4 + 3] & 0xff) << 24;
-      }
-
-      arraycopy(B32, 0, x, 0, 16);
+      arraycopy(B, 0, x, 0, 16);
 
       for (i = 8; i > 0; i -= 2) {
          x[4] ^= R(x[0] + x[12], 7);
@@ -187,32 +286,24 @@ public class SCrypt {
       }
 
       for (i = 0; i < 16; ++i)
-         B32[i] = x[i] + B32[i];
-
-      for (i = 0; i < 16; i++) {
-         B[i * 4 + 0] = (byte) (B32[i] >> 0 & 0xff);
-         B[i * 4 + 1] = (byte) (B32[i] >> 8 & 0xff);
-         B[i * 4 + 2] = (byte) (B32[i] >> 16 & 0xff);
-         B[i * 4 + 3] = (byte) (B32[i] >> 24 & 0xff);
-      }
+         B[i] = x[i] + B[i];
    }
 
-   private static void blockxor(byte[] S, int Si, byte[] D, int Di, int len) {
-      for (int i = 0; i < len; i++) {
-         D[Di + i] ^= S[Si + i];
+   private static void decodeWords(byte[] bytes, int offset, int[] words) {
+      for (int i = 0; i < words.length; i++) {
+         int j = offset + i * 4;
+         words[i] = (bytes[j] & 0xff) | (bytes[j + 1] & 0xff) << 8 | (bytes[j + 2] & 0xff) << 16
+               | (bytes[j + 3] & 0xff) << 24;
       }
    }
 
-   private static int integerify(byte[] B, int Bi, int r) {
-      int n;
-
-      Bi += (2 * r - 1) * 64;
-
-      n = (B[Bi + 0] & 0xff) << 0;
-      n |= (B[Bi + 1] & 0xff) << 8;
-      n |= (B[Bi + 2] & 0xff) << 16;
-      n |= (B[Bi + 3] & 0xff) << 24;
-
-      return n;
+   private static void encodeWords(int[] words, byte[] bytes, int offset) {
+      for (int i = 0; i < words.length; i++) {
+         int j = offset + i * 4;
+         bytes[j] = (byte) words[i];
+         bytes[j + 1] = (byte) (words[i] >>> 8);
+         bytes[j + 2] = (byte) (words[i] >>> 16);
+         bytes[j + 3] = (byte) (words[i] >>> 24);
+      }
    }
 }
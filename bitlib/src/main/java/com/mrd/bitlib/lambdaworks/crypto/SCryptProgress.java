@@ -48,13 +48,32 @@ public class SCryptProgress implements Serializable{
       }
    }
 
+   /**
+    * Count one more completed lane. Used when several scrypt calls share this
+    * instance for their overall progress.
+    */
+   public synchronized void completeLane() throws InterruptedException {
+      setProgressP(progressP + 1);
+   }
+
+   /**
+    * Check for termination without reporting progress. Used by lanes that run
+    * in parallel with the lane that reports the progress.
+    */
+   public void checkTerminated() throws InterruptedException {
+      if (_terminate) {
+         throw new InterruptedException();
+      }
+   }
+
    public void terminate() {
       _terminate = true;
    }
 
    public synchronized double getProgress() {
       long work = (long) progressP * ((long) n * 2) + (long) progressN1 + (long) progressN2;
-      return (double) work / totalWork;
+      // Work may exceed the estimate when a batch retries with more passphrases
+      return Math.min(1.0, (double) work / totalWork);
    }
 
 }
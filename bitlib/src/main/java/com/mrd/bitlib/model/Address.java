@@ -25,8 +25,6 @@ import com.mrd.bitlib.bitcoinj.Base58;
 
 import com.google.common.base.Function;
 import com.mrd.bitlib.util.BitUtils;
-import com.mrd.bitlib.util.HashUtils;
-import com.mrd.bitlib.util.Sha256Hash;
 
 public class Address implements Serializable, Comparable<Address> {
    private static final long serialVersionUID = 1L;
@@ -54,17 +52,39 @@ public class Address implements Serializable, Comparable<Address> {
    }
 
    public static Address[] fromStrings(String[] addressStrings) {
+      byte[][] decoded = Base58.decodeChecked(addressStrings);
       Address[] addresses = new Address[addressStrings.length];
       for (int i = 0; i < addressStrings.length; i++) {
-         addresses[i] = Address.fromString(addressStrings[i]);
+         if (decoded[i] != null && decoded[i].length == NUM_ADDRESS_BYTES) {
+            addresses[i] = new Address(decoded[i], canonical(addressStrings[i]));
+         }
       }
       return addresses;
    }
 
    public static String[] toStrings(Address[] addresses) {
+      // Encode the addresses that have not been encoded yet in one batch
+      int missing = 0;
+      for (Address address : addresses) {
+         if (address._address == null) {
+            missing++;
+         }
+      }
+      byte[][] toEncode = new byte[missing][];
+      int j = 0;
+      for (Address address : addresses) {
+         if (address._address == null) {
+            toEncode[j++] = address._bytes;
+         }
+      }
+      String[] encoded = Base58.encodeWithChecksum(toEncode);
       String[] addressStrings = new String[addresses.length];
+      j = 0;
       for (int i = 0; i < addressStrings.length; i++) {
-         addressStrings[i] = addresses[i].toString();
+         if (addresses[i]._address == null) {
+            addresses[i]._address = encoded[j++];
+         }
+         addressStrings[i] = addresses[i]._address;
       }
       return addressStrings;
    }
@@ -96,7 +116,15 @@ public class Address implements Serializable, Comparable<Address> {
       if (bytes == null || bytes.length != NUM_ADDRESS_BYTES) {
          return null;
       }
-      return new Address(bytes);
+      return new Address(bytes, canonical(address));
+   }
+
+   /**
+    * Base58 is canonical, so a string that decoded is also what encoding the
+    * bytes gives, unless it started with a byte order mark
+    */
+   private static String canonical(String address) {
+      return address.charAt(0) == '\uFEFF' ? null : address;
    }
 
    public static Address fromP2SHBytes(byte[] bytes, NetworkParameters network) {
@@ -186,12 +214,7 @@ public class Address implements Serializable, Comparable<Address> {
    @Override
    public String toString() {
       if (_address == null) {
-         byte[] addressBytes = new byte[1 + 20 + 4];
-         addressBytes[0] = _bytes[0];
-         System.arraycopy(_bytes, 0, addressBytes, 0, NUM_ADDRESS_BYTES);
-         Sha256Hash checkSum = HashUtils.doubleSha256(addressBytes, 0, NUM_ADDRESS_BYTES);
-         System.arraycopy(checkSum.getBytes(), 0, addressBytes, NUM_ADDRESS_BYTES, 4);
-         _address = Base58.encode(addressBytes);
+         _address = Base58.encodeWithChecksum(_bytes);
       }
       return _address;
    }
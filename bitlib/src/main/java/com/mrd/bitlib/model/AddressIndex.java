@@ -0,0 +1,207 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.model;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Maps addresses to non-negative integers, such as the index they were derived
+ * at.
+ * <p>
+ * The 21 address bytes of all entries are kept in one flat array and looked up
+ * by open addressing, so lookups do not allocate. Pay to public key hash and
+ * pay to script hash output scripts can be looked up directly by the hash in
+ * their bytes, without parsing them or creating an address.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class AddressIndex {
+   private static final int KEY_LENGTH = Address.NUM_ADDRESS_BYTES;
+   private static final int MIN_CAPACITY = 16;
+
+   // OP_DUP OP_HASH160 <20 bytes> OP_EQUALVERIFY OP_CHECKSIG
+   private static final int STANDARD_SCRIPT_LENGTH = 25;
+   // OP_HASH160 <20 bytes> OP_EQUAL
+   private static final int P2SH_SCRIPT_LENGTH = 23;
+
+   private byte[] _keys;
+   private int[] _values;
+   private boolean[] _occupied;
+   private int _mask;
+   private int _size;
+
+   public AddressIndex() {
+      this(MIN_CAPACITY / 2);
+   }
+
+   public AddressIndex(int expectedSize) {
+      allocate(capacityFor(expectedSize));
+   }
+
+   private static int capacityFor(int size) {
+      // Keep the table at most half full
+      int capacity = MIN_CAPACITY;
+      while (capacity < size * 2) {
+         capacity <<= 1;
+      }
+      return capacity;
+   }
+
+   private void allocate(int capacity) {
+      _keys = new byte[capacity * KEY_LENGTH];
+      _values = new int[capacity];
+      _occupied = new boolean[capacity];
+      _mask = capacity - 1;
+   }
+
+   /**
+    * Add an address, or replace the value of an address that is already
+    * there
+    */
+   public void put(Address address, int value) {
+      Preconditions.checkArgument(value >= 0);
+      byte[] key = address.getAllAddressBytes();
+      Preconditions.checkArgument(key.length == KEY_LENGTH);
+      if ((_size + 1) * 2 > _occupied.length) {
+         grow();
+      }
+      int slot = findSlot(key[0], key, 1);
+      if (!_occupied[slot]) {
+         System.arraycopy(key, 0, _keys, slot * KEY_LENGTH, KEY_LENGTH);
+         _occupied[slot] = true;
+         _size++;
+      }
+      _values[slot] = value;
+   }
+
+   /**
+    * Get the value of an address
+    *
+    * @return the value, or -1 if the address is not in the index
+    */
+   public int get(Address address) {
+      byte[] key = address.getAllAddressBytes();
+      if (key.length != KEY_LENGTH) {
+         return -1;
+      }
+      return valueAt(findSlot(key[0], key, 1));
+   }
+
+   public boolean contains(Address address) {
+      return get(address) != -1;
+   }
+
+   /**
+    * Get the value of the address that an output script pays to. Only works
+    * for scripts recognized by {@link #isHashScript(byte[])}.
+    *
+    * @return the value, or -1 if the script pays to an address that is not in
+    * the index or the script has a different form
+    */
+   public int getByScript(byte[] script, NetworkParameters network) {
+      if (isStandardScript(script)) {
+         return valueAt(findSlot((byte) network.getStandardAddressHeader(), script, 3));
+      } else if (isP2SHScript(script)) {
+         return valueAt(findSlot((byte) network.getMultisigAddressHeader(), script, 2));
+      }
+      return -1;
+   }
+
+   /**
+    * Determine whether an output script is a pay to public key hash or pay to
+    * script hash script in its canonical form. For these
+    * {@link #getByScript(byte[], NetworkParameters)} gives the same result as
+    * looking up the address of the parsed script.
+    */
+   public static boolean isHashScript(byte[] script) {
+      return isStandardScript(script) || isP2SHScript(script);
+   }
+
+   private static boolean isStandardScript(byte[] script) {
+      return script.length == STANDARD_SCRIPT_LENGTH
+            && script[0] == (byte) Script.OP_DUP
+            && script[1] == (byte) Script.OP_HASH160
+            && script[2] == 20
+            && script[23] == (byte) Script.OP_EQUALVERIFY
+            && script[24] == (byte) Script.OP_CHECKSIG;
+   }
+
+   private static boolean isP2SHScript(byte[] script) {
+      return script.length == P2SH_SCRIPT_LENGTH
+            && script[0] == (byte) Script.OP_HASH160
+            && script[1] == 20
+            && script[22] == (byte) Script.OP_EQUAL;
+   }
+
+   public int size() {
+      return _size;
+   }
+
+   public void clear() {
+      allocate(MIN_CAPACITY);
+      _size = 0;
+   }
+
+   private int valueAt(int slot) {
+      return _occupied[slot] ? _values[slot] : -1;
+   }
+
+   /**
+    * Find the slot that holds the given version and hash, or the free slot
+    * where they belong
+    */
+   private int findSlot(byte version, byte[] hash, int hashOffset) {
+      // The hash is uniformly distributed, so its first bytes make a good
+      // table index
+      int h = ((hash[hashOffset] & 0xFF) << 24 | (hash[hashOffset + 1] & 0xFF) << 16
+            | (hash[hashOffset + 2] & 0xFF) << 8 | (hash[hashOffset + 3] & 0xFF)) ^ version;
+      int slot = h & _mask;
+      while (_occupied[slot] && !matches(slot, version, hash, hashOffset)) {
+         slot = (slot + 1) & _mask;
+      }
+      return slot;
+   }
+
+   private boolean matches(int slot, byte version, byte[] hash, int hashOffset) {
+      int offset = slot * KEY_LENGTH;
+      if (_keys[offset] != version) {
+         return false;
+      }
+      for (int i = 1; i < KEY_LENGTH; i++) {
+         if (_keys[offset + i] != hash[hashOffset + i - 1]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void grow() {
+      byte[] keys = _keys;
+      int[] values = _values;
+      boolean[] occupied = _occupied;
+      allocate(occupied.length * 2);
+      for (int i = 0; i < occupied.length; i++) {
+         if (occupied[i]) {
+            int offset = i * KEY_LENGTH;
+            int slot = findSlot(keys[offset], keys, offset + 1);
+            System.arraycopy(keys, offset, _keys, slot * KEY_LENGTH, KEY_LENGTH);
+            _values[slot] = values[i];
+            _occupied[slot] = true;
+         }
+      }
+   }
+}
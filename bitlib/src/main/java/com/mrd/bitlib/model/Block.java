@@ -110,9 +110,10 @@ public class Block {
 
    public Sha256Hash getHash() {
       if (_hash == null) {
-         ByteWriter writer = new ByteWriter(2000);
+         ByteWriter writer = ByteWriter.obtain();
          headerToByteWriter(writer);
-         _hash = HashUtils.doubleSha256(writer.toBytes()).reverse();
+         _hash = HashUtils.doubleSha256(writer).reverse();
+         writer.recycle();
       }
       return _hash;
    }
@@ -128,6 +128,39 @@ public class CompactInt {
       }
    }
 
+   /**
+    * Write the CompactInt representation of a long value into an array of
+    * bytes, which must have room for 9 bytes from the offset.
+    * 
+    * @param value
+    *           The value to write.
+    * @param bytes
+    *           The array to write to.
+    * @param offset
+    *           The position in the array to write to.
+    * @return the number of bytes written.
+    */
+   public static int toBytes(long value, byte[] bytes, int offset) {
+      if (isLessThan(value, 253)) {
+         bytes[offset] = (byte) value;
+         return 1;
+      } else if (isLessThan(value, 65536)) {
+         bytes[offset] = (byte) 253;
+         bytes[offset + 1] = (byte) (value);
+         bytes[offset + 2] = (byte) (value >> 8);
+         return 3;
+      } else if (isLessThan(value, 4294967295L)) {
+         bytes[offset] = (byte) 254;
+         BitUtils.uint32ToByteArrayLE(value, bytes, offset + 1);
+         return 5;
+      } else {
+         bytes[offset] = (byte) 255;
+         BitUtils.uint32ToByteArrayLE(value, bytes, offset + 1);
+         BitUtils.uint32ToByteArrayLE(value >>> 32, bytes, offset + 5);
+         return 9;
+      }
+   }
+
    /**
     * Determine whether one long is less than another long when comparing as
     * unsigned longs.
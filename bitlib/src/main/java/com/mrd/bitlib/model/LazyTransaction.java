@@ -0,0 +1,287 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.model;
+
+import com.mrd.bitlib.model.Transaction.TransactionParsingException;
+import com.mrd.bitlib.model.TransactionInput.TransactionInputParsingException;
+import com.mrd.bitlib.model.TransactionOutput.TransactionOutputParsingException;
+import com.mrd.bitlib.util.ByteReader;
+import com.mrd.bitlib.util.ByteReader.InsufficientBytesException;
+import com.mrd.bitlib.util.ByteWriter;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+
+/**
+ * A read only view of a serialized transaction that parses its parts on
+ * demand.
+ * <p>
+ * Creating the view walks the bytes once to find where every input, output and
+ * witness starts, without decoding any scripts. Out points and output values
+ * are read straight from the bytes, while inputs and outputs are decoded on
+ * first access and kept. The transaction id is calculated on first use.
+ * <p>
+ * Inputs are only checked for well-formed scripts when they are accessed, so
+ * {@link #getInput(int)} may fail on a transaction that
+ * {@link Transaction#fromBytes(byte[])} would have rejected. Instances are not
+ * thread safe.
+ */
+public class LazyTransaction {
+   private final byte[] _bytes;
+   private final int _version;
+   private final boolean _isSegwit;
+   // The start of every input and output, and the end of the last one
+   private final int[] _inputOffsets;
+   private final int[] _outputOffsets;
+   // The start of the witness of every input, and the end of the last one
+   private final int[] _witnessOffsets;
+
+   private final TransactionInput[] _inputs;
+   private final TransactionOutput[] _outputs;
+   private Sha256Hash _id;
+
+   private LazyTransaction(byte[] bytes, int version, boolean isSegwit, int[] inputOffsets, int[] outputOffsets,
+                           int[] witnessOffsets) {
+      _bytes = bytes;
+      _version = version;
+      _isSegwit = isSegwit;
+      _inputOffsets = inputOffsets;
+      _outputOffsets = outputOffsets;
+      _witnessOffsets = witnessOffsets;
+      _inputs = new TransactionInput[inputOffsets.length - 1];
+      _outputs = new TransactionOutput[outputOffsets.length - 1];
+   }
+
+   /**
+    * Index a serialized transaction. The array is kept and must not be
+    * modified afterwards.
+    */
+   public static LazyTransaction fromBytes(byte[] bytes) throws TransactionParsingException {
+      ByteReader reader = new ByteReader(bytes);
+      try {
+         int version = reader.getIntLE();
+         boolean isSegwit = false;
+         if (reader.available() > 0 && bytes[reader.getPosition()] == 0) {
+            reader.get();
+            if (reader.get() != 1) {
+               throw new TransactionParsingException("Unable to parse segwit transaction. Flag must be 0x01");
+            }
+            isSegwit = true;
+         }
+
+         int[] inputOffsets = new int[checkedCount(reader) + 1];
+         for (int i = 0; i < inputOffsets.length - 1; i++) {
+            inputOffsets[i] = reader.getPosition();
+            // out point, script and sequence
+            reader.skip(36);
+            reader.skip(checkedCount(reader));
+            reader.skip(4);
+         }
+         inputOffsets[inputOffsets.length - 1] = reader.getPosition();
+
+         int[] outputOffsets = new int[checkedCount(reader) + 1];
+         for (int i = 0; i < outputOffsets.length - 1; i++) {
+            outputOffsets[i] = reader.getPosition();
+            // value and script
+            reader.skip(8);
+            reader.skip(checkedCount(reader));
+         }
+         outputOffsets[outputOffsets.length - 1] = reader.getPosition();
+
+         int[] witnessOffsets = null;
+         if (isSegwit) {
+            witnessOffsets = new int[inputOffsets.length];
+            for (int i = 0; i < witnessOffsets.length - 1; i++) {
+               witnessOffsets[i] = reader.getPosition();
+               int stackSize = checkedCount(reader);
+               for (int j = 0; j < stackSize; j++) {
+                  reader.skip(checkedCount(reader));
+               }
+            }
+            witnessOffsets[witnessOffsets.length - 1] = reader.getPosition();
+         }
+
+         // lock time
+         reader.skip(4);
+         if (reader.available() != 0) {
+            throw new TransactionParsingException("Unexpected " + reader.available() + " bytes after transaction");
+         }
+         return new LazyTransaction(bytes, version, isSegwit, inputOffsets, outputOffsets, witnessOffsets);
+      } catch (InsufficientBytesException e) {
+         throw new TransactionParsingException("Unable to parse transaction: insufficient bytes");
+      }
+   }
+
+   /**
+    * Read a compact int that counts items or bytes, which cannot be more than
+    * the bytes that are left
+    */
+   private static int checkedCount(ByteReader reader) throws InsufficientBytesException {
+      long count = reader.getCompactInt();
+      if (count < 0 || count > reader.available()) {
+         throw new InsufficientBytesException();
+      }
+      return (int) count;
+   }
+
+   public int getVersion() {
+      return _version;
+   }
+
+   public int getLockTime() {
+      return readIntLE(_bytes.length - 4);
+   }
+
+   public boolean isSegwit() {
+      return _isSegwit;
+   }
+
+   public int getInputCount() {
+      return _inputs.length;
+   }
+
+   public int getOutputCount() {
+      return _outputs.length;
+   }
+
+   /**
+    * Get the out point that an input spends without decoding the input
+    */
+   public OutPoint getOutPoint(int index) {
+      if (_inputs[index] != null) {
+         return _inputs[index].outPoint;
+      }
+      ByteReader reader = new ByteReader(_bytes, _inputOffsets[index], 36);
+      try {
+         return new OutPoint(reader.getSha256Hash(true), reader.getIntLE());
+      } catch (InsufficientBytesException e) {
+         // cannot happen, the input has been indexed
+         throw new RuntimeException(e);
+      }
+   }
+
+   /**
+    * Determine whether the input spends the coinbase out point
+    */
+   public boolean isCoinbaseInput(int index) {
+      int offset = _inputOffsets[index];
+      for (int i = 0; i < Sha256Hash.HASH_LENGTH; i++) {
+         if (_bytes[offset + i] != 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Get the value of an output without decoding its script
+    */
+   public long getOutputValue(int index) {
+      int offset = _outputOffsets[index];
+      return (readIntLE(offset) & 0xFFFFFFFFL) | ((long) readIntLE(offset + 4) << 32);
+   }
+
+   public TransactionInput getInput(int index) throws TransactionParsingException {
+      if (_inputs[index] == null) {
+         ByteReader reader = new ByteReader(_bytes, _inputOffsets[index], _inputOffsets[index + 1] - _inputOffsets[index]);
+         try {
+            TransactionInput input = TransactionInput.fromByteReader(reader);
+            if (_isSegwit) {
+               input.setWitness(parseWitness(index));
+            }
+            _inputs[index] = input;
+         } catch (TransactionInputParsingException e) {
+            throw new TransactionParsingException("Unable to parse transaction input at index " + index + ": "
+                  + e.getMessage(), e);
+         } catch (IllegalStateException e) {
+            throw new TransactionParsingException("ISE - Unable to parse transaction input at index " + index + ": "
+                  + e.getMessage(), e);
+         }
+      }
+      return _inputs[index];
+   }
+
+   private TransactionWitness parseWitness(int index) {
+      ByteReader reader = new ByteReader(_bytes, _witnessOffsets[index], _witnessOffsets[index + 1] - _witnessOffsets[index]);
+      try {
+         int stackSize = (int) reader.getCompactInt();
+         TransactionWitness witness = new TransactionWitness(stackSize);
+         for (int i = 0; i < stackSize; i++) {
+            witness.setStack(i, reader.getBytes((int) reader.getCompactInt()));
+         }
+         return witness;
+      } catch (InsufficientBytesException e) {
+         // cannot happen, the witness has been indexed
+         throw new RuntimeException(e);
+      }
+   }
+
+   public TransactionOutput getOutput(int index) {
+      if (_outputs[index] == null) {
+         ByteReader reader = new ByteReader(_bytes, _outputOffsets[index], _outputOffsets[index + 1] - _outputOffsets[index]);
+         try {
+            _outputs[index] = TransactionOutput.fromByteReader(reader);
+         } catch (TransactionOutputParsingException e) {
+            // cannot happen, the output has been indexed and any script bytes
+            // make an output script
+            throw new RuntimeException(e);
+         }
+      }
+      return _outputs[index];
+   }
+
+   /**
+    * Get the transaction id, which does not commit to the witness data
+    */
+   public Sha256Hash getId() {
+      if (_id == null) {
+         if (!_isSegwit) {
+            _id = HashUtils.doubleSha256(_bytes, 0, _bytes.length).reverse();
+         } else {
+            // version, inputs and outputs, and lock time without marker,
+            // flag and witnesses
+            ByteWriter writer = ByteWriter.obtain();
+            writer.putBytes(_bytes, 0, 4);
+            writer.putBytes(_bytes, 6, _witnessOffsets[0] - 6);
+            writer.putBytes(_bytes, _bytes.length - 4, 4);
+            _id = HashUtils.doubleSha256(writer).reverse();
+            writer.recycle();
+         }
+      }
+      return _id;
+   }
+
+   public int getRawSize() {
+      return _bytes.length;
+   }
+
+   /**
+    * Parse the whole transaction
+    */
+   public Transaction toTransaction() throws TransactionParsingException {
+      return Transaction.fromBytes(_bytes);
+   }
+
+   private int readIntLE(int offset) {
+      return (_bytes[offset] & 0xFF) | ((_bytes[offset + 1] & 0xFF) << 8) | ((_bytes[offset + 2] & 0xFF) << 16)
+            | ((_bytes[offset + 3] & 0xFF) << 24);
+   }
+
+   @Override
+   public String toString() {
+      return String.valueOf(getId()) + " in: " + _inputs.length + " out: " + _outputs.length;
+   }
+}
@@ -127,6 +127,15 @@ public abstract class Script implements Serializable {
       OP_CODE_MAP.put(OP_NOP2, "OP_NOP2");
    }
 
+   // The chunks of single byte op codes, shared by all parsed scripts
+   private static final byte[][] OP_CHUNKS = new byte[256][];
+
+   static {
+      for (int i = 0; i < OP_CHUNKS.length; i++) {
+         OP_CHUNKS[i] = new byte[] { (byte) i };
+      }
+   }
+
    protected byte[] _scriptBytes;
    private boolean _isCoinbase;
 
@@ -190,7 +199,7 @@ public abstract class Script implements Serializable {
                }
                chunks[index++] = reader.getBytes(size);
             } else {
-               chunks[index++] = new byte[] { (byte) opcode };
+               chunks[index++] = OP_CHUNKS[opcode & 0xFF];
             }
          }
          return chunks;
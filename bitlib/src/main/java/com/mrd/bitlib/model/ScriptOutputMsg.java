@@ -26,6 +26,7 @@ public class ScriptOutputMsg extends ScriptOutput implements Serializable {
 
    private byte[] _messageBytes;
    private byte[] _publicKeyBytes;
+   private transient byte[] _publicKeyHash;
 
    protected ScriptOutputMsg(byte[][] chunks, byte[] scriptBytes) {
       super(scriptBytes);
@@ -74,7 +75,9 @@ public class ScriptOutputMsg extends ScriptOutput implements Serializable {
 
    @Override
    public Address getAddress(NetworkParameters network) {
-      byte[] addressBytes = HashUtils.addressHash(getPublicKeyBytes());
-      return Address.fromStandardBytes(addressBytes, network);
+      if (_publicKeyHash == null) {
+         _publicKeyHash = HashUtils.addressHash(getPublicKeyBytes());
+      }
+      return Address.fromStandardBytes(_publicKeyHash, network);
    }
 }
@@ -24,6 +24,7 @@ public class ScriptOutputPubkey extends ScriptOutput implements Serializable {
    private static final long serialVersionUID = 1L;
 
    private byte[] _publicKeyBytes;
+   private transient byte[] _publicKeyHash;
 
    protected ScriptOutputPubkey(byte[][] chunks, byte[] scriptBytes) {
       super(scriptBytes);
@@ -51,7 +52,9 @@ public class ScriptOutputPubkey extends ScriptOutput implements Serializable {
 
    @Override
    public Address getAddress(NetworkParameters network) {
-      byte[] addressBytes = HashUtils.addressHash(getPublicKeyBytes());
-      return Address.fromStandardBytes(addressBytes, network);
+      if (_publicKeyHash == null) {
+         _publicKeyHash = HashUtils.addressHash(getPublicKeyBytes());
+      }
+      return Address.fromStandardBytes(_publicKeyHash, network);
    }
 }
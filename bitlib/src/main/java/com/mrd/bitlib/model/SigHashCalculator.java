@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.model;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.mrd.bitlib.util.ByteWriter;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+
+/**
+ * Calculates the hashes that get signed for the inputs of a transaction, with
+ * SIGHASH_ALL.
+ * <p>
+ * The legacy signature hash of an input is the double SHA-256 of the
+ * transaction with all input scripts emptied, except for the input being
+ * signed, which carries the script of the output it spends. Instead of
+ * serializing the transaction again for every input, it is serialized once
+ * with all scripts empty, and the script of the signed input is spliced in
+ * while hashing.
+ * <p>
+ * The <a href="https://github.com/bitcoin/bips/blob/master/bip-0143.mediawiki">BIP143</a>
+ * signature hash used by segwit inputs commits to the outpoints, the sequence
+ * numbers and the outputs of the transaction through three hashes that are
+ * the same for every input. They are calculated once, on first use.
+ * <p>
+ * The transaction must not be modified while an instance is in use. Instances
+ * are not thread safe.
+ */
+public class SigHashCalculator {
+
+   public static final int SIGHASH_ALL = 1;
+
+   private final Transaction _transaction;
+   private final MessageDigest _digest;
+   // The serialized transaction with all input scripts empty
+   private final byte[] _serialized;
+   // For every input, the position of its empty script in _serialized
+   private final int[] _scriptOffsets;
+   private final byte[] _hashTypeBytes;
+   // Reused for the length of the script code of the signed input
+   private final byte[] _scriptLength = new byte[9];
+
+   private byte[] _hashPrevouts;
+   private byte[] _hashSequence;
+   private byte[] _hashOutputs;
+
+   public SigHashCalculator(Transaction transaction) {
+      _transaction = transaction;
+      try {
+         _digest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+         throw new RuntimeException(e); //cannot happen
+      }
+
+      ByteWriter writer = new ByteWriter(1024);
+      writer.putIntLE(transaction.version);
+      writer.putCompactInt(transaction.inputs.length);
+      _scriptOffsets = new int[transaction.inputs.length];
+      for (int i = 0; i < transaction.inputs.length; i++) {
+         TransactionInput input = transaction.inputs[i];
+         writer.putSha256Hash(input.outPoint.txid, true);
+         writer.putIntLE(input.outPoint.index);
+         _scriptOffsets[i] = writer.length();
+         writer.putCompactInt(0);
+         writer.putIntLE(input.sequence);
+      }
+      writer.putCompactInt(transaction.outputs.length);
+      for (TransactionOutput output : transaction.outputs) {
+         output.toByteWriter(writer);
+      }
+      writer.putIntLE(transaction.lockTime);
+      _serialized = writer.toBytes();
+
+      ByteWriter hashType = new ByteWriter(4);
+      hashType.putIntLE(SIGHASH_ALL);
+      _hashTypeBytes = hashType.toBytes();
+   }
+
+   /**
+    * Get the legacy signature hash of an input
+    *
+    * @param inputIndex the index of the input to sign
+    * @param scriptCode the script of the output that the input spends
+    * @return the hash to sign, not reversed
+    */
+   public Sha256Hash getLegacySigHash(int inputIndex, byte[] scriptCode) {
+      // The empty script is a single zero length byte, which gets replaced
+      // by the length and the bytes of the script code
+      int scriptOffset = _scriptOffsets[inputIndex];
+      int scriptLengthSize = CompactInt.toBytes(scriptCode.length, _scriptLength, 0);
+
+      _digest.reset();
+      _digest.update(_serialized, 0, scriptOffset);
+      _digest.update(_scriptLength, 0, scriptLengthSize);
+      _digest.update(scriptCode);
+      _digest.update(_serialized, scriptOffset + 1, _serialized.length - scriptOffset - 1);
+      _digest.update(_hashTypeBytes);
+      return finishDoubleSha256();
+   }
+
+   /**
+    * Get the BIP143 signature hash of an input
+    *
+    * @param inputIndex the index of the input to sign
+    * @param scriptCode the script code of the input as defined by BIP143
+    * @param value      the value of the output that the input spends
+    * @return the hash to sign, not reversed
+    */
+   public Sha256Hash getSegwitSigHash(int inputIndex, byte[] scriptCode, long value) {
+      if (_hashPrevouts == null) {
+         calculateSegwitHashes();
+      }
+      TransactionInput input = _transaction.inputs[inputIndex];
+      ByteWriter writer = ByteWriter.obtain();
+      writer.putIntLE(_transaction.version);
+      writer.putBytes(_hashPrevouts);
+      writer.putBytes(_hashSequence);
+      writer.putSha256Hash(input.outPoint.txid, true);
+      writer.putIntLE(input.outPoint.index);
+      writer.putCompactInt(scriptCode.length);
+      writer.putBytes(scriptCode);
+      writer.putLongLE(value);
+      writer.putIntLE(input.sequence);
+      writer.putBytes(_hashOutputs);
+      writer.putIntLE(_transaction.lockTime);
+      writer.putBytes(_hashTypeBytes);
+      Sha256Hash sigHash = HashUtils.doubleSha256(writer);
+      writer.recycle();
+      return sigHash;
+   }
+
+   private void calculateSegwitHashes() {
+      TransactionInput[] inputs = _transaction.inputs;
+      ByteWriter prevouts = new ByteWriter(inputs.length * 36);
+      ByteWriter sequences = new ByteWriter(inputs.length * 4);
+      for (TransactionInput input : inputs) {
+         prevouts.putSha256Hash(input.outPoint.txid, true);
+         prevouts.putIntLE(input.outPoint.index);
+         sequences.putIntLE(input.sequence);
+      }
+      ByteWriter outputs = new ByteWriter(1024);
+      for (TransactionOutput output : _transaction.outputs) {
+         output.toByteWriter(outputs);
+      }
+      _hashPrevouts = HashUtils.doubleSha256(prevouts).getBytes();
+      _hashSequence = HashUtils.doubleSha256(sequences).getBytes();
+      _hashOutputs = HashUtils.doubleSha256(outputs).getBytes();
+   }
+
+   private Sha256Hash finishDoubleSha256() {
+      byte[] first = _digest.digest();
+      _digest.update(first);
+      return new Sha256Hash(_digest.digest());
+   }
+}
@@ -271,18 +271,20 @@ public class Transaction implements Serializable {
 
     public Sha256Hash getId() {
         if (_hash == null) {
-            ByteWriter writer = new ByteWriter(2000);
+            ByteWriter writer = ByteWriter.obtain();
             toByteWriter(writer, false);
-            _hash = HashUtils.doubleSha256(writer.toBytes()).reverse();
+            _hash = HashUtils.doubleSha256(writer).reverse();
+            writer.recycle();
         }
         return _hash;
     }
 
     public Sha256Hash getHash() {
         if (_hash == null) {
-            ByteWriter writer = new ByteWriter(2000);
+            ByteWriter writer = ByteWriter.obtain();
             toByteWriter(writer);
-            _hash = HashUtils.doubleSha256(writer.toBytes()).reverse();
+            _hash = HashUtils.doubleSha256(writer).reverse();
+            writer.recycle();
         }
         return _hash;
     }
@@ -333,7 +335,7 @@ public class Transaction implements Serializable {
                 }
                 writer.putBytes(bytes);
             }
-            _unmalleableHash = HashUtils.doubleSha256(writer.toBytes()).reverse();
+            _unmalleableHash = HashUtils.doubleSha256(writer).reverse();
         }
         return _unmalleableHash;
     }
@@ -37,7 +37,7 @@ public class TransactionInput implements Serializable {
 
    public static TransactionInput fromByteReader(ByteReader reader) throws TransactionInputParsingException {
       try {
-         Sha256Hash outPointHash = reader.getSha256Hash().reverse();
+         Sha256Hash outPointHash = reader.getSha256Hash(true);
          int outPointIndex = reader.getIntLE();
          int scriptSize = (int) reader.getCompactInt();
          byte[] script = reader.getBytes(scriptSize);
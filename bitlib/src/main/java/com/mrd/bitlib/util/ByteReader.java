@@ -18,6 +18,15 @@ package com.mrd.bitlib.util;
 
 import com.mrd.bitlib.model.CompactInt;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Reads little endian values from a byte array, or from a range of it.
+ * <p>
+ * Positions are indexes into the underlying array. {@link #getSlice(int)} and
+ * {@link #getByteBuffer(int)} return views of the next bytes instead of
+ * copying them.
+ */
 public class ByteReader {
 
    public static class InsufficientBytesException extends Exception {
@@ -27,15 +36,45 @@ public class ByteReader {
 
    private byte[] _buf;
    private int _index;
+   private final int _start;
+   private final int _end;
 
    public ByteReader(byte[] buf) {
-      _buf = buf;
-      _index = 0;
+      this(buf, 0);
    }
 
    public ByteReader(byte[] buf, int index) {
       _buf = buf;
       _index = index;
+      _start = 0;
+      _end = buf.length;
+   }
+
+   /**
+    * Read the given range of an array without copying it
+    */
+   public ByteReader(byte[] buf, int offset, int length) {
+      if (offset < 0 || length < 0 || offset + length > buf.length) {
+         throw new IndexOutOfBoundsException();
+      }
+      _buf = buf;
+      _index = offset;
+      _start = offset;
+      _end = offset + length;
+   }
+
+   /**
+    * Read the remaining bytes of a buffer. Buffers backed by an accessible
+    * array are read without copying them. The position of the buffer is not
+    * changed.
+    */
+   public static ByteReader of(ByteBuffer buffer) {
+      if (buffer.hasArray()) {
+         return new ByteReader(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+      }
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.duplicate().get(bytes);
+      return new ByteReader(bytes);
    }
 
    public byte get() throws InsufficientBytesException {
@@ -79,10 +118,41 @@ public class ByteReader {
       return bytes;
    }
 
+   /**
+    * Copy the next bytes into an array of the caller
+    */
+   public void getBytes(byte[] destination, int offset, int size) throws InsufficientBytesException {
+      checkAvailable(size);
+      System.arraycopy(_buf, _index, destination, offset, size);
+      _index += size;
+   }
+
+   /**
+    * Get a reader for the next bytes, sharing the array of this reader
+    */
+   public ByteReader getSlice(int size) throws InsufficientBytesException {
+      checkAvailable(size);
+      ByteReader slice = new ByteReader(_buf, _index, size);
+      _index += size;
+      return slice;
+   }
+
+   /**
+    * Get a read only view of the next bytes, sharing the array of this reader
+    */
+   public ByteBuffer getByteBuffer(int size) throws InsufficientBytesException {
+      checkAvailable(size);
+      ByteBuffer buffer = ByteBuffer.wrap(_buf, _index, size).slice().asReadOnlyBuffer();
+      _index += size;
+      return buffer;
+   }
+
    public String getString() throws InsufficientBytesException {
       int length = getIntLE();
-      byte[] bytes = getBytes(length);
-      return new String(bytes);
+      checkAvailable(length);
+      String string = new String(_buf, _index, length);
+      _index += length;
+      return string;
    }
 
    public void skip(int num) throws InsufficientBytesException {
@@ -91,7 +161,7 @@ public class ByteReader {
    }
 
    public void reset() {
-      _index = 0;
+      _index = _start;
    }
 
    public long getCompactInt() throws InsufficientBytesException {
@@ -99,10 +169,25 @@ public class ByteReader {
    }
 
    public Sha256Hash getSha256Hash() throws InsufficientBytesException {
-      checkAvailable(Sha256Hash.HASH_LENGTH);
       return Sha256Hash.of(getBytes(Sha256Hash.HASH_LENGTH));
    }
 
+   /**
+    * Get a hash, optionally in reverse byte order, copying its bytes once
+    */
+   public Sha256Hash getSha256Hash(boolean reverse) throws InsufficientBytesException {
+      if (!reverse) {
+         return getSha256Hash();
+      }
+      checkAvailable(Sha256Hash.HASH_LENGTH);
+      byte[] bytes = new byte[Sha256Hash.HASH_LENGTH];
+      for (int i = 0; i < Sha256Hash.HASH_LENGTH; i++) {
+         bytes[i] = _buf[_index + Sha256Hash.HASH_LENGTH - 1 - i];
+      }
+      _index += Sha256Hash.HASH_LENGTH;
+      return Sha256Hash.of(bytes);
+   }
+
    public int getPosition() {
       return _index;
    }
@@ -112,11 +197,11 @@ public class ByteReader {
    }
 
    public final int available() {
-      return _buf.length - _index;
+      return _end - _index;
    }
 
    private final void checkAvailable(int num) throws InsufficientBytesException {
-      if (_buf.length - _index < num) {
+      if (num < 0 || _end - _index < num) {
          throw new InsufficientBytesException();
       }
    }
@@ -19,12 +19,38 @@ package com.mrd.bitlib.util;
 import com.mrd.bitlib.model.CompactInt;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 final public class ByteWriter {
+   private static final int POOLED_CAPACITY = 2000;
+   // Writers that grew beyond this are not kept for reuse
+   private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+   private static final ThreadLocal<ByteWriter[]> POOL = new ThreadLocal<ByteWriter[]>() {
+      @Override
+      protected ByteWriter[] initialValue() {
+         return new ByteWriter[1];
+      }
+   };
 
    private byte[] _buf;
    private int _index;
 
+   /**
+    * Get an empty writer, reusing the one last recycled on this thread if
+    * there is one. Serialization that is only needed for a moment, such as to
+    * hash it, can avoid allocating buffers this way.
+    */
+   public static ByteWriter obtain() {
+      ByteWriter[] pool = POOL.get();
+      ByteWriter writer = pool[0];
+      if (writer == null) {
+         return new ByteWriter(POOLED_CAPACITY);
+      }
+      pool[0] = null;
+      writer.reset();
+      return writer;
+   }
+
    public ByteWriter(int capacity) {
       _buf = new byte[capacity];
       _index = 0;
@@ -111,7 +137,14 @@ final public class ByteWriter {
    }
 
    public void putCompactInt(long value) {
-      putBytes(CompactInt.toBytes(value));
+      if (value >= 0 && value < 253) {
+         put((byte) value);
+      } else if (value >= 0 && value < 65536) {
+         put((byte) 253);
+         putShortLE((short) value);
+      } else {
+         putBytes(CompactInt.toBytes(value));
+      }
    }
 
    public void putSha256Hash(Sha256Hash hash) {
@@ -120,7 +153,11 @@ final public class ByteWriter {
 
    public void putSha256Hash(Sha256Hash hash, boolean reverse) {
       if (reverse) {
-         putBytes(BitUtils.reverseBytes(hash.getBytes()));
+         byte[] bytes = hash.getBytes();
+         ensureCapacity(bytes.length);
+         for (int i = bytes.length - 1; i >= 0; i--) {
+            _buf[_index++] = bytes[i];
+         }
       } else {
          putBytes(hash.getBytes());
       }
@@ -147,7 +184,48 @@ final public class ByteWriter {
       return bytes;
    }
 
+   /**
+    * Write the content into a buffer of the caller, without an intermediate
+    * copy
+    */
+   public void writeTo(ByteBuffer target) {
+      target.put(_buf, 0, _index);
+   }
+
+   /**
+    * Get a read only view of the content, which is valid until the next write
+    */
+   public ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(_buf, 0, _index).asReadOnlyBuffer();
+   }
+
    public int length() {
       return _index;
    }
+
+   /**
+    * Discard the content, keeping the buffer
+    */
+   public void reset() {
+      _index = 0;
+   }
+
+   /**
+    * Hand this writer back for reuse by {@link #obtain()} on this thread. The
+    * writer and anything obtained from {@link #toByteBuffer()} must not be used
+    * afterwards.
+    */
+   public void recycle() {
+      if (_buf.length <= MAX_POOLED_CAPACITY) {
+         POOL.get()[0] = this;
+      }
+   }
+
+   /**
+    * The internal buffer, of which the first {@link #length()} bytes are in
+    * use. Lets {@link HashUtils} hash the content without copying it.
+    */
+   byte[] getBuffer() {
+      return _buf;
+   }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread pools whose threads do not keep the JVM alive. Shared pools are meant
+ * to be held in a lazily initialized holder class, so that they are only
+ * created when first used.
+ */
+public final class DaemonExecutors {
+   private static final ThreadFactory DAEMON_THREAD_FACTORY = new ThreadFactory() {
+      private final ThreadFactory delegate = Executors.defaultThreadFactory();
+
+      @Override
+      public Thread newThread(Runnable r) {
+         Thread thread = delegate.newThread(r);
+         thread.setDaemon(true);
+         return thread;
+      }
+   };
+
+   private DaemonExecutors() {
+   }
+
+   /**
+    * Create a pool of a fixed number of daemon threads
+    */
+   public static ExecutorService newFixedThreadPool(int threads) {
+      return Executors.newFixedThreadPool(threads, DAEMON_THREAD_FACTORY);
+   }
+}
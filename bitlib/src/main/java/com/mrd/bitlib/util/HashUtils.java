@@ -18,16 +18,55 @@ package com.mrd.bitlib.util;
 
 import com.mrd.bitlib.crypto.digest.RIPEMD160Digest;
 
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * Various hashing utilities used in the Bitcoin system.
+ * <p>
+ * Looking up a {@link MessageDigest} by name is slow, so every thread keeps
+ * its own SHA-256, SHA-512 and RIPEMD-160 instances and reuses them. The digests are reset
+ * before use and never leave this class. Besides the methods that take byte
+ * arrays there are variants that hash the content of a {@link ByteWriter} or
+ * a {@link ByteBuffer} in place, and variants that write the hash into a
+ * buffer supplied by the caller.
  */
 public class HashUtils {
 
    private static final String SHA256 = "SHA-256";
    private static final String SHA512 = "SHA-512";
+   private static final int RIPEMD160_LENGTH = 20;
+
+   private static final ThreadLocal<MessageDigest> SHA256_DIGEST = new ThreadLocal<MessageDigest>() {
+      @Override
+      protected MessageDigest initialValue() {
+         return newDigest(SHA256);
+      }
+   };
+
+   private static final ThreadLocal<MessageDigest> SHA512_DIGEST = new ThreadLocal<MessageDigest>() {
+      @Override
+      protected MessageDigest initialValue() {
+         return newDigest(SHA512);
+      }
+   };
+
+   private static final ThreadLocal<RIPEMD160Digest> RIPEMD160_DIGEST = new ThreadLocal<RIPEMD160Digest>() {
+      @Override
+      protected RIPEMD160Digest initialValue() {
+         return new RIPEMD160Digest();
+      }
+   };
+
+   // Holds the intermediate SHA-256 of a double SHA-256 or an address hash
+   private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+      @Override
+      protected byte[] initialValue() {
+         return new byte[Sha256Hash.HASH_LENGTH];
+      }
+   };
 
    public static Sha256Hash sha256(byte[] data) {
       MessageDigest digest;
@@ -45,14 +84,20 @@ public class HashUtils {
 
    }
 
-   private static MessageDigest getSha256Digest() {
+   private static MessageDigest newDigest(String algorithm) {
       try {
-         return MessageDigest.getInstance(SHA256);
+         return MessageDigest.getInstance(algorithm);
       } catch (NoSuchAlgorithmException e) {
          throw new RuntimeException(e); //cannot happen
       }
    }
 
+   private static MessageDigest getSha256Digest() {
+      MessageDigest digest = SHA256_DIGEST.get();
+      digest.reset();
+      return digest;
+   }
+
    public static Sha256Hash doubleSha256(byte[] data) {
       return doubleSha256(data, 0, data.length);
    }
@@ -67,10 +112,51 @@ public class HashUtils {
    }
 
    public static Sha256Hash doubleSha256(byte[] data, int offset, int length) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      byte[] out = new byte[Sha256Hash.HASH_LENGTH];
+      doubleSha256(data, offset, length, out, 0);
+      return new Sha256Hash(out);
+   }
+
+   /**
+    * Calculate the double SHA-256 of a range of bytes and write the 32 byte
+    * result into a buffer supplied by the caller. Nothing is allocated.
+    */
+   public static void doubleSha256(byte[] data, int offset, int length, byte[] out, int outOffset) {
+      MessageDigest digest = getSha256Digest();
       digest.update(data, offset, length);
-      return new Sha256Hash(digest.digest(digest.digest()));
+      finishDoubleSha256(digest, out, outOffset);
+   }
+
+   /**
+    * Calculate the double SHA-256 of everything written to a byte writer so
+    * far, without copying it out with {@link ByteWriter#toBytes()} first
+    */
+   public static Sha256Hash doubleSha256(ByteWriter writer) {
+      return doubleSha256(writer.getBuffer(), 0, writer.length());
+   }
+
+   /**
+    * Calculate the double SHA-256 of the remaining bytes of a buffer. The
+    * position of the buffer is moved to its limit.
+    */
+   public static Sha256Hash doubleSha256(ByteBuffer data) {
+      MessageDigest digest = getSha256Digest();
+      digest.update(data);
+      byte[] out = new byte[Sha256Hash.HASH_LENGTH];
+      finishDoubleSha256(digest, out, 0);
+      return new Sha256Hash(out);
+   }
+
+   private static void finishDoubleSha256(MessageDigest digest, byte[] out, int outOffset) {
+      byte[] first = SCRATCH.get();
+      try {
+         digest.digest(first, 0, first.length);
+         digest.update(first, 0, first.length);
+         digest.digest(out, outOffset, Sha256Hash.HASH_LENGTH);
+      } catch (DigestException e) {
+         // only happens if the output buffer is too small
+         throw new IllegalArgumentException(e);
+      }
    }
 
    public static Sha512Hash sha512(byte[] data) {
@@ -87,6 +173,21 @@ public class HashUtils {
       return new Sha256Hash(digest.digest());
    }
 
+   /**
+    * Calculate the SHA-256 of a range of bytes and write the 32 byte result
+    * into a buffer supplied by the caller. Nothing is allocated.
+    */
+   public static void sha256(byte[] data, int offset, int length, byte[] out, int outOffset) {
+      MessageDigest digest = getSha256Digest();
+      digest.update(data, offset, length);
+      try {
+         digest.digest(out, outOffset, Sha256Hash.HASH_LENGTH);
+      } catch (DigestException e) {
+         // only happens if the output buffer is too small
+         throw new IllegalArgumentException(e);
+      }
+   }
+
    public static Sha512Hash sha512(byte[] data1, byte[] data2) {
       MessageDigest digest;
       digest = getSha512Digest();
@@ -97,11 +198,9 @@ public class HashUtils {
    }
 
    private static MessageDigest getSha512Digest() {
-      try {
-         return MessageDigest.getInstance(SHA512);
-      } catch (NoSuchAlgorithmException e) {
-         throw new RuntimeException(e); //cannot happen
-      }
+      MessageDigest digest = SHA512_DIGEST.get();
+      digest.reset();
+      return digest;
    }
 
    /**
@@ -112,12 +211,26 @@ public class HashUtils {
     * @return The Bitcoin address as an array of bytes.
     */
    public static byte[] addressHash(byte[] pubkeyBytes) {
-      byte[] sha256 = getSha256Digest().digest(pubkeyBytes);
-      byte[] out = new byte[20];
-      RIPEMD160Digest ripeMD160 = new RIPEMD160Digest();
-      ripeMD160.update(sha256, 0, sha256.length);
-      ripeMD160.doFinal(out, 0); // This also resets the hash function for
-      // next use
+      return addressHash(pubkeyBytes, 0, pubkeyBytes.length);
+   }
+
+   /**
+    * Calculate the RipeMd160 value of the SHA-256 of a range of bytes
+    */
+   public static byte[] addressHash(byte[] data, int offset, int length) {
+      byte[] out = new byte[RIPEMD160_LENGTH];
+      addressHash(data, offset, length, out, 0);
       return out;
    }
+
+   /**
+    * Calculate the RipeMd160 value of the SHA-256 of a range of bytes and
+    * write the 20 byte result into a buffer supplied by the caller. Nothing is
+    * allocated.
+    */
+   public static void addressHash(byte[] data, int offset, int length, byte[] out, int outOffset) {
+      byte[] sha256 = SCRATCH.get();
+      sha256(data, offset, length, sha256, 0);
+      RIPEMD160_DIGEST.get().doFinal32(sha256, 0, out, outOffset);
+   }
 }
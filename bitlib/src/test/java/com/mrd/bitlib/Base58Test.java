@@ -38,8 +38,12 @@ import com.mrd.bitlib.bitcoinj.Base58;
 
 import org.junit.Test;
 
+import java.math.BigInteger;
+import java.util.Random;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class Base58Test {
    private static final byte[] BYTES = new byte[]{0, 13, -101};
@@ -56,4 +60,80 @@ public class Base58Test {
    public void testNull() {
       Base58.decode(null);
    }
+
+   /**
+    * Straightforward encoding with big integers used as reference
+    */
+   private static String referenceEncode(byte[] input) {
+      StringBuilder sb = new StringBuilder();
+      BigInteger value = new BigInteger(1, input);
+      BigInteger base = BigInteger.valueOf(58);
+      while (value.signum() > 0) {
+         BigInteger[] divMod = value.divideAndRemainder(base);
+         sb.append(Base58.ALPHABET[divMod[1].intValue()]);
+         value = divMod[0];
+      }
+      for (int i = 0; i < input.length && input[i] == 0; i++) {
+         sb.append(Base58.ALPHABET[0]);
+      }
+      return sb.reverse().toString();
+   }
+
+   @Test
+   public void testMatchesReference() {
+      Random random = new Random(58);
+      for (int i = 0; i < 500; i++) {
+         byte[] bytes = new byte[random.nextInt(90)];
+         random.nextBytes(bytes);
+         // leading zeros are encoded separately
+         for (int j = 0; j < bytes.length && random.nextInt(4) == 0; j++) {
+            bytes[j] = 0;
+         }
+         String encoded = Base58.encode(bytes);
+         assertEquals(referenceEncode(bytes), encoded);
+         assertArrayEquals(bytes, Base58.decode(encoded));
+      }
+   }
+
+   @Test
+   public void testInvalidCharacters() {
+      assertNull(Base58.decode("12O4"));
+      assertNull(Base58.decode("12\u00e94"));
+      assertArrayEquals(BYTES, Base58.decode("\uFEFF1234"));
+   }
+
+   @Test
+   public void testChecked() {
+      // the version byte and hash of the address of the genesis block
+      String address = "1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa";
+      byte[] bytes = Base58.decodeChecked(address);
+      assertEquals(21, bytes.length);
+      assertEquals(address, Base58.encodeWithChecksum(bytes));
+      assertNull(Base58.decodeChecked("1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNb"));
+      assertNull(Base58.decodeChecked("111"));
+   }
+
+   @Test
+   public void testBatch() {
+      Random random = new Random(42);
+      byte[][] inputs = new byte[50][];
+      for (int i = 0; i < inputs.length; i++) {
+         inputs[i] = new byte[random.nextInt(40)];
+         random.nextBytes(inputs[i]);
+      }
+      String[] encoded = Base58.encodeWithChecksum(inputs);
+      for (int i = 0; i < inputs.length; i++) {
+         assertEquals(Base58.encodeWithChecksum(inputs[i]), encoded[i]);
+      }
+      encoded[7] = null;
+      encoded[8] = encoded[8].substring(1);
+      byte[][] decoded = Base58.decodeChecked(encoded);
+      for (int i = 0; i < inputs.length; i++) {
+         if (i == 7 || i == 8) {
+            assertNull(decoded[i]);
+         } else {
+            assertArrayEquals(inputs[i], decoded[i]);
+         }
+      }
+   }
 }
@@ -40,6 +40,8 @@ import com.mrd.bitlib.util.HexUtils;
 import org.junit.Test;
 
 import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -167,6 +169,18 @@ public class Bip39Test {
         }
     }
 
+    @Test
+    public void testGenerateSeedsForManyPassphrases() {
+        for (TestVector tv : TEST_VECTORS) {
+            List<String> wordList = Arrays.asList(tv.wordList);
+            List<Bip39.MasterSeed> seeds = Bip39.generateSeeds(wordList, Arrays.asList("wrong", tv.passphrase, null));
+            assertEquals(3, seeds.size());
+            assertEquals(tv.bip32seed, HexUtils.toHex(seeds.get(1).getBip32Seed()));
+            assertEquals(Bip39.generateSeedFromWordList(tv.wordList, "wrong"), seeds.get(0));
+            assertEquals(Bip39.generateSeedFromWordList(tv.wordList, ""), seeds.get(2));
+        }
+    }
+
     @Test
     public void testEnglishVectors_WordListChecksum() {
         for (TestVector tv : TEST_VECTORS) {
@@ -0,0 +1,109 @@
+package com.mrd.bitlib;
+
+import com.mrd.bitlib.StandardTransactionBuilder.CoinSelector;
+import com.mrd.bitlib.StandardTransactionBuilder.InsufficientFundsException;
+import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.model.ScriptOutputStandard;
+import com.mrd.bitlib.model.UnspentTransactionOutput;
+import com.mrd.bitlib.util.Sha256Hash;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static com.mrd.bitlib.TransactionUtils.MINIMUM_OUTPUT_VALUE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CoinSelectorsTest {
+   private static final long FEE_PER_KB = 1000;
+   private static final CoinSelector[] ALL = {CoinSelectors.FIFO, CoinSelectors.BRANCH_AND_BOUND,
+         CoinSelectors.KNAPSACK, CoinSelectors.CONSOLIDATE};
+
+   // at 1000 sat/kB an input costs 148 sat, and a transaction with one output and no inputs 44 sat
+   private static final List<UnspentTransactionOutput> UNSPENT = utxos(90000, 60148, 40192, 30000);
+
+   @Test
+   public void branchAndBoundFindsSelectionWithoutChange() throws Exception {
+      List<UnspentTransactionOutput> funding = CoinSelectors.BRANCH_AND_BOUND.select(UNSPENT, 100000, 1, FEE_PER_KB);
+      assertEquals(new HashSet<>(UNSPENT.subList(1, 3)), new HashSet<>(funding));
+      assertEquals(0, change(funding, 100000));
+   }
+
+   @Test
+   public void branchAndBoundFallsBackToKnapsack() throws Exception {
+      // 90000 + 30000 pays with change, nothing pays without
+      List<UnspentTransactionOutput> funding = CoinSelectors.BRANCH_AND_BOUND.select(UNSPENT, 110000, 1, FEE_PER_KB);
+      assertEquals(CoinSelectors.KNAPSACK.select(UNSPENT, 110000, 1, FEE_PER_KB), funding);
+      assertEquals(new HashSet<>(Arrays.asList(UNSPENT.get(0), UNSPENT.get(3))), new HashSet<>(funding));
+   }
+
+   @Test
+   public void knapsackPrefersSmallestSingleOutput() throws Exception {
+      List<UnspentTransactionOutput> funding = CoinSelectors.KNAPSACK.select(UNSPENT, 50000, 1, FEE_PER_KB);
+      assertEquals(Arrays.asList(UNSPENT.get(1)), funding);
+   }
+
+   @Test
+   public void consolidateSpendsEverything() throws Exception {
+      List<UnspentTransactionOutput> unspent = new ArrayList<>(UNSPENT);
+      // not worth the fee to spend it
+      unspent.addAll(utxos(100));
+      List<UnspentTransactionOutput> funding = CoinSelectors.CONSOLIDATE.select(unspent, 10000, 1, FEE_PER_KB);
+      assertEquals(new HashSet<>(UNSPENT), new HashSet<>(funding));
+   }
+
+   @Test
+   public void insufficientFunds() {
+      for (CoinSelector selector : ALL) {
+         try {
+            selector.select(UNSPENT, 220000, 1, FEE_PER_KB);
+            throw new AssertionError("expected InsufficientFundsException");
+         } catch (InsufficientFundsException e) {
+            // expected
+         }
+      }
+   }
+
+   @Test(timeout = 2000)
+   public void manyOutputs() throws Exception {
+      Random random = new Random(42);
+      long[] values = new long[10000];
+      for (int i = 0; i < values.length; i++) {
+         values[i] = MINIMUM_OUTPUT_VALUE + random.nextInt(1000000);
+      }
+      List<UnspentTransactionOutput> unspent = utxos(values);
+      for (CoinSelector selector : ALL) {
+         for (long outputSum : new long[]{100000, 5000000, 100000000}) {
+            List<UnspentTransactionOutput> funding = selector.select(unspent, outputSum, 2, FEE_PER_KB);
+            long fee = CoinSelectors.getFee(funding.size(), sum(funding), outputSum, 2, FEE_PER_KB);
+            assertTrue(sum(funding) >= outputSum + fee);
+         }
+      }
+   }
+
+   private static long change(List<UnspentTransactionOutput> funding, long outputSum) {
+      return sum(funding) - outputSum - StandardTransactionBuilder.estimateFee(funding.size(), 1, FEE_PER_KB);
+   }
+
+   private static long sum(List<UnspentTransactionOutput> outputs) {
+      long sum = 0;
+      for (UnspentTransactionOutput output : outputs) {
+         sum += output.value;
+      }
+      return sum;
+   }
+
+   private static List<UnspentTransactionOutput> utxos(long... values) {
+      List<UnspentTransactionOutput> utxos = new ArrayList<>();
+      for (int i = 0; i < values.length; i++) {
+         utxos.add(new UnspentTransactionOutput(new OutPoint(Sha256Hash.ZERO_HASH, i), 100 + i, values[i],
+               new ScriptOutputStandard(new byte[20])));
+      }
+      return utxos;
+   }
+}
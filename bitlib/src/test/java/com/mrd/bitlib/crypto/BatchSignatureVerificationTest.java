@@ -0,0 +1,61 @@
+package com.mrd.bitlib.crypto;
+
+import com.mrd.bitlib.crypto.ec.Parameters;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BatchSignatureVerificationTest {
+   private static InMemoryPrivateKey key(int i) {
+      return new InMemoryPrivateKey(HashUtils.sha256(("key " + i).getBytes()), true);
+   }
+
+   @Test
+   public void verifiesEveryItem() {
+      List<Signatures.BatchItem> items = new ArrayList<Signatures.BatchItem>();
+      List<Boolean> expected = new ArrayList<Boolean>();
+      for (int i = 0; i < 12; i++) {
+         // three keys, each signing several messages
+         InMemoryPrivateKey key = key(i % 3);
+         Sha256Hash hash = HashUtils.sha256(("message " + i).getBytes());
+         Signature signature = key.generateSignature(hash);
+         items.add(new Signatures.BatchItem(hash.getBytes(), signature, key.getPublicKey()));
+         expected.add(true);
+      }
+      // signature of another message
+      Sha256Hash hash = HashUtils.sha256("message".getBytes());
+      Signature wrong = key(0).generateSignature(HashUtils.sha256("other".getBytes()));
+      items.add(new Signatures.BatchItem(hash.getBytes(), wrong, key(0).getPublicKey()));
+      expected.add(false);
+      // signature made by another key
+      items.add(new Signatures.BatchItem(hash.getBytes(), key(1).generateSignature(hash), key(2).getPublicKey()));
+      expected.add(false);
+      // high s value, valid unless low s is enforced
+      Signature low = key(1).generateSignature(hash);
+      Signature high = new Signature(low.r, Parameters.n.subtract(low.s));
+      items.add(new Signatures.BatchItem(hash.getBytes(), high, key(1).getPublicKey()));
+      expected.add(true);
+
+      boolean[] results = Signatures.verifySignatures(items, false);
+      assertEquals(expected.size(), results.length);
+      for (int i = 0; i < results.length; i++) {
+         assertEquals(expected.get(i), results[i]);
+         Signatures.BatchItem item = items.get(i);
+         assertEquals(Signatures.verifySignature(item.message, item.signature, item.publicKey.getQ()), results[i]);
+      }
+
+      boolean[] lowSResults = Signatures.verifySignatures(items, true);
+      assertEquals(false, lowSResults[lowSResults.length - 1]);
+   }
+
+   @Test
+   public void emptyBatch() {
+      assertArrayEquals(new boolean[0], Signatures.verifySignatures(new ArrayList<Signatures.BatchItem>(), false));
+   }
+}
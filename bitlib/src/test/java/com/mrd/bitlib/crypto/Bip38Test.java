@@ -39,8 +39,15 @@ import static com.mrd.bitlib.crypto.Bip38.encryptNoEcMultiply;
 import static com.mrd.bitlib.crypto.Bip38.isBip38PrivateKey;
 import static com.mrd.bitlib.model.NetworkParameters.productionNetwork;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.mrd.bitlib.lambdaworks.crypto.SCryptProgress;
 import org.junit.Test;
 
 public class Bip38Test {
@@ -86,6 +93,69 @@ public class Bip38Test {
       }
    }
 
+   @Test
+   public void testBatchDecrypt() throws InterruptedException {
+      List<String> keys = new ArrayList<>();
+      List<String> passphrases = new ArrayList<>();
+      for (TestVector tv : DECRYPT_TVS) {
+         keys.add(tv.encrypted);
+      }
+      keys.add(ENCRYPT_DECRYPT_TVS[0].encrypted);
+      keys.add("not a key");
+      passphrases.add("wrong");
+      passphrases.add("TestingOneTwoThree");
+      passphrases.add("Satoshi");
+      passphrases.add("MOLON LABE");
+      passphrases.add(DECRYPT_TVS[3].passphrase);
+
+      final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+      SCryptProgress progress = Bip38.getScryptProgressTracker(keys.size());
+      String[] results = decrypt(keys, passphrases.subList(0, 3), progress, productionNetwork, new Bip38.BatchListener() {
+         @Override
+         public void onKeyCompleted(int index, String result) {
+            completed.add(index);
+         }
+      });
+      assertEquals(keys.size(), completed.size());
+      assertEquals(DECRYPT_TVS[0].unencryptedWIF, results[0]);
+      assertEquals(DECRYPT_TVS[1].unencryptedWIF, results[1]);
+      // no passphrase fits
+      assertNull(results[2]);
+      assertNull(results[3]);
+      assertEquals(ENCRYPT_DECRYPT_TVS[0].unencryptedWIF, results[4]);
+      assertNull(results[5]);
+
+      results = decrypt(keys, passphrases, null, productionNetwork, null);
+      for (int i = 0; i < DECRYPT_TVS.length; i++) {
+         assertEquals(DECRYPT_TVS[i].unencryptedWIF, results[i]);
+      }
+      assertEquals(ENCRYPT_DECRYPT_TVS[0].unencryptedWIF, results[4]);
+      assertNull(results[5]);
+   }
+
+   @Test
+   public void testBatchEncrypt() throws InterruptedException {
+      List<String> keys = Arrays.asList(ENCRYPT_DECRYPT_TVS[0].unencryptedWIF, ENCRYPT_DECRYPT_TVS[3].unencryptedWIF);
+      String[] results = encryptNoEcMultiply("TestingOneTwoThree", keys, null, null);
+      assertEquals(ENCRYPT_DECRYPT_TVS[0].encrypted, results[0]);
+      assertEquals(ENCRYPT_DECRYPT_TVS[3].encrypted, results[1]);
+   }
+
+   @Test
+   public void testEmptyBatch() throws InterruptedException {
+      assertEquals(0, encryptNoEcMultiply("TestingOneTwoThree", Collections.<String>emptyList(), null, null).length);
+      assertEquals(0, decrypt(Collections.<String>emptyList(), Collections.singletonList("TestingOneTwoThree"),
+            Bip38.getScryptProgressTracker(0), productionNetwork, null).length);
+   }
+
+   @Test(expected = InterruptedException.class)
+   public void testBatchTerminate() throws InterruptedException {
+      SCryptProgress progress = Bip38.getScryptProgressTracker(1);
+      progress.terminate();
+      decrypt(Collections.singletonList(DECRYPT_TVS[0].encrypted), Collections.singletonList("x"), progress,
+            productionNetwork, null);
+   }
+
    private void testDecrypt(TestVector tv) throws InterruptedException {
       assertEquals("Without Bom", tv.unencryptedWIF, decrypt(tv.encrypted, tv.passphrase, null, productionNetwork));
       assertEquals("With Bom", tv.unencryptedWIF, decrypt("\uFEFF" + tv.encrypted, tv.passphrase, null, productionNetwork));
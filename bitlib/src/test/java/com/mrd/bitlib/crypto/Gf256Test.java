@@ -1,7 +1,9 @@
 package com.mrd.bitlib.crypto;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -51,6 +53,27 @@ public class Gf256Test {
       testAllShareCombinations(secret, 5);
    }
 
+   @Test
+   public void batchMatchesSingleSecrets() {
+      List<byte[]> secrets = new ArrayList<byte[]>();
+      for (int i = 0; i < 20; i++) {
+         byte[] secret = new byte[i * 7];
+         new Random(i).nextBytes(secret);
+         secrets.add(secret);
+      }
+      Gf256 gf = Gf256.getDefault();
+      List<List<Share>> batch = gf.makeShares(secrets, 3, 5);
+      Assert.assertEquals(secrets.size(), batch.size());
+      for (int i = 0; i < secrets.size(); i++) {
+         List<Share> single = new Gf256().makeShares(secrets.get(i), 3, 5);
+         for (int j = 0; j < single.size(); j++) {
+            Assert.assertEquals(single.get(j).index, batch.get(i).get(j).index);
+            Assert.assertArrayEquals(single.get(j).data, batch.get(i).get(j).data);
+         }
+         Assert.assertArrayEquals(secrets.get(i), gf.combineShares(batch.get(i).subList(2, 5)));
+      }
+   }
+
    private int testAllShareCombinations(byte[] secret, int maxN) {
       int tests = 0;
       for (int n = 1; n <= maxN; n++) {
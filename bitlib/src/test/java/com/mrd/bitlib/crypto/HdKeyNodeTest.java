@@ -6,6 +6,8 @@ import com.mrd.bitlib.util.HexUtils;
 
 import org.junit.Test;
 
+import java.util.List;
+
 import static com.mrd.bitlib.model.NetworkParameters.productionNetwork;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
@@ -106,6 +108,20 @@ public class HdKeyNodeTest {
         assertEquals(tv.xpriv, node.serialize(productionNetwork));
     }
 
+    @Test
+    public void deriveRangeTest() {
+        HdKeyNode chainNode = HdKeyNode.fromSeed(TEST_VECTORS[1].seed).createHardenedChildNode(0).createChildNode(1);
+        // Large enough to be split over several threads, starting at an odd index
+        for (HdKeyNode parent : new HdKeyNode[]{chainNode, chainNode.getPublicNode()}) {
+            List<HdKeyNode> children = HdKeyDeriver.deriveRange(parent, 3, 102);
+            assertEquals(100, children.size());
+            for (int i = 0; i < children.size(); i++) {
+                assertEquals(parent.createChildNode(3 + i), children.get(i));
+            }
+        }
+        assertEquals(0, HdKeyDeriver.deriveRange(chainNode, 5, 4).size());
+    }
+
     private static class TestVector {
         byte[] seed;
         HdKeyPath derivation;
@@ -0,0 +1,35 @@
+package com.mrd.bitlib.crypto.digest;
+
+import com.mrd.bitlib.lambdaworks.crypto.PBKDF;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class Pbkdf2HmacSha512Test {
+
+   @Test
+   public void matchesJcePbkdf2() throws Exception {
+      Random random = new Random(42);
+      // passwords longer than a SHA-512 block get hashed first, salts may
+      // span several blocks and keys may be longer than one digest
+      int[] passwordLengths = {1, 64, 127, 128, 129, 300};
+      int[] saltLengths = {0, 8, 111, 112, 200};
+      int[] keyLengths = {1, 64, 100};
+      for (int passwordLength : passwordLengths) {
+         for (int saltLength : saltLengths) {
+            for (int keyLength : keyLengths) {
+               byte[] password = new byte[passwordLength];
+               byte[] salt = new byte[saltLength];
+               random.nextBytes(password);
+               random.nextBytes(salt);
+               int iterations = 1 + random.nextInt(5);
+               byte[] expected = PBKDF.pbkdf2("HmacSHA512", password, salt, iterations, keyLength);
+               assertArrayEquals(expected, new Pbkdf2HmacSha512(password).derive(salt, iterations, keyLength));
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,141 @@
+package com.mrd.bitlib.crypto.ec;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EcToolsTest {
+   private static final Random RANDOM = new Random(4711);
+
+   /**
+    * Plain affine double-and-add used as reference for the optimized
+    * multiplication
+    */
+   private static Point referenceMultiply(Point p, BigInteger k) {
+      Point r = p.getCurve().getInfinity();
+      for (int i = k.bitLength() - 1; i >= 0; i--) {
+         r = r.twice();
+         if (k.testBit(i)) {
+            r = r.add(p);
+         }
+      }
+      return r;
+   }
+
+   private static BigInteger randomScalar() {
+      BigInteger k;
+      do {
+         k = new BigInteger(256, RANDOM);
+      } while (k.signum() == 0 || k.compareTo(Parameters.n) >= 0);
+      return k;
+   }
+
+   @Test
+   public void multiplySmallScalars() {
+      Point G = Parameters.G;
+      assertTrue(EcTools.multiply(G, BigInteger.ZERO).isInfinity());
+      assertEquals(G, EcTools.multiply(G, BigInteger.ONE));
+      assertEquals(G.twice(), EcTools.multiply(G, BigInteger.valueOf(2)));
+      assertEquals(G.twice().add(G), EcTools.multiply(G, BigInteger.valueOf(3)));
+   }
+
+   @Test
+   public void multiplyByGroupOrder() {
+      Point G = Parameters.G;
+      assertTrue(EcTools.multiply(G, Parameters.n).isInfinity());
+      assertEquals(G.negate(), EcTools.multiply(G, Parameters.n.subtract(BigInteger.ONE)));
+   }
+
+   @Test
+   public void multiplyMatchesReference() {
+      Point P = referenceMultiply(Parameters.G, randomScalar());
+      for (int i = 0; i < 10; i++) {
+         BigInteger k = randomScalar();
+         assertEquals(referenceMultiply(Parameters.G, k), EcTools.multiply(Parameters.G, k));
+         assertEquals(referenceMultiply(P, k), EcTools.multiply(P, k));
+      }
+   }
+
+   @Test
+   public void sumOfTwoMultipliesMatchesReference() {
+      Point G = Parameters.G;
+      Point Q = referenceMultiply(G, randomScalar());
+      for (int i = 0; i < 10; i++) {
+         BigInteger k = randomScalar();
+         BigInteger l = randomScalar();
+         Point expected = referenceMultiply(G, k).add(referenceMultiply(Q, l));
+         assertEquals(expected, EcTools.sumOfTwoMultiplies(G, k, Q, l));
+      }
+      // P + (-P) is infinity, which exercises the degenerate additions
+      assertTrue(EcTools.sumOfTwoMultiplies(G, BigInteger.ONE, G.negate(), BigInteger.ONE).isInfinity());
+      assertEquals(G.twice(), EcTools.sumOfTwoMultiplies(G, BigInteger.ONE, G, BigInteger.ONE));
+   }
+
+   @Test
+   public void sumOfGeneratorMultiplesAndPointMatchesReference() {
+      Point G = Parameters.G;
+      BigInteger q = randomScalar();
+      Point Q = referenceMultiply(G, q);
+      BigInteger[] k = new BigInteger[10];
+      for (int i = 0; i < k.length; i++) {
+         k[i] = randomScalar();
+      }
+      // G * (n - q) + Q is infinity in the middle of the batch
+      k[4] = Parameters.n.subtract(q);
+      Point[] points = EcTools.sumOfGeneratorMultiplesAndPoint(k, Q);
+      for (int i = 0; i < k.length; i++) {
+         assertEquals(referenceMultiply(G, k[i]).add(Q), points[i]);
+      }
+      assertTrue(points[4].isInfinity());
+   }
+
+   @Test
+   public void generatorTableHandlesFullWidthScalars() {
+      Point G = Parameters.G;
+      // all nibbles set, which is larger than the group order
+      BigInteger k = BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE);
+      assertEquals(referenceMultiply(G, k.mod(Parameters.n)), EcTools.multiply(G, k));
+      // a generator that is not the identical instance still uses the table
+      Point copy = Parameters.curve.decodePoint(G.getEncoded());
+      BigInteger l = randomScalar();
+      assertEquals(referenceMultiply(G, l), EcTools.multiply(copy, l));
+   }
+
+   @Test
+   public void endomorphismMatchesLambda() {
+      Point G = Parameters.G;
+      Point lambdaG = referenceMultiply(G, GlvMultiplier.LAMBDA);
+      // lambda * (x, y) = (beta * x, y)
+      assertEquals(G.getY(), lambdaG.getY());
+      assertEquals(G.getX().multiply(Parameters.curve.fromBigInteger(GlvMultiplier.BETA)), lambdaG.getX());
+   }
+
+   @Test
+   public void decomposeSplitsScalar() {
+      for (int i = 0; i < 100; i++) {
+         BigInteger k = randomScalar();
+         BigInteger[] halves = GlvMultiplier.decompose(k);
+         assertEquals(k, halves[0].add(halves[1].multiply(GlvMultiplier.LAMBDA)).mod(Parameters.n));
+         assertTrue(halves[0].abs().bitLength() <= 129);
+         assertTrue(halves[1].abs().bitLength() <= 129);
+      }
+   }
+
+   @Test
+   public void wnafRecodesScalar() {
+      for (int i = 0; i < 100; i++) {
+         BigInteger k = randomScalar();
+         byte[] naf = GlvMultiplier.wnaf(k, 5);
+         BigInteger sum = BigInteger.ZERO;
+         for (int j = naf.length - 1; j >= 0; j--) {
+            sum = sum.shiftLeft(1).add(BigInteger.valueOf(naf[j]));
+            assertTrue(naf[j] == 0 || (Math.abs(naf[j]) % 2 == 1 && Math.abs(naf[j]) < 16));
+         }
+         assertEquals(k, sum);
+      }
+   }
+}
@@ -0,0 +1,51 @@
+package com.mrd.bitlib.crypto.ec;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class Secp256k1FieldTest {
+   private static final BigInteger P = Secp256k1Field.P_BIG;
+   private static final BigInteger[] EDGE_CASES = new BigInteger[] { BigInteger.ZERO, BigInteger.ONE,
+         P.subtract(BigInteger.ONE), P.subtract(BigInteger.valueOf(2)), P.shiftRight(1),
+         BigInteger.ONE.shiftLeft(255), BigInteger.ONE.shiftLeft(32), BigInteger.ONE.shiftLeft(256).subtract(P) };
+
+   @Test
+   public void matchesBigIntegerArithmetic() {
+      Random random = new Random(4711);
+      for (int i = 0; i < 10000; i++) {
+         BigInteger x = i < EDGE_CASES.length * EDGE_CASES.length ? EDGE_CASES[i % EDGE_CASES.length]
+               : new BigInteger(256, random).mod(P);
+         BigInteger y = i < EDGE_CASES.length * EDGE_CASES.length ? EDGE_CASES[i / EDGE_CASES.length]
+               : new BigInteger(256, random).mod(P);
+         assertOperations(x, y);
+      }
+   }
+
+   private static void assertOperations(BigInteger x, BigInteger y) {
+      int[] tt = Secp256k1Field.createExt();
+      int[] a = Secp256k1Field.fromBigInteger(x);
+      int[] b = Secp256k1Field.fromBigInteger(y);
+      int[] z = Secp256k1Field.create();
+      assertEquals(x, Secp256k1Field.toBigInteger(a));
+
+      Secp256k1Field.add(a, b, z);
+      assertEquals(x.add(y).mod(P), Secp256k1Field.toBigInteger(z));
+      Secp256k1Field.subtract(a, b, z);
+      assertEquals(x.subtract(y).mod(P), Secp256k1Field.toBigInteger(z));
+      Secp256k1Field.negate(a, z);
+      assertEquals(x.negate().mod(P), Secp256k1Field.toBigInteger(z));
+      Secp256k1Field.multiply(a, b, z, tt);
+      assertEquals(x.multiply(y).mod(P), Secp256k1Field.toBigInteger(z));
+      if (x.signum() != 0) {
+         Secp256k1Field.invert(a, z);
+         assertEquals(x.modInverse(P), Secp256k1Field.toBigInteger(z));
+      }
+      // in place
+      Secp256k1Field.square(a, a, tt);
+      assertEquals(x.multiply(x).mod(P), Secp256k1Field.toBigInteger(a));
+   }
+}
@@ -0,0 +1,39 @@
+package com.mrd.bitlib.lambdaworks.crypto;
+
+import com.mrd.bitlib.util.HexUtils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SCryptTest {
+
+   // test vectors from RFC 7914
+   @Test
+   public void rfc7914Vectors() throws Exception {
+      assertEquals("fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b3731622eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640",
+            HexUtils.toHex(SCrypt.scrypt("password".getBytes(), "NaCl".getBytes(), 1024, 8, 16, 64, null)));
+      assertEquals("7023bdcb3afd7348461c06cd81fd38ebfda8fbba904f8e3ea9b543f6545da1f2d5432955613f0fcf62d49705242a9af9e61e85dc0d651e40dfcf017b45575887",
+            HexUtils.toHex(SCrypt.scrypt("pleaseletmein".getBytes(), "SodiumChloride".getBytes(), 16384, 8, 1, 64, null)));
+   }
+
+   @Test
+   public void progressCoversAllLanes() throws Exception {
+      SCryptProgress progress = new SCryptProgress(1024, 8, 16);
+      SCrypt.scrypt("password".getBytes(), "NaCl".getBytes(), 1024, 8, 16, 64, progress);
+      assertEquals(1.0, progress.getProgress(), 0.0);
+   }
+
+   @Test
+   public void terminateStopsAllLanes() throws Exception {
+      SCryptProgress progress = new SCryptProgress(1024, 8, 16);
+      progress.terminate();
+      try {
+         SCrypt.scrypt("password".getBytes(), "NaCl".getBytes(), 1024, 8, 16, 64, progress);
+         fail("expected InterruptedException");
+      } catch (InterruptedException e) {
+         // expected
+      }
+   }
+}
@@ -0,0 +1,76 @@
+package com.mrd.bitlib.model;
+
+import com.mrd.bitlib.util.HexUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AddressIndexTest {
+   private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+
+   private static byte[] randomHash(Random random) {
+      byte[] hash = new byte[20];
+      random.nextBytes(hash);
+      return hash;
+   }
+
+   @Test
+   public void putAndGet() {
+      Random random = new Random(21);
+      AddressIndex index = new AddressIndex();
+      Address[] addresses = new Address[1000];
+      for (int i = 0; i < addresses.length; i++) {
+         byte[] hash = randomHash(random);
+         addresses[i] = i % 2 == 0 ? Address.fromStandardBytes(hash, NETWORK) : Address.fromP2SHBytes(hash, NETWORK);
+         index.put(addresses[i], i);
+      }
+      assertEquals(addresses.length, index.size());
+      for (int i = 0; i < addresses.length; i++) {
+         // a different instance with the same bytes
+         assertEquals(i, index.get(Address.fromString(addresses[i].toString())));
+      }
+      assertFalse(index.contains(Address.fromStandardBytes(randomHash(random), NETWORK)));
+
+      index.put(addresses[5], 4711);
+      assertEquals(addresses.length, index.size());
+      assertEquals(4711, index.get(addresses[5]));
+
+      index.clear();
+      assertEquals(0, index.size());
+      assertFalse(index.contains(addresses[0]));
+   }
+
+   @Test
+   public void sameHashDifferentVersion() {
+      byte[] hash = randomHash(new Random(1));
+      AddressIndex index = new AddressIndex();
+      index.put(Address.fromStandardBytes(hash, NETWORK), 1);
+      assertEquals(-1, index.get(Address.fromP2SHBytes(hash, NETWORK)));
+      assertEquals(-1, index.get(Address.fromStandardBytes(hash, NetworkParameters.testNetwork)));
+   }
+
+   @Test
+   public void lookupByScript() {
+      Random random = new Random(42);
+      Address standard = Address.fromStandardBytes(randomHash(random), NETWORK);
+      Address p2sh = Address.fromP2SHBytes(randomHash(random), NETWORK);
+      AddressIndex index = new AddressIndex();
+      index.put(standard, 3);
+      index.put(p2sh, 7);
+
+      byte[] standardScript = new ScriptOutputStandard(standard.getTypeSpecificBytes()).getScriptBytes();
+      byte[] p2shScript = new ScriptOutputP2SH(p2sh.getTypeSpecificBytes()).getScriptBytes();
+      assertTrue(AddressIndex.isHashScript(standardScript));
+      assertTrue(AddressIndex.isHashScript(p2shScript));
+      assertEquals(3, index.getByScript(standardScript, NETWORK));
+      assertEquals(7, index.getByScript(p2shScript, NETWORK));
+      assertEquals(-1, index.getByScript(standardScript, NetworkParameters.testNetwork));
+
+      // pay to public key is not looked up by hash
+      byte[] pubkeyScript = HexUtils.toBytes("210279be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798ac");
+      assertFalse(AddressIndex.isHashScript(pubkeyScript));
+      assertEquals(-1, index.getByScript(pubkeyScript, NETWORK));
+   }
+}
@@ -67,6 +67,23 @@ public class AddressTest {
       Assert.assertEquals("1HB5XMLmzFVj8ALj6mfBsbifRoD4miY36v", address.toString());
    }
 
+   @Test
+   public void batchConversionTest() {
+      String[] strings = new String[]{"1HB5XMLmzFVj8ALj6mfBsbifRoD4miY36v", "muvtKjWtqcxrsDYfvFCgGnkmB4EqEcU8Bk",
+            "2N9ZkpDh83uygvhTSy5syYADZvDuVZi8mRH", "31qh3GkM3RLPfMy86XjisS7bVkz7Pz8wef", null};
+      Address[] addresses = Address.fromStrings(strings);
+      Assert.assertNull(addresses[3]);
+      Assert.assertNull(addresses[4]);
+
+      Address[] valid = new Address[3];
+      for (int i = 0; i < valid.length; i++) {
+         Assert.assertEquals(Address.fromString(strings[i]), addresses[i]);
+         // a fresh instance without the cached string gets encoded
+         valid[i] = new Address(addresses[i].getAllAddressBytes());
+      }
+      Assert.assertArrayEquals(new String[]{strings[0], strings[1], strings[2]}, Address.toStrings(valid));
+   }
+
    @Test
    public void standardAddressTest() {
       Address tAddr = Address.fromString("muvtKjWtqcxrsDYfvFCgGnkmB4EqEcU8Bk");
@@ -0,0 +1,79 @@
+package com.mrd.bitlib.model;
+
+import com.mrd.bitlib.model.Transaction.TransactionParsingException;
+import com.mrd.bitlib.util.BitUtils;
+import com.mrd.bitlib.util.HexUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LazyTransactionTest {
+
+   // The unsigned transaction of the native P2WPKH example in BIP143
+   private static final String UNSIGNED_TX = "0100000002fff7f7881a8099afa6940d42d1e7f6362bec38171ea3edf433541db4e4ad969f0000000000eeffffffef51e1b804cc89d182d279655c3aa89e815b1b309fe287d9b2b55d57b90ec68a0100000000ffffffff02202cb206000000001976a9148280b37df378db99f66f85c95a783a76ac7a6d5988ac9093510d000000001976a9143bde42dbee7e4dbe6a21b2d50ce2f0167faa815988ac11000000";
+
+   private static byte[] segwitBytes() throws Exception {
+      Transaction unsigned = Transaction.fromBytes(HexUtils.toBytes(UNSIGNED_TX));
+      for (int i = 0; i < unsigned.inputs.length; i++) {
+         TransactionWitness witness = new TransactionWitness(2);
+         witness.setStack(0, new byte[]{1, 2, 3});
+         witness.setStack(1, new byte[i]);
+         unsigned.inputs[i].setWitness(witness);
+      }
+      Transaction segwit = new Transaction(unsigned.version, unsigned.inputs, unsigned.outputs, unsigned.lockTime, true);
+      return segwit.toBytes();
+   }
+
+   private static void assertSameTransaction(byte[] bytes) throws Exception {
+      Transaction expected = Transaction.fromBytes(bytes);
+      LazyTransaction lazy = LazyTransaction.fromBytes(bytes);
+      assertEquals(expected.getId(), lazy.getId());
+      assertEquals(expected.version, lazy.getVersion());
+      assertEquals(expected.lockTime, lazy.getLockTime());
+      assertEquals(expected.inputs.length, lazy.getInputCount());
+      assertEquals(expected.outputs.length, lazy.getOutputCount());
+      assertEquals(bytes.length, lazy.getRawSize());
+      for (int i = 0; i < expected.inputs.length; i++) {
+         assertEquals(expected.inputs[i].outPoint, lazy.getOutPoint(i));
+         assertFalse(lazy.isCoinbaseInput(i));
+         TransactionInput input = lazy.getInput(i);
+         assertArrayEquals(expected.inputs[i].script.getScriptBytes(), input.script.getScriptBytes());
+         assertEquals(expected.inputs[i].sequence, input.sequence);
+         assertSame(input, lazy.getInput(i));
+      }
+      for (int i = 0; i < expected.outputs.length; i++) {
+         assertEquals(expected.outputs[i].value, lazy.getOutputValue(i));
+         assertArrayEquals(expected.outputs[i].toBytes(), lazy.getOutput(i).toBytes());
+      }
+      assertArrayEquals(bytes, lazy.toTransaction().toBytes());
+   }
+
+   @Test
+   public void legacyTransaction() throws Exception {
+      assertSameTransaction(HexUtils.toBytes(UNSIGNED_TX));
+   }
+
+   @Test
+   public void segwitTransaction() throws Exception {
+      byte[] bytes = segwitBytes();
+      assertSameTransaction(bytes);
+      LazyTransaction lazy = LazyTransaction.fromBytes(bytes);
+      assertTrue(lazy.isSegwit());
+      // the id does not commit to the witnesses
+      assertEquals(Transaction.fromBytes(HexUtils.toBytes(UNSIGNED_TX)).getId(), lazy.getId());
+      assertEquals(2, lazy.getInput(1).getWitness().getStackSize());
+   }
+
+   @Test
+   public void rejectsTruncatedTransactions() throws Exception {
+      byte[] bytes = segwitBytes();
+      for (int length = 0; length < bytes.length; length += 7) {
+         try {
+            LazyTransaction.fromBytes(BitUtils.copyOfRange(bytes, 0, length));
+            fail("parsed a transaction of " + length + " bytes");
+         } catch (TransactionParsingException e) {
+            // expected
+         }
+      }
+   }
+}
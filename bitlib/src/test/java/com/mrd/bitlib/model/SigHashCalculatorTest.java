@@ -0,0 +1,80 @@
+package com.mrd.bitlib.model;
+
+import com.mrd.bitlib.util.ByteWriter;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.HexUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SigHashCalculatorTest {
+
+   // The unsigned transaction of the native P2WPKH example in BIP143
+   private static final String UNSIGNED_TX = "0100000002fff7f7881a8099afa6940d42d1e7f6362bec38171ea3edf433541db4e4ad969f0000000000eeffffffef51e1b804cc89d182d279655c3aa89e815b1b309fe287d9b2b55d57b90ec68a0100000000ffffffff02202cb206000000001976a9148280b37df378db99f66f85c95a783a76ac7a6d5988ac9093510d000000001976a9143bde42dbee7e4dbe6a21b2d50ce2f0167faa815988ac11000000";
+   private static final byte[] SCRIPT_CODE = HexUtils.toBytes("76a9141d0f172a0ecb48aee1be1f2687d2963ae33f71a188ac");
+
+   @Test
+   public void legacySigHashMatchesReference() throws Exception {
+      // reference values calculated with bitcoinj
+      SigHashCalculator calculator = new SigHashCalculator(Transaction.fromBytes(HexUtils.toBytes(UNSIGNED_TX)));
+      assertEquals("47194bc3c303a30aa5f78e45c7c2980b3be1284a9d69b1ea9ec0d29aac5f6848", calculator.getLegacySigHash(0, SCRIPT_CODE).toHex());
+      assertEquals("c46030820cbc48402a47cc5b5d3d41648f4e3a711f56b804d601d09dc112a6a4", calculator.getLegacySigHash(1, SCRIPT_CODE).toHex());
+   }
+
+   @Test
+   public void legacySigHashMatchesFullSerialization() throws Exception {
+      Transaction tx = Transaction.fromBytes(HexUtils.toBytes(UNSIGNED_TX));
+      SigHashCalculator calculator = new SigHashCalculator(tx);
+      byte[] scriptCode = tx.outputs[0].script.getScriptBytes();
+      for (int i = 0; i < tx.inputs.length; i++) {
+         // The reference puts the script into the input and serializes everything
+         ScriptInput original = tx.inputs[i].script;
+         tx.inputs[i].script = ScriptInput.fromOutputScript(tx.outputs[0].script);
+         ByteWriter writer = new ByteWriter(1024);
+         tx.toByteWriter(writer, false);
+         writer.putIntLE(SigHashCalculator.SIGHASH_ALL);
+         tx.inputs[i].script = original;
+         assertEquals(HashUtils.doubleSha256(writer), calculator.getLegacySigHash(i, scriptCode));
+      }
+   }
+
+   @Test
+   public void legacySigHashWithLongScriptCode() throws Exception {
+      Transaction tx = Transaction.fromBytes(HexUtils.toBytes(UNSIGNED_TX));
+      SigHashCalculator calculator = new SigHashCalculator(tx);
+      // long enough for a three byte length
+      byte[] scriptCode = new byte[300];
+      for (int i = 0; i < scriptCode.length; i++) {
+         scriptCode[i] = (byte) i;
+      }
+      for (int i = 0; i < tx.inputs.length; i++) {
+         ByteWriter writer = new ByteWriter(1024);
+         writer.putIntLE(tx.version);
+         writer.putCompactInt(tx.inputs.length);
+         for (int j = 0; j < tx.inputs.length; j++) {
+            writer.putSha256Hash(tx.inputs[j].outPoint.txid, true);
+            writer.putIntLE(tx.inputs[j].outPoint.index);
+            writer.putCompactInt(i == j ? scriptCode.length : 0);
+            if (i == j) {
+               writer.putBytes(scriptCode);
+            }
+            writer.putIntLE(tx.inputs[j].sequence);
+         }
+         writer.putCompactInt(tx.outputs.length);
+         for (TransactionOutput output : tx.outputs) {
+            output.toByteWriter(writer);
+         }
+         writer.putIntLE(tx.lockTime);
+         writer.putIntLE(SigHashCalculator.SIGHASH_ALL);
+         assertEquals(HashUtils.doubleSha256(writer), calculator.getLegacySigHash(i, scriptCode));
+      }
+   }
+
+   @Test
+   public void segwitSigHashMatchesBip143() throws Exception {
+      Transaction tx = Transaction.fromBytes(HexUtils.toBytes(UNSIGNED_TX));
+      Sha256Hash sigHash = new SigHashCalculator(tx).getSegwitSigHash(1, SCRIPT_CODE, 600000000L);
+      assertEquals("c37af31116d1b27caf68aae9e3ac82f1477929014d5b917657d0eb49478cb670", sigHash.toHex());
+   }
+}
@@ -0,0 +1,71 @@
+package com.mrd.bitlib.util;
+
+import com.mrd.bitlib.util.ByteReader.InsufficientBytesException;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ByteReaderTest {
+   private static final byte[] DATA = HexUtils.toBytes("00010203040506070809");
+
+   @Test
+   public void rangeIsBounded() throws Exception {
+      ByteReader reader = new ByteReader(DATA, 2, 4);
+      assertEquals(4, reader.available());
+      assertEquals(0x05040302, reader.getIntLE());
+      assertEquals(0, reader.available());
+      reader.reset();
+      assertEquals(2, reader.getPosition());
+   }
+
+   @Test(expected = InsufficientBytesException.class)
+   public void readingBeyondRangeFails() throws Exception {
+      new ByteReader(DATA, 2, 4).getBytes(5);
+   }
+
+   @Test(expected = InsufficientBytesException.class)
+   public void negativeSizeFails() throws Exception {
+      new ByteReader(DATA).skip(-1);
+   }
+
+   @Test
+   public void slicesShareTheArray() throws Exception {
+      ByteReader reader = new ByteReader(DATA);
+      reader.skip(1);
+      ByteReader slice = reader.getSlice(3);
+      assertEquals(4, reader.getPosition());
+      assertArrayEquals(HexUtils.toBytes("010203"), slice.getBytes(3));
+
+      ByteBuffer buffer = reader.getByteBuffer(2);
+      assertEquals(2, buffer.remaining());
+      assertEquals(4, buffer.get());
+      assertEquals(6, reader.getPosition());
+
+      byte[] destination = new byte[4];
+      reader.getBytes(destination, 1, 2);
+      assertArrayEquals(HexUtils.toBytes("00060700"), destination);
+   }
+
+   @Test
+   public void readsByteBufferWithoutCopy() throws Exception {
+      ByteBuffer buffer = ByteBuffer.wrap(DATA);
+      buffer.position(8);
+      ByteReader reader = ByteReader.of(buffer);
+      assertEquals(2, reader.available());
+      assertEquals(8, reader.get());
+      assertEquals(8, buffer.position());
+   }
+
+   @Test
+   public void reversedHash() throws Exception {
+      Sha256Hash hash = HashUtils.sha256(DATA);
+      ByteWriter writer = new ByteWriter(32);
+      writer.putSha256Hash(hash, true);
+      assertEquals(hash, new ByteReader(writer.toBytes()).getSha256Hash(true));
+      assertEquals(hash, new ByteReader(writer.toBytes()).getSha256Hash().reverse());
+   }
+}
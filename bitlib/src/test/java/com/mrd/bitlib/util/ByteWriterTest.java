@@ -0,0 +1,49 @@
+package com.mrd.bitlib.util;
+
+import com.mrd.bitlib.model.CompactInt;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ByteWriterTest {
+
+   @Test
+   public void compactIntMatchesCompactInt() {
+      long[] values = {0, 1, 252, 253, 254, 255, 256, 65535, 65536, 0xFFFFFFFFL, 0x100000000L, -1};
+      for (long value : values) {
+         ByteWriter writer = new ByteWriter(1);
+         writer.putCompactInt(value);
+         assertArrayEquals(CompactInt.toBytes(value), writer.toBytes());
+      }
+   }
+
+   @Test
+   public void writesToByteBuffer() {
+      ByteWriter writer = new ByteWriter(1);
+      writer.putIntLE(0x04030201);
+      ByteBuffer target = ByteBuffer.allocate(6);
+      target.put((byte) 9);
+      writer.writeTo(target);
+      assertArrayEquals(HexUtils.toBytes("090102030400"), target.array());
+      assertEquals(4, writer.toByteBuffer().remaining());
+   }
+
+   @Test
+   public void recycledWritersAreReused() {
+      ByteWriter writer = ByteWriter.obtain();
+      writer.putIntLE(1);
+      writer.recycle();
+      ByteWriter reused = ByteWriter.obtain();
+      assertSame(writer, reused);
+      assertEquals(0, reused.length());
+      // while it is in use, others get a new writer
+      ByteWriter other = ByteWriter.obtain();
+      other.putIntLE(2);
+      assertEquals(0, reused.length());
+   }
+}
@@ -0,0 +1,63 @@
+package com.mrd.bitlib.util;
+
+import com.mrd.bitlib.crypto.digest.RIPEMD160Digest;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class HashUtilsTest {
+   private static final byte[] HELLO = "hello".getBytes();
+   private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+   private static final String HELLO_DOUBLE_SHA256 = "9595c9df90075148eb06860365df33584b75bff782a510c6cd4883a419833d50";
+
+   @Test
+   public void knownVectors() {
+      assertEquals(HELLO_SHA256, HashUtils.sha256(HELLO).toHex());
+      assertEquals(HELLO_DOUBLE_SHA256, HashUtils.doubleSha256(HELLO).toHex());
+      // the thread local digest must not carry state from one call to the next
+      assertEquals(HELLO_DOUBLE_SHA256, HashUtils.doubleSha256(HELLO).toHex());
+   }
+
+   @Test
+   public void variantsAgree() {
+      byte[] padded = new byte[HELLO.length + 6];
+      System.arraycopy(HELLO, 0, padded, 3, HELLO.length);
+      assertEquals(HELLO_DOUBLE_SHA256, HashUtils.doubleSha256(padded, 3, HELLO.length).toHex());
+      assertEquals(HELLO_DOUBLE_SHA256, HashUtils.doubleSha256(ByteBuffer.wrap(padded, 3, HELLO.length)).toHex());
+
+      ByteWriter writer = new ByteWriter(1);
+      writer.putBytes(HELLO);
+      assertEquals(HELLO_DOUBLE_SHA256, HashUtils.doubleSha256(writer).toHex());
+
+      byte[] out = new byte[40];
+      HashUtils.doubleSha256(HELLO, 0, HELLO.length, out, 4);
+      assertArrayEquals(HexUtils.toBytes(HELLO_DOUBLE_SHA256), BitUtils.copyOfRange(out, 4, 36));
+      HashUtils.sha256(HELLO, 0, HELLO.length, out, 8);
+      assertArrayEquals(HexUtils.toBytes(HELLO_SHA256), BitUtils.copyOfRange(out, 8, 40));
+   }
+
+   @Test
+   public void addressHash() {
+      // the compressed generator point
+      byte[] publicKey = HexUtils.toBytes("0279be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798");
+      assertEquals("751e76e8199196d454941c45d1b3a323f1433bd6", HexUtils.toHex(HashUtils.addressHash(publicKey)));
+
+      // the single block shortcut agrees with the generic RIPEMD-160 path
+      Random random = new Random(42);
+      for (int i = 0; i < 100; i++) {
+         byte[] data = new byte[random.nextInt(100)];
+         random.nextBytes(data);
+         byte[] sha256 = HashUtils.sha256(data).getBytes();
+         RIPEMD160Digest digest = new RIPEMD160Digest();
+         digest.update(sha256, 0, sha256.length);
+         byte[] expected = new byte[20];
+         digest.doFinal(expected, 0);
+         assertArrayEquals(expected, HashUtils.addressHash(data));
+      }
+   }
+}
@@ -77,6 +77,8 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
    private static final String LOG_TAG = "SqliteAccountBacking";
    private static final String TABLE_KV = "kv";
    private static final int DEFAULT_SUB_ID = 0;
+   // SQLite allows at most 999 parameters in a statement
+   private static final int MAX_QUERY_PARAMETERS = 999;
    private SQLiteDatabase _database;
    private Map<UUID, SqliteAccountBacking> _backings;
    private final SQLiteStatement _insertOrReplaceBip44Account;
@@ -242,7 +244,8 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
       updateBip44AccountContext(context);
    }
 
-   private void updateBip44AccountContext(Bip44AccountContext context) {
+   // Accounts that synchronize concurrently share the statement
+   private synchronized void updateBip44AccountContext(Bip44AccountContext context) {
       //UPDATE bip44 SET archived=?,blockheight=?,lastExternalIndexWithActivity=?,lastInternalIndexWithActivity=?,firstMonitoredInternalIndex=?,lastDiscovery=?,accountType=?,accountSubId=? WHERE id=?
 
       _updateBip44Account.bindLong(1, context.isArchived() ? 1 : 0);
@@ -308,7 +311,8 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
       }
    }
 
-   private void updateSingleAddressAccountContext(SingleAddressAccountContext context) {
+   // Accounts that synchronize concurrently share the statement
+   private synchronized void updateSingleAddressAccountContext(SingleAddressAccountContext context) {
       // "UPDATE single SET archived=?,blockheight=? WHERE id=?"
       _updateSingleAddressAccount.bindLong(1, context.isArchived() ? 1 : 0);
       _updateSingleAddressAccount.bindLong(2, context.getBlockHeight());
@@ -696,6 +700,35 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
          }
       }
 
+      @Override
+      public Map<OutPoint, TransactionOutputEx> getParentTransactionOutputs(Collection<OutPoint> outPoints) {
+         Map<OutPoint, TransactionOutputEx> found = new HashMap<>();
+         List<OutPoint> all = new ArrayList<>(outPoints);
+         for (int start = 0; start < all.size(); start += MAX_QUERY_PARAMETERS) {
+            List<OutPoint> chunk = all.subList(start, Math.min(all.size(), start + MAX_QUERY_PARAMETERS));
+            Cursor cursor = null;
+            try {
+               SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_db);
+               for (int i = 0; i < chunk.size(); i++) {
+                  blobQuery.bindBlob(i + 1, SQLiteQueryWithBlobs.outPointToBytes(chunk.get(i)));
+               }
+               cursor = blobQuery.query(false, ptxoTableName, new String[]{"outpoint", "height", "value", "isCoinbase",
+                     "script"}, "outpoint IN (" + TextUtils.join(",", Collections.nCopies(chunk.size(), "?")) + ")",
+                     null, null, null, null, null);
+               while (cursor.moveToNext()) {
+                  OutPoint outPoint = SQLiteQueryWithBlobs.outPointFromBytes(cursor.getBlob(0));
+                  found.put(outPoint, new TransactionOutputEx(outPoint, cursor.getInt(1), cursor.getLong(2),
+                        cursor.getBlob(4), cursor.getInt(3) != 0));
+               }
+            } finally {
+               if (cursor != null) {
+                  cursor.close();
+               }
+            }
+         }
+         return found;
+      }
+
       @Override
       public boolean hasParentTransactionOutput(OutPoint outPoint) {
          Cursor cursor = null;
@@ -791,6 +824,39 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
          }
       }
 
+      @Override
+      public Map<Sha256Hash, TransactionEx> getTransactions(Collection<Sha256Hash> txids) {
+         Map<Sha256Hash, TransactionEx> found = new HashMap<>();
+         List<Sha256Hash> all = new ArrayList<>(txids);
+         for (int start = 0; start < all.size(); start += MAX_QUERY_PARAMETERS) {
+            List<Sha256Hash> chunk = all.subList(start, Math.min(all.size(), start + MAX_QUERY_PARAMETERS));
+            Cursor cursor = null;
+            try {
+               SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_db);
+               for (int i = 0; i < chunk.size(); i++) {
+                  blobQuery.bindBlob(i + 1, chunk.get(i).getBytes());
+               }
+               cursor = blobQuery.query(false, txTableName, new String[]{"id", "hash", "height", "time", "binary"},
+                     "id IN (" + TextUtils.join(",", Collections.nCopies(chunk.size(), "?")) + ")", null, null, null,
+                     null, null);
+               while (cursor.moveToNext()) {
+                  Sha256Hash txid = new Sha256Hash(cursor.getBlob(0));
+                  int height = cursor.getInt(2);
+                  if (height == Integer.MAX_VALUE) {
+                     height = -1;
+                  }
+                  Sha256Hash hash = new Sha256Hash(cursor.getBlob(1));
+                  found.put(txid, new TransactionEx(txid, hash, height, cursor.getInt(3), cursor.getBlob(4)));
+               }
+            } finally {
+               if (cursor != null) {
+                  cursor.close();
+               }
+            }
+         }
+         return found;
+      }
+
       @Override
       public void deleteTransaction(Sha256Hash txid) {
          _deleteTx.bindBlob(1, txid.getBytes());
@@ -84,7 +84,7 @@ public class BackupPayload {
       writer.putIntLE(timestamp);
       writer.putBytes(iv);
       writer.putBytes(merkleTree.getRoot().getBytes());
-      return HashUtils.doubleSha256(writer.toBytes());
+      return HashUtils.doubleSha256(writer);
    }
 
    public boolean verifySignature(final byte[] apub) {
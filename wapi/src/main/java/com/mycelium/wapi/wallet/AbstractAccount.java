@@ -17,8 +17,10 @@
 package com.mycelium.wapi.wallet;
 
 import com.google.common.collect.Lists;
+import com.mrd.bitlib.CoinSelectors;
 import com.mrd.bitlib.PopBuilder;
 import com.mrd.bitlib.StandardTransactionBuilder;
+import com.mrd.bitlib.StandardTransactionBuilder.CoinSelector;
 import com.mrd.bitlib.StandardTransactionBuilder.InsufficientFundsException;
 import com.mrd.bitlib.StandardTransactionBuilder.OutputTooSmallException;
 import com.mrd.bitlib.StandardTransactionBuilder.UnsignedTransaction;
@@ -28,6 +30,7 @@ import com.mrd.bitlib.crypto.IPublicKeyRing;
 import com.mrd.bitlib.crypto.InMemoryPrivateKey;
 import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.LazyTransaction;
 import com.mrd.bitlib.model.NetworkParameters;
 import com.mrd.bitlib.model.OutPoint;
 import com.mrd.bitlib.model.OutputList;
@@ -41,7 +44,6 @@ import com.mrd.bitlib.model.TransactionOutput;
 import com.mrd.bitlib.model.UnspentTransactionOutput;
 import com.mrd.bitlib.util.BitUtils;
 import com.mrd.bitlib.util.ByteReader;
-import com.mrd.bitlib.util.HashUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 import com.mycelium.WapiLogger;
 import com.mycelium.wapi.ColuTransferInstructionsParser;
@@ -109,7 +111,9 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
    protected Balance _cachedBalance;
 
    private EventHandler _eventHandler;
+   private volatile TransactionCache _transactionCache;
    private final AccountBacking _backing;
+   private final BalanceTracker _balanceTracker;
    protected int syncTotalRetrievedTransactions = 0;
 
    protected AbstractAccount(AccountBacking backing, NetworkParameters network, Wapi wapi) {
@@ -118,6 +122,27 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       _wapi = wapi;
       _backing = backing;
       coluTransferInstructionsParser = new ColuTransferInstructionsParser(_logger);
+      _balanceTracker = new BalanceTracker(backing, _logger) {
+         @Override
+         boolean isMine(TransactionOutputEx output) {
+            return AbstractAccount.this.isMine(output);
+         }
+
+         @Override
+         boolean isMine(byte[] script) {
+            return AbstractAccount.this.isMine(script);
+         }
+
+         @Override
+         boolean isFromMe(Sha256Hash txid) {
+            return AbstractAccount.this.isFromMe(txid);
+         }
+
+         @Override
+         boolean isColuDustOutput(TransactionOutputEx output) {
+            return AbstractAccount.this.isColuDustOutput(output);
+         }
+      };
    }
 
    @Override
@@ -134,6 +159,16 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       _eventHandler = eventHandler;
    }
 
+   /**
+    * Set the cache to fetch transactions through, shared with the other
+    * accounts of the wallet manager
+    *
+    * @param transactionCache the cache, or null to fetch directly
+    */
+   void setTransactionCache(TransactionCache transactionCache) {
+      _transactionCache = transactionCache;
+   }
+
    protected void postEvent(Event event) {
       if (_eventHandler != null) {
          _eventHandler.onEvent(this.getId(), event);
@@ -151,8 +186,22 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
     * addresses
     */
    protected boolean isFromMe(Sha256Hash txid) {
-      Transaction t = TransactionEx.toTransaction(_backing.getTransaction(txid));
-      return t != null && isFromMe(t);
+      TransactionEx tex = _backing.getTransaction(txid);
+      if (tex == null) {
+         return false;
+      }
+      try {
+         // Only the out points are needed, so skip decoding the scripts
+         LazyTransaction t = LazyTransaction.fromBytes(tex.binary);
+         for (int i = 0; i < t.getInputCount(); i++) {
+            if (isFromMe(t.getOutPoint(i))) {
+               return true;
+            }
+         }
+         return false;
+      } catch (TransactionParsingException e) {
+         return false;
+      }
    }
 
    /**
@@ -167,19 +216,21 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
     */
    protected boolean isFromMe(Transaction t) {
       for (TransactionInput input : t.inputs) {
-         TransactionOutputEx funding = _backing.getParentTransactionOutput(input.outPoint);
-         if (funding == null || funding.isCoinBase) {
-            continue;
-         }
-         ScriptOutput fundingScript = ScriptOutput.fromScriptBytes(funding.script);
-         Address fundingAddress = fundingScript.getAddress(_network);
-         if (isMine(fundingAddress)) {
+         if (isFromMe(input.outPoint)) {
             return true;
          }
       }
       return false;
    }
 
+   private boolean isFromMe(OutPoint outPoint) {
+      TransactionOutputEx funding = _backing.getParentTransactionOutput(outPoint);
+      if (funding == null || funding.isCoinBase) {
+         return false;
+      }
+      return isMine(funding.script);
+   }
+
    /**
     * Determine whether a transaction output was sent from one of our own
     * addresses
@@ -188,8 +239,20 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
     * @return true iff the putput was sent from one of our own addresses
     */
    protected boolean isMine(TransactionOutputEx output) {
-      ScriptOutput script = ScriptOutput.fromScriptBytes(output.script);
-      return isMine(script);
+      return isMine(output.script);
+   }
+
+   /**
+    * Determine whether a serialized output script was created by one of our
+    * own addresses. Accounts that can tell without parsing the script
+    * override this.
+    *
+    * @param script the script bytes to investigate
+    * @return true iff the script was created by one of our own addresses
+    */
+   protected boolean isMine(byte[] script) {
+      Address address = ScriptOutput.fromScriptBytes(script).getAddress(_network);
+      return isMine(address);
    }
 
    /**
@@ -269,6 +332,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             if (removeLocally) {
                // delete the UTXO locally
                _backing.deleteUnspentOutput(l.outPoint);
+               _balanceTracker.onUnspentOutputDeleted(l.outPoint);
             }
          }
       }
@@ -305,7 +369,8 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       if (transactionsToAddOrUpdate.size() > 0) {
          GetTransactionsResponse response;
          try {
-            response = getTransactionsBatched(transactionsToAddOrUpdate).getResult();
+            // Heights of cached transactions may be just what changed
+            response = getTransactionsBatched(transactionsToAddOrUpdate, true).getResult();
          } catch (WapiException e) {
             _logger.logError("Server connection failed with error code: " + e.errorCode, e);
             postEvent(Event.SERVER_CONNECTION_ERROR);
@@ -325,6 +390,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             // prevent getting out local cache into a undefined state, if the server screws up
             if (isMine(output)) {
                _backing.putUnspentOutput(output);
+               _balanceTracker.onUnspentOutputPut(output);
             }else {
                _logger.logError("We got an UTXO that does not belong to us: " + output.toString());
             }
@@ -343,8 +409,19 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
    }
 
    protected WapiResponse<GetTransactionsResponse> getTransactionsBatched(Collection<Sha256Hash> txids)  {
+      return getTransactionsBatched(txids, false);
+   }
+
+   /**
+    * Get transactions, bypassing the transaction cache if refresh is set
+    */
+   protected WapiResponse<GetTransactionsResponse> getTransactionsBatched(Collection<Sha256Hash> txids, boolean refresh) {
+      TransactionCache transactionCache = _transactionCache;
+      if (transactionCache != null) {
+         return transactionCache.getTransactions(txids, refresh);
+      }
       final GetTransactionsRequest fullRequest = new GetTransactionsRequest(Wapi.VERSION, txids);
-      return _wapi.getTransactions(fullRequest);
+      return TransactionCache.verifyHashes(_wapi.getTransactions(fullRequest), _logger);
    }
 
    protected abstract boolean doDiscoveryForAddresses(List<Address> lookAhead) throws WapiException;
@@ -394,6 +471,9 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
 
       // Store transaction locally
       _backing.putTransactions(texArray);
+      for (TransactionEx tex : texArray) {
+         _balanceTracker.onTransactionChanged(tex.txid);
+      }
 
       for (int i = 0; i < txArray.size(); i++) {
          final TransactionEx transactionEx = texArray.get(i);
@@ -402,56 +482,41 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
    }
 
    private void fetchStoreAndValidateParentOutputs(List<Transaction> transactions) throws WapiException {
-      Map<Sha256Hash, TransactionEx> parentTransactions = new HashMap<>();
-      Map<OutPoint, TransactionOutputEx> parentOutputs = new HashMap<>();
-
-      // Find list of parent outputs to fetch
-      Collection<Sha256Hash> toFetch = new HashSet<>();
+      // Find list of parent outputs
+      Set<OutPoint> parentOutPoints = new HashSet<>();
       for (Transaction t : transactions) {
          for (TransactionInput in : t.inputs) {
             if (in.outPoint.txid.equals(OutPoint.COINBASE_OUTPOINT.txid)) {
                // Coinbase input, so no parent
                continue;
             }
-            TransactionOutputEx parentOutput = _backing.getParentTransactionOutput(in.outPoint);
-            if (parentOutput != null) {
-               // We already have the parent output, no need to fetch the entire
-               // parent transaction
-               parentOutputs.put(parentOutput.outPoint, parentOutput);
-               continue;
-            }
-            TransactionEx parentTransaction = _backing.getTransaction(in.outPoint.txid);
-            if (parentTransaction != null) {
-               // We had the parent transaction in our own transactions, no need to
-               // fetch it remotely
-               parentTransactions.put(parentTransaction.txid, parentTransaction);
-            } else {
-               // Need to fetch it
-               toFetch.add(in.outPoint.txid);
-            }
+            parentOutPoints.add(in.outPoint);
          }
       }
 
+      // Parent outputs we already have need no entire parent transaction,
+      // look them all up at once
+      Map<OutPoint, TransactionOutputEx> parentOutputs = _backing.getParentTransactionOutputs(parentOutPoints);
+      Set<Sha256Hash> missingParents = new HashSet<>();
+      for (OutPoint outPoint : parentOutPoints) {
+         if (!parentOutputs.containsKey(outPoint)) {
+            missingParents.add(outPoint.txid);
+         }
+      }
+
+      // Parent transactions that are in our own transactions need not be
+      // fetched remotely
+      Map<Sha256Hash, TransactionEx> parentTransactions = new HashMap<>(_backing.getTransactions(missingParents));
+      Collection<Sha256Hash> toFetch = new HashSet<>(missingParents);
+      toFetch.removeAll(parentTransactions.keySet());
+
       // Fetch missing parent transactions
       if (toFetch.size() > 0) {
-         GetTransactionsResponse result = getTransactionsBatched(toFetch).getResult(); // _wapi.getTransactions(new GetTransactionsRequest(Wapi.VERSION, toFetch)).getResult();
+         // Transaction hashes are verified when fetching, a rogue server
+         // that lies about the value of an output makes this throw
+         GetTransactionsResponse result = getTransactionsBatched(toFetch).getResult();
          for (TransactionExApi tx : result.transactions) {
-            // Verify transaction hash. This is important as we don't want to
-            // have a transaction output associated with an outpoint that
-            // doesn't match.
-            // This is the end users protection against a rogue server that lies
-            // about the value of an output and makes you pay a large fee.
-            Sha256Hash hash = HashUtils.doubleSha256(tx.binary).reverse();
-            if (hash.equals(tx.hash)) {
-               parentTransactions.put(tx.txid, tx);
-            } else {
-               _logger.logError("Failed to validate transaction hash from server. Expected: " + tx.txid
-                     + " Calculated: " + hash);
-               //TODO: Document what's happening here.
-               //Question: Crash and burn? Really? How about user feedback? Here, wapi returned a transaction that doesn't hash to the txid it is supposed to txhash to, right?
-               throw new RuntimeException("Failed to validate transaction hash from server. Expected: " + tx.txid
-                     + " Calculated: " + hash);
-            }
+            parentTransactions.put(tx.txid, tx);
          }
       }
 
@@ -461,6 +526,8 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
 
       // Now figure out which parent outputs we need to persist
       List<TransactionOutputEx> toPersist = new LinkedList<>();
+      // The transactions whose parent outputs are only now stored
+      Set<Sha256Hash> withNewParents = new HashSet<>();
       for (Transaction t : transactions) {
          for (TransactionInput in : t.inputs) {
             if (in.outPoint.txid.equals(OutPoint.COINBASE_OUTPOINT.txid)) {
@@ -477,6 +544,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
                // Parent output not found, maybe we already have it
                parentOutput = TransactionEx.getTransactionOutput(parentTex, in.outPoint.index);
                toPersist.add(parentOutput);
+               withNewParents.add(t.getId());
                continue;
             }
             _logger.logError("Parent transaction not found: " + in.outPoint.txid);
@@ -495,8 +563,18 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             _backing.putParentTransactionOuputs(sub);
          }
       }
+
+      // Whether a transaction is from us, and what it sends, depends on the
+      // parent outputs
+      for (Sha256Hash txid : withNewParents) {
+         _balanceTracker.onTransactionChanged(txid);
+      }
    }
 
+   /**
+    * Calculate the balance from all unspent outputs and unconfirmed
+    * transactions in local persistence
+    */
    protected Balance calculateLocalBalance() {
       Collection<TransactionOutputEx> unspentOutputs = new HashSet<>(_backing.getAllUnspentOutputs());
       long confirmed = 0;
@@ -528,46 +606,44 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       // Determine the value we are sending
       //
 
-      // Get the current set of unconfirmed transactions
-      List<Transaction> unconfirmed = new ArrayList<>();
+      // Get the current set of unconfirmed transactions. Only the out points
+      // and outputs are looked at, so they are indexed rather than parsed
+      List<LazyTransaction> unconfirmed = new ArrayList<>();
       for (TransactionEx tex : _backing.getUnconfirmedTransactions()) {
          try {
-            Transaction t = Transaction.fromByteReader(new ByteReader(tex.binary));
-            unconfirmed.add(t);
+            unconfirmed.add(LazyTransaction.fromBytes(tex.binary));
          } catch (TransactionParsingException e) {
             // never happens, we have parsed it before
          }
       }
 
-      for (Transaction t : unconfirmed) {
+      for (LazyTransaction t : unconfirmed) {
          // For each input figure out if WE are sending it by fetching the
          // parent transaction and looking at the address
          boolean weSend = false;
-         for (TransactionInput input : t.inputs) {
+         for (int i = 0; i < t.getInputCount(); i++) {
             // Find the parent transaction
-            if (input.outPoint.txid.equals(Sha256Hash.ZERO_HASH)) {
+            if (t.isCoinbaseInput(i)) {
                continue;
             }
-            TransactionOutputEx parent = _backing.getParentTransactionOutput(input.outPoint);
+            OutPoint outPoint = t.getOutPoint(i);
+            TransactionOutputEx parent = _backing.getParentTransactionOutput(outPoint);
             if (parent == null) {
-               _logger.logError("Unable to find parent transaction output: " + input.outPoint);
+               _logger.logError("Unable to find parent transaction output: " + outPoint);
                continue;
             }
-            TransactionOutput parentOutput = transform(parent);
-            Address fundingAddress = parentOutput.script.getAddress(_network);
-            if (isMine(fundingAddress)) {
+            if (isMine(parent)) {
                // One of our addresses are sending coins
-               pendingSending += parentOutput.value;
+               pendingSending += parent.value;
                weSend = true;
             }
          }
 
          // Now look at the outputs and if it contains change for us, then subtract that from the sending amount
          // if it is already spent in another transaction
-         for (int i = 0; i < t.outputs.length; i++) {
-            TransactionOutput output = t.outputs[i];
-            Address destination = output.script.getAddress(_network);
-            if (weSend && isMine(destination)) {
+         for (int i = 0; weSend && i < t.getOutputCount(); i++) {
+            TransactionOutput output = t.getOutput(i);
+            if (isMine(output.script.getScriptBytes())) {
                // The funds are sent from us to us
                OutPoint outPoint = new OutPoint(t.getId(), i);
                if (!unspentOutPoints.contains(outPoint)) {
@@ -584,11 +660,6 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             blockHeight, true, _allowZeroConfSpending);
    }
 
-   private TransactionOutput transform(TransactionOutputEx parent) {
-      ScriptOutput script = ScriptOutput.fromScriptBytes(parent.script);
-      return new TransactionOutput(parent.value, script);
-   }
-
    /**
     * Broadcast outgoing transactions.
     * <p>
@@ -770,10 +841,12 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             TransactionOutputEx utxo = _backing.getUnspentOutput(outPoint);
             if (utxo != null) {
                _backing.deleteUnspentOutput(outPoint);
+               _balanceTracker.onUnspentOutputDeleted(outPoint);
             }
          }
          // remove it from the backing
          _backing.deleteTransaction(transactionId);
+         _balanceTracker.onTransactionChanged(transactionId);
          _backing.setTransactionSuccessful();
       } finally {
          _backing.endTransaction();
@@ -806,6 +879,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             TransactionOutputEx utxo = _backing.getUnspentOutput(outPoint);
             if (utxo != null) {
                _backing.deleteUnspentOutput(outPoint);
+               _balanceTracker.onUnspentOutputDeleted(outPoint);
             }
          }
 
@@ -814,6 +888,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
 
          // remove it from the backing
          _backing.deleteTransaction(transaction);
+         _balanceTracker.onTransactionChanged(transaction);
          _backing.setTransactionSuccessful();
       } finally {
          _backing.endTransaction();
@@ -843,6 +918,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             TransactionOutputEx parentOutput = _backing.getUnspentOutput(input.outPoint);
             if (parentOutput != null) {
                _backing.deleteUnspentOutput(input.outPoint);
+               _balanceTracker.onUnspentOutputDeleted(input.outPoint);
                _backing.putParentTransactionOutput(parentOutput);
             }
          }
@@ -852,14 +928,17 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
          for (int i = 0; i < parsedTransaction.outputs.length; i++) {
             TransactionOutput output = parsedTransaction.outputs[i];
             if (isMine(output.script)) {
-               _backing.putUnspentOutput(new TransactionOutputEx(new OutPoint(parsedTransaction.getId(), i), -1,
-                     output.value, output.script.getScriptBytes(), false));
+               TransactionOutputEx unspent = new TransactionOutputEx(new OutPoint(parsedTransaction.getId(), i), -1,
+                     output.value, output.script.getScriptBytes(), false);
+               _backing.putUnspentOutput(unspent);
+               _balanceTracker.onUnspentOutputPut(unspent);
             }
          }
 
          // Store transaction locally, so we have it in our history and don't
          // need to fetch it in a minute
          _backing.putTransaction(transaction);
+         _balanceTracker.onTransactionChanged(transaction.txid);
          _backing.setTransactionSuccessful();
       } finally {
          _backing.endTransaction();
@@ -1040,7 +1119,19 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
    protected abstract PublicKey getPublicKeyForAddress(Address address);
 
    @Override
-   public synchronized UnsignedTransaction createUnsignedTransaction(List<Receiver> receivers, long minerFeeToUse)
+   public UnsignedTransaction createUnsignedTransaction(List<Receiver> receivers, long minerFeeToUse)
+         throws OutputTooSmallException, InsufficientFundsException, StandardTransactionBuilder.UnableToBuildTransactionException {
+      return createUnsignedTransaction(receivers, minerFeeToUse, CoinSelectors.DEFAULT);
+   }
+
+   /**
+    * Create a new, unsigned transaction, selecting the outputs to spend with the given strategy.
+    * @see WalletAccount#createUnsignedTransaction(List, long)
+    *
+    * @param coinSelector the coin selection strategy, see {@link CoinSelectors}
+    */
+   public synchronized UnsignedTransaction createUnsignedTransaction(List<Receiver> receivers, long minerFeeToUse,
+                                                                     CoinSelector coinSelector)
          throws OutputTooSmallException, InsufficientFundsException, StandardTransactionBuilder.UnableToBuildTransactionException {
       checkNotArchived();
 
@@ -1054,7 +1145,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       }
       Address changeAddress = getChangeAddress();
       return stb.createUnsignedTransaction(spendable, changeAddress, new PublicKeyRing(),
-            _network, minerFeeToUse);
+            _network, minerFeeToUse, coinSelector);
    }
 
    @Override
@@ -1166,12 +1257,16 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
    }
 
    /**
-    * Update the balance by summing up the unspent outputs in local persistence.
+    * Update the balance with the unspent outputs and transactions that have
+    * been stored or deleted since the last update.
     *
     * @return true if the balance changed, false otherwise
     */
    protected boolean updateLocalBalance() {
-      Balance balance = calculateLocalBalance();
+      _balanceTracker.update();
+      Balance balance = new Balance(_balanceTracker.getConfirmed(), _balanceTracker.getPendingReceiving(),
+            _balanceTracker.getPendingSending(), _balanceTracker.getPendingChange(), System.currentTimeMillis(),
+            getBlockChainHeight(), true, _allowZeroConfSpending);
       if (!balance.equals(_cachedBalance)) {
          _cachedBalance = balance;
          postEvent(Event.BALANCE_CHANGED);
@@ -1180,6 +1275,34 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       return false;
    }
 
+   /**
+    * Check the balance kept by {@link #updateLocalBalance()} against a full
+    * recalculation from local persistence, and start over from local
+    * persistence if they differ.
+    *
+    * @return true if the balance was correct
+    */
+   protected boolean verifyLocalBalance() {
+      _balanceTracker.update();
+      Balance balance = calculateLocalBalance();
+      if (balance.confirmed == _balanceTracker.getConfirmed()
+            && balance.pendingReceiving == _balanceTracker.getPendingReceiving()
+            && balance.pendingSending == _balanceTracker.getPendingSending()
+            && balance.pendingChange == _balanceTracker.getPendingChange()) {
+         return true;
+      }
+      _logger.logError("Tracked balance of account " + getId() + " differs from calculated balance " + balance);
+      _balanceTracker.reset();
+      return false;
+   }
+
+   /**
+    * Forget the tracked balance after local persistence has been cleared
+    */
+   protected void resetLocalBalance() {
+      _balanceTracker.reset();
+   }
+
    private TransactionSummary transform(TransactionEx tex, int blockChainHeight) {
       Transaction tx;
       try {
@@ -1358,6 +1481,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             } else {
                // we haven't found it locally (shouldn't happen here) - so delete it to be sure
                _backing.deleteTransaction(t.txid);
+               _balanceTracker.onTransactionChanged(t.txid);
             }
             continue;
          } else {
@@ -1374,6 +1498,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             TransactionEx newTex = new TransactionEx(localTransactionEx.txid, localTransactionEx.hash, t.height, localTransactionEx.time, localTransactionEx.binary);
             _logger.logInfo(String.format("Replacing: %s With: %s", localTransactionEx.toString(), newTex.toString()));
             _backing.putTransaction(newTex);
+            _balanceTracker.onTransactionChanged(newTex.txid);
             postEvent(Event.TRANSACTION_HISTORY_CHANGED);
          }
       }
@@ -50,6 +50,13 @@ public interface AccountBacking {
 
    TransactionOutputEx getParentTransactionOutput(OutPoint outPoint);
 
+   /**
+    * Get the parent transaction outputs of many out points at once
+    *
+    * @return the outputs that were found, by out point
+    */
+   Map<OutPoint, TransactionOutputEx> getParentTransactionOutputs(Collection<OutPoint> outPoints);
+
    boolean hasParentTransactionOutput(OutPoint outPoint);
 
    void putTransaction(TransactionEx transaction);
@@ -58,6 +65,13 @@ public interface AccountBacking {
 
    TransactionEx getTransaction(Sha256Hash hash);
 
+   /**
+    * Get many transactions at once
+    *
+    * @return the transactions that were found, by id
+    */
+   Map<Sha256Hash, TransactionEx> getTransactions(Collection<Sha256Hash> txids);
+
    void deleteTransaction(Sha256Hash hash);
 
    List<TransactionEx> getTransactionHistory(int offset, int limit);
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.wallet;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import com.mrd.bitlib.model.LazyTransaction;
+import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.model.Transaction.TransactionParsingException;
+import com.mrd.bitlib.model.TransactionOutput;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.WapiLogger;
+import com.mycelium.wapi.model.TransactionEx;
+import com.mycelium.wapi.model.TransactionOutputEx;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the totals of the balance of an account up to date as unspent outputs
+ * and unconfirmed transactions are stored and deleted, so that the balance
+ * does not have to be summed up from all of them on every update.
+ * <p>
+ * The account reports every change of its backing. Changes are only looked at
+ * when the totals are next requested, because an unspent output may be stored
+ * before the transaction it belongs to, and only what has changed since the
+ * last request is looked at again. The totals are the same as calculated by
+ * {@link AbstractAccount#calculateLocalBalance()}, which is used to verify
+ * them. The backing is read for the first time on the first request, and
+ * again after {@link #reset()}.
+ * <p>
+ * Instances are not thread safe.
+ */
+abstract class BalanceTracker {
+   private enum Category {
+      CONFIRMED, PENDING_RECEIVING, PENDING_CHANGE, IGNORED
+   }
+
+   private static class Unspent {
+      final TransactionOutputEx output;
+      // null until the output has been looked at
+      Category category;
+
+      Unspent(TransactionOutputEx output) {
+         this.output = output;
+      }
+
+      boolean isCounted() {
+         return category != null && category != Category.IGNORED;
+      }
+   }
+
+   private static class Sending {
+      // The value of our outputs that the transaction spends
+      final long sent;
+      // Our outputs of the transaction and their values
+      final Map<OutPoint, Long> ownOutputs;
+
+      Sending(long sent, Map<OutPoint, Long> ownOutputs) {
+         this.sent = sent;
+         this.ownOutputs = ownOutputs;
+      }
+   }
+
+   private final AccountBacking _backing;
+   private final WapiLogger _logger;
+   private final Map<OutPoint, Unspent> _unspent = new HashMap<>();
+   private final SetMultimap<Sha256Hash, OutPoint> _unspentByTransaction = HashMultimap.create();
+   // The unconfirmed transactions that spend from us
+   private final Map<Sha256Hash, Sending> _sending = new HashMap<>();
+   // The values of our outputs of the transactions in _sending
+   private final Map<OutPoint, Long> _sendingOwnOutputs = new HashMap<>();
+   private final Set<OutPoint> _changedOutputs = new HashSet<>();
+   private final Set<Sha256Hash> _changedTransactions = new HashSet<>();
+   private boolean _isLoaded;
+
+   private long _confirmed;
+   private long _pendingReceiving;
+   private long _pendingSending;
+   private long _pendingChange;
+
+   BalanceTracker(AccountBacking backing, WapiLogger logger) {
+      _backing = backing;
+      _logger = logger;
+   }
+
+   abstract boolean isMine(TransactionOutputEx output);
+
+   abstract boolean isMine(byte[] script);
+
+   abstract boolean isFromMe(Sha256Hash txid);
+
+   abstract boolean isColuDustOutput(TransactionOutputEx output);
+
+   /**
+    * Record that an unspent output was stored, or stored again with a new
+    * height
+    */
+   void onUnspentOutputPut(TransactionOutputEx output) {
+      if (!_isLoaded) {
+         return;
+      }
+      remove(output.outPoint);
+      _unspent.put(output.outPoint, new Unspent(output));
+      _unspentByTransaction.put(output.outPoint.txid, output.outPoint);
+      _changedOutputs.add(output.outPoint);
+   }
+
+   void onUnspentOutputDeleted(OutPoint outPoint) {
+      if (!_isLoaded) {
+         return;
+      }
+      remove(outPoint);
+      _changedOutputs.remove(outPoint);
+   }
+
+   /**
+    * Record that a transaction was stored, deleted, or stored again with a
+    * new height
+    */
+   void onTransactionChanged(Sha256Hash txid) {
+      if (_isLoaded) {
+         _changedTransactions.add(txid);
+      }
+   }
+
+   /**
+    * Forget everything and read the backing again on the next request
+    */
+   void reset() {
+      _unspent.clear();
+      _unspentByTransaction.clear();
+      _sending.clear();
+      _sendingOwnOutputs.clear();
+      _changedOutputs.clear();
+      _changedTransactions.clear();
+      _confirmed = 0;
+      _pendingReceiving = 0;
+      _pendingSending = 0;
+      _pendingChange = 0;
+      _isLoaded = false;
+   }
+
+   /**
+    * Bring the totals up to date with the changes recorded since the last call
+    */
+   void update() {
+      if (!_isLoaded) {
+         _isLoaded = true;
+         for (TransactionOutputEx output : _backing.getAllUnspentOutputs()) {
+            onUnspentOutputPut(output);
+         }
+         for (TransactionEx tex : _backing.getUnconfirmedTransactions()) {
+            onTransactionChanged(tex.txid);
+         }
+      }
+
+      // The category of an unconfirmed output depends on its transaction
+      for (Sha256Hash txid : _changedTransactions) {
+         _changedOutputs.addAll(_unspentByTransaction.get(txid));
+      }
+      for (OutPoint outPoint : _changedOutputs) {
+         Unspent unspent = _unspent.get(outPoint);
+         setCounted(unspent, false);
+         unspent.category = categorize(unspent.output);
+         setCounted(unspent, true);
+      }
+      _changedOutputs.clear();
+
+      for (Sha256Hash txid : _changedTransactions) {
+         Sending sending = _sending.remove(txid);
+         if (sending != null) {
+            addSending(sending, -1);
+         }
+         sending = getSending(txid);
+         if (sending != null) {
+            _sending.put(txid, sending);
+            addSending(sending, 1);
+         }
+      }
+      _changedTransactions.clear();
+   }
+
+   long getConfirmed() {
+      return _confirmed;
+   }
+
+   long getPendingReceiving() {
+      return _pendingReceiving;
+   }
+
+   long getPendingSending() {
+      return _pendingSending;
+   }
+
+   long getPendingChange() {
+      return _pendingChange;
+   }
+
+   private void remove(OutPoint outPoint) {
+      Unspent unspent = _unspent.remove(outPoint);
+      if (unspent != null) {
+         setCounted(unspent, false);
+         _unspentByTransaction.remove(outPoint.txid, outPoint);
+      }
+   }
+
+   /**
+    * Add an output to the totals, or take it out again
+    */
+   private void setCounted(Unspent unspent, boolean isCounted) {
+      if (!unspent.isCounted()) {
+         return;
+      }
+      long value = isCounted ? unspent.output.value : -unspent.output.value;
+      switch (unspent.category) {
+         case CONFIRMED:
+            _confirmed += value;
+            break;
+         case PENDING_RECEIVING:
+            _pendingReceiving += value;
+            break;
+         case PENDING_CHANGE:
+            _pendingChange += value;
+            break;
+      }
+      // Our outputs of a transaction we send count as sent only while they
+      // are unspent
+      Long ownOutputValue = _sendingOwnOutputs.get(unspent.output.outPoint);
+      if (ownOutputValue != null) {
+         _pendingSending += isCounted ? ownOutputValue : -ownOutputValue;
+      }
+   }
+
+   private void addSending(Sending sending, int sign) {
+      long value = sending.sent;
+      for (Map.Entry<OutPoint, Long> ownOutput : sending.ownOutputs.entrySet()) {
+         Unspent unspent = _unspent.get(ownOutput.getKey());
+         if (unspent == null || !unspent.isCounted()) {
+            value -= ownOutput.getValue();
+         }
+         if (sign > 0) {
+            _sendingOwnOutputs.put(ownOutput.getKey(), ownOutput.getValue());
+         } else {
+            _sendingOwnOutputs.remove(ownOutput.getKey());
+         }
+      }
+      _pendingSending += sign * value;
+   }
+
+   private Category categorize(TransactionOutputEx output) {
+      if (isColuDustOutput(output)) {
+         return Category.IGNORED;
+      }
+      if (output.height != -1) {
+         return Category.CONFIRMED;
+      }
+      return isFromMe(output.outPoint.txid) ? Category.PENDING_CHANGE : Category.PENDING_RECEIVING;
+   }
+
+   /**
+    * Find out what an unconfirmed transaction sends from us
+    *
+    * @return null if the transaction is not stored, confirmed, or does not
+    * spend any of our outputs
+    */
+   private Sending getSending(Sha256Hash txid) {
+      TransactionEx tex = _backing.getTransaction(txid);
+      if (tex == null || tex.height != -1) {
+         return null;
+      }
+      LazyTransaction t;
+      try {
+         t = LazyTransaction.fromBytes(tex.binary);
+      } catch (TransactionParsingException e) {
+         // never happens, we have parsed it before
+         return null;
+      }
+      long sent = 0;
+      boolean weSend = false;
+      for (int i = 0; i < t.getInputCount(); i++) {
+         if (t.isCoinbaseInput(i)) {
+            continue;
+         }
+         OutPoint outPoint = t.getOutPoint(i);
+         TransactionOutputEx parent = _backing.getParentTransactionOutput(outPoint);
+         if (parent == null) {
+            _logger.logError("Unable to find parent transaction output: " + outPoint);
+            continue;
+         }
+         if (isMine(parent)) {
+            sent += parent.value;
+            weSend = true;
+         }
+      }
+      if (!weSend) {
+         return null;
+      }
+      Map<OutPoint, Long> ownOutputs = new HashMap<>();
+      for (int i = 0; i < t.getOutputCount(); i++) {
+         TransactionOutput output = t.getOutput(i);
+         if (isMine(output.script.getScriptBytes())) {
+            ownOutputs.put(new OutPoint(txid, i), output.value);
+         }
+      }
+      return new Sending(sent, ownOutputs);
+   }
+}
@@ -28,15 +28,17 @@ import com.mycelium.wapi.wallet.bip44.Bip44AccountContext;
 import com.mycelium.wapi.wallet.single.SingleAddressAccountContext;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Backing for a wallet manager which is only kept temporarily in memory
  */
 public class InMemoryWalletManagerBacking implements WalletManagerBacking {
    private final Map<String, byte[]> _values = new HashMap<>();
-   private final Map<UUID, InMemoryAccountBacking> _backings = new HashMap<>();
-   private final Map<UUID, Bip44AccountContext> _bip44Contexts = new HashMap<>();
-   private final Map<UUID, SingleAddressAccountContext> _singleAddressAccountContexts = new HashMap<>();
+   // Accounts update their contexts while synchronizing concurrently
+   private final Map<UUID, InMemoryAccountBacking> _backings = new ConcurrentHashMap<>();
+   private final Map<UUID, Bip44AccountContext> _bip44Contexts = new ConcurrentHashMap<>();
+   private final Map<UUID, SingleAddressAccountContext> _singleAddressAccountContexts = new ConcurrentHashMap<>();
    private int maxSubId = 0;
 
    @Override
@@ -245,6 +247,18 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
          return _parentOutputs.get(outPoint);
       }
 
+      @Override
+      public Map<OutPoint, TransactionOutputEx> getParentTransactionOutputs(Collection<OutPoint> outPoints) {
+         Map<OutPoint, TransactionOutputEx> found = new HashMap<>();
+         for (OutPoint outPoint : outPoints) {
+            TransactionOutputEx output = _parentOutputs.get(outPoint);
+            if (output != null) {
+               found.put(outPoint, output);
+            }
+         }
+         return found;
+      }
+
       @Override
       public boolean hasParentTransactionOutput(OutPoint outPoint) {
          return _parentOutputs.containsKey(outPoint);
@@ -267,6 +281,18 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
          return _transactions.get(hash);
       }
 
+      @Override
+      public Map<Sha256Hash, TransactionEx> getTransactions(Collection<Sha256Hash> txids) {
+         Map<Sha256Hash, TransactionEx> found = new HashMap<>();
+         for (Sha256Hash txid : txids) {
+            TransactionEx transaction = _transactions.get(txid);
+            if (transaction != null) {
+               found.put(txid, transaction);
+            }
+         }
+         return found;
+      }
+
       @Override
       public void deleteTransaction(Sha256Hash hash) {
          _transactions.remove(hash);
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.wallet;
+
+import com.google.common.collect.Sets;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.WapiLogger;
+import com.mycelium.wapi.api.Wapi;
+import com.mycelium.wapi.api.WapiException;
+import com.mycelium.wapi.api.WapiResponse;
+import com.mycelium.wapi.api.lib.TransactionExApi;
+import com.mycelium.wapi.api.request.GetTransactionsRequest;
+import com.mycelium.wapi.api.response.GetTransactionsResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Fetches transactions from the server for all accounts of a wallet manager.
+ * <p>
+ * Accounts that synchronize at the same time often need the same
+ * transactions, for instance the parents of a transaction between two of
+ * them. Transactions that are already being fetched for one account are not
+ * requested again for another, which waits for the running request instead.
+ * Confirmed transactions are kept in a cache of limited size, from which the
+ * least recently used are dropped first. Unconfirmed transactions are not
+ * kept, as their height changes. A confirmed transaction may still change its
+ * height in a reorg, callers that learn about this refresh it from the server.
+ * <p>
+ * The hash of every transaction is verified when it is fetched. If any does
+ * not hash to what the server claims, the whole request fails with
+ * {@link Wapi#ERROR_CODE_INTERNAL_SERVER_ERROR}, and nothing of it is cached.
+ * Dropping the transaction instead would go unnoticed by callers, which must
+ * not trust a server that lies about transactions.
+ * <p>
+ * Instances are thread safe.
+ */
+public class TransactionCache {
+   private static final int DEFAULT_MAX_SIZE_BYTES = 2 * 1024 * 1024;
+
+   /**
+    * A request to the server that other requests may wait for
+    */
+   private static class Fetch {
+      final CountDownLatch done = new CountDownLatch(1);
+      // Written before done is counted down
+      final Map<Sha256Hash, TransactionExApi> transactions = new HashMap<>();
+      int errorCode = Wapi.ERROR_CODE_INTERNAL_CLIENT_ERROR;
+   }
+
+   private final Wapi _wapi;
+   private final WapiLogger _logger;
+   private final int _maxSizeBytes;
+   private final Object _lock = new Object();
+   // In order of last access, guarded by _lock
+   private final LinkedHashMap<Sha256Hash, TransactionExApi> _cached = new LinkedHashMap<>(16, 0.75f, true);
+   private final Map<Sha256Hash, Fetch> _inFlight = new HashMap<>();
+   private int _sizeBytes;
+
+   public TransactionCache(Wapi wapi) {
+      this(wapi, DEFAULT_MAX_SIZE_BYTES);
+   }
+
+   public TransactionCache(Wapi wapi, int maxSizeBytes) {
+      _wapi = wapi;
+      _logger = wapi.getLogger();
+      _maxSizeBytes = maxSizeBytes;
+   }
+
+   /**
+    * Get transactions from the cache, or from the server if they are not
+    * cached. Behaves like {@link Wapi#getTransactions(GetTransactionsRequest)}.
+    */
+   public WapiResponse<GetTransactionsResponse> getTransactions(Iterable<Sha256Hash> txids) {
+      return getTransactions(txids, false);
+   }
+
+   /**
+    * Get transactions like {@link #getTransactions(Iterable)}, but if refresh
+    * is set ignore what is cached and fetch them from the server again. The
+    * cache is updated with what the server returns.
+    */
+   public WapiResponse<GetTransactionsResponse> getTransactions(Iterable<Sha256Hash> txids, boolean refresh) {
+      List<TransactionExApi> found = new ArrayList<>();
+      Map<Sha256Hash, Fetch> waitFor = new HashMap<>();
+      List<Sha256Hash> toFetch = new ArrayList<>();
+      Fetch fetch = new Fetch();
+      synchronized (_lock) {
+         // Ids requested twice would otherwise wait for their own fetch and be
+         // returned twice
+         for (Sha256Hash txid : Sets.newLinkedHashSet(txids)) {
+            TransactionExApi tx = refresh ? null : _cached.get(txid);
+            Fetch running = _inFlight.get(txid);
+            if (tx != null) {
+               found.add(tx);
+            } else if (running != null) {
+               waitFor.put(txid, running);
+            } else {
+               toFetch.add(txid);
+               _inFlight.put(txid, fetch);
+            }
+         }
+      }
+
+      if (!toFetch.isEmpty()) {
+         fetch(fetch, toFetch);
+         if (fetch.errorCode != Wapi.ERROR_CODE_SUCCESS) {
+            return new WapiResponse<>(fetch.errorCode, null);
+         }
+         found.addAll(fetch.transactions.values());
+      }
+
+      for (Map.Entry<Sha256Hash, Fetch> entry : waitFor.entrySet()) {
+         Fetch running = entry.getValue();
+         try {
+            running.done.await();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new WapiResponse<>(Wapi.ERROR_CODE_INTERNAL_CLIENT_ERROR, null);
+         }
+         if (running.errorCode != Wapi.ERROR_CODE_SUCCESS) {
+            return new WapiResponse<>(running.errorCode, null);
+         }
+         TransactionExApi tx = running.transactions.get(entry.getKey());
+         if (tx != null) {
+            found.add(tx);
+         }
+      }
+      return new WapiResponse<>(new GetTransactionsResponse(found));
+   }
+
+   private void fetch(Fetch fetch, List<Sha256Hash> txids) {
+      try {
+         WapiResponse<GetTransactionsResponse> response = verifyHashes(_wapi.getTransactions(
+               new GetTransactionsRequest(Wapi.VERSION, txids)), _logger);
+         if (response.getErrorCode() == Wapi.ERROR_CODE_SUCCESS) {
+            for (TransactionExApi tx : response.getResult().transactions) {
+               fetch.transactions.put(tx.txid, tx);
+            }
+         }
+         fetch.errorCode = response.getErrorCode();
+      } catch (WapiException e) {
+         // never happens, we checked the error code
+         fetch.errorCode = e.errorCode;
+      } finally {
+         synchronized (_lock) {
+            for (Sha256Hash txid : txids) {
+               _inFlight.remove(txid);
+            }
+            for (TransactionExApi tx : fetch.transactions.values()) {
+               if (tx.height != -1) {
+                  put(tx);
+               } else {
+                  // It was confirmed before a reorg
+                  remove(tx.txid);
+               }
+            }
+         }
+         fetch.done.countDown();
+      }
+   }
+
+   /**
+    * Verify the hash of every transaction of a response from the server. This
+    * is important as we don't want to have a transaction output associated
+    * with an outpoint that doesn't match. It protects the end user against a
+    * rogue server that lies about the value of an output and makes you pay a
+    * large fee.
+    *
+    * @return the response, or an error response if any transaction does not
+    * hash to what the server claims
+    */
+   static WapiResponse<GetTransactionsResponse> verifyHashes(WapiResponse<GetTransactionsResponse> response,
+                                                            WapiLogger logger) {
+      if (response.getErrorCode() != Wapi.ERROR_CODE_SUCCESS) {
+         return response;
+      }
+      try {
+         for (TransactionExApi tx : response.getResult().transactions) {
+            Sha256Hash hash = HashUtils.doubleSha256(tx.binary).reverse();
+            if (!hash.equals(tx.hash)) {
+               logger.logError("Failed to validate transaction hash from server. Expected: " + tx.txid
+                     + " Calculated: " + hash);
+               return new WapiResponse<>(Wapi.ERROR_CODE_INTERNAL_SERVER_ERROR, null);
+            }
+         }
+      } catch (WapiException e) {
+         // never happens, we checked the error code
+         return new WapiResponse<>(e.errorCode, null);
+      }
+      return response;
+   }
+
+   private void put(TransactionExApi tx) {
+      remove(tx.txid);
+      _cached.put(tx.txid, tx);
+      _sizeBytes += tx.binary.length;
+      Iterator<TransactionExApi> eldest = _cached.values().iterator();
+      while (_sizeBytes > _maxSizeBytes && eldest.hasNext()) {
+         _sizeBytes -= eldest.next().binary.length;
+         eldest.remove();
+      }
+   }
+
+   private void remove(Sha256Hash txid) {
+      TransactionExApi previous = _cached.remove(txid);
+      if (previous != null) {
+         _sizeBytes -= previous.binary.length;
+      }
+   }
+}
@@ -29,6 +29,7 @@ import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.crypto.RandomSource;
 import com.mrd.bitlib.model.Address;
 import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.util.DaemonExecutors;
 import com.mrd.bitlib.util.HexUtils;
 import com.mycelium.WapiLogger;
 import com.mycelium.wapi.api.Wapi;
@@ -64,6 +65,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nonnull;
 
@@ -88,6 +95,7 @@ public class WalletManager {
     // maximum age where we say a fetched fee estimation is valid
     private static final long MAX_AGE_FEE_ESTIMATION = 2 * 60 * 60 * 1000; // 2 hours
     private static final long MIN_AGE_FEE_ESTIMATION = 20 * 60 * 1000; // 20 minutes
+    private static final int SYNC_THREADS = 4;
 
     public AccountScanManager accountScanManager;
     private final Set<AccountProvider> _extraAccountProviders = new HashSet<>();
@@ -111,6 +119,15 @@ public class WalletManager {
     private FeeEstimation _lastFeeEstimations = FeeEstimation.DEFAULT;
     private SpvBalanceFetcher _spvBalanceFetcher;
     private volatile boolean isNetworkConnected;
+    private final ConcurrentMap<UUID, Object> _syncLocks = new ConcurrentHashMap<>();
+    private final TransactionCache _transactionCache;
+
+    private static class SyncExecutorHolder {
+        // Synchronizing mostly waits for the server, the limit is there to not
+        // flood it with the requests of all accounts at once
+        private static final ExecutorService EXECUTOR = DaemonExecutors.newFixedThreadPool(SYNC_THREADS);
+    }
+
     /**
      * Create a new wallet manager instance
      *
@@ -125,6 +142,7 @@ public class WalletManager {
         _backing = backing;
         _network = network;
         _wapi = wapi;
+        _transactionCache = new TransactionCache(wapi);
         _signatureProviders = signatureProviders;
         _logger = _wapi.getLogger();
         _walletAccounts = Maps.newHashMap();
@@ -254,67 +272,70 @@ public class WalletManager {
 
         final UUID id = keyManager.getAccountId();
 
-        synchronized (_walletAccounts) {
-            // check if it already exists
-            boolean isUpgrade = false;
-            if (_walletAccounts.containsKey(id)) {
-                isUpgrade = !_walletAccounts.get(id).canSpend() && hdKeyNode.isPrivateHdKeyNode();
-                if (!isUpgrade) {
-                    return id;
-                }
-            }
-            _backing.beginTransaction();
-            try {
-
-                // Generate the context for the account
-                Bip44AccountContext context;
-                if (hdKeyNode.isPrivateHdKeyNode()) {
-                    context = new Bip44AccountContext(keyManager.getAccountId(), accountIndex, false,
-                                                      ACCOUNT_TYPE_UNRELATED_X_PRIV, secureStorage.getSubId());
-                } else {
-                    context = new Bip44AccountContext(keyManager.getAccountId(), accountIndex, false,
-                                                      ACCOUNT_TYPE_UNRELATED_X_PUB, secureStorage.getSubId());
-                }
-                if (isUpgrade) {
-                    _backing.upgradeBip44AccountContext(context);
-                } else {
-                    _backing.createBip44AccountContext(context);
+        // Wait for a running synchronization of an account that gets upgraded
+        synchronized (getSyncLock(id)) {
+            synchronized (_walletAccounts) {
+                // check if it already exists
+                boolean isUpgrade = false;
+                if (_walletAccounts.containsKey(id)) {
+                    isUpgrade = !_walletAccounts.get(id).canSpend() && hdKeyNode.isPrivateHdKeyNode();
+                    if (!isUpgrade) {
+                        return id;
+                    }
                 }
-                // Get the backing for the new account
-                Bip44AccountBacking accountBacking = getBip44AccountBacking(context.getId());
+                _backing.beginTransaction();
+                try {
 
-                // Create actual account
-                Bip44Account account;
-                if (hdKeyNode.isPrivateHdKeyNode()) {
-                    account = new Bip44Account(context, keyManager, _network, accountBacking, _wapi);
-                } else {
-                    account = new Bip44PubOnlyAccount(context, keyManager, _network, accountBacking, _wapi);
-                }
+                    // Generate the context for the account
+                    Bip44AccountContext context;
+                    if (hdKeyNode.isPrivateHdKeyNode()) {
+                        context = new Bip44AccountContext(keyManager.getAccountId(), accountIndex, false,
+                                                          ACCOUNT_TYPE_UNRELATED_X_PRIV, secureStorage.getSubId());
+                    } else {
+                        context = new Bip44AccountContext(keyManager.getAccountId(), accountIndex, false,
+                                                          ACCOUNT_TYPE_UNRELATED_X_PUB, secureStorage.getSubId());
+                    }
+                    if (isUpgrade) {
+                        _backing.upgradeBip44AccountContext(context);
+                    } else {
+                        _backing.createBip44AccountContext(context);
+                    }
+                    // Get the backing for the new account
+                    Bip44AccountBacking accountBacking = getBip44AccountBacking(context.getId());
 
-                // Finally persist context and add account
-                context.persist(accountBacking);
-                _backing.setTransactionSuccessful();
-                if (!isUpgrade) {
-                    addAccount(account);
-                    _bip44Accounts.add(account);
-                } else {
-                    _walletAccounts.remove(id);
-                    _walletAccounts.put(id, account);
-                }
-                if (_spvBalanceFetcher != null) {
-                    Bip44BCHAccount bip44BCHAccount;
+                    // Create actual account
+                    Bip44Account account;
                     if (hdKeyNode.isPrivateHdKeyNode()) {
-                        bip44BCHAccount = new Bip44BCHAccount(context, keyManager, _network, accountBacking, _wapi, _spvBalanceFetcher);
+                        account = new Bip44Account(context, keyManager, _network, accountBacking, _wapi);
                     } else {
-                        bip44BCHAccount = new Bip44BCHPubOnlyAccount(context, keyManager, _network, accountBacking, _wapi, _spvBalanceFetcher);
+                        account = new Bip44PubOnlyAccount(context, keyManager, _network, accountBacking, _wapi);
                     }
-                    addAccount(bip44BCHAccount);
-                    _btcToBchAccounts.put(account.getId(), bip44BCHAccount.getId());
-                    _spvBalanceFetcher.requestTransactionsFromUnrelatedAccountAsync(bip44BCHAccount.getId().toString(), /* IntentContract.UNRELATED_ACCOUNT_TYPE_HD */ 1);
+
+                    // Finally persist context and add account
+                    context.persist(accountBacking);
+                    _backing.setTransactionSuccessful();
+                    if (!isUpgrade) {
+                        addAccount(account);
+                        _bip44Accounts.add(account);
+                    } else {
+                        _walletAccounts.remove(id);
+                        addAccount(account);
+                    }
+                    if (_spvBalanceFetcher != null) {
+                        Bip44BCHAccount bip44BCHAccount;
+                        if (hdKeyNode.isPrivateHdKeyNode()) {
+                            bip44BCHAccount = new Bip44BCHAccount(context, keyManager, _network, accountBacking, _wapi, _spvBalanceFetcher);
+                        } else {
+                            bip44BCHAccount = new Bip44BCHPubOnlyAccount(context, keyManager, _network, accountBacking, _wapi, _spvBalanceFetcher);
+                        }
+                        addAccount(bip44BCHAccount);
+                        _btcToBchAccounts.put(account.getId(), bip44BCHAccount.getId());
+                        _spvBalanceFetcher.requestTransactionsFromUnrelatedAccountAsync(bip44BCHAccount.getId().toString(), /* IntentContract.UNRELATED_ACCOUNT_TYPE_HD */ 1);
+                    }
+                    return id;
+                } finally {
+                    _backing.endTransaction();
                 }
-                return id;
-            } finally {
-                _backing.endTransaction();
             }
         }
     }
@@ -380,37 +401,40 @@ public class WalletManager {
      * @param id the ID of the account to delete.
      */
     public void deleteUnrelatedAccount(UUID id, KeyCipher cipher) throws InvalidKeyCipher {
-        synchronized (_walletAccounts) {
-            WalletAccount account = _walletAccounts.get(id);
-            if (account instanceof AbstractAccount) {
-                AbstractAccount abstractAccount = (AbstractAccount) account;
-                abstractAccount.setEventHandler(null);
-            }
-            if (account instanceof SingleAddressAccount) {
-                SingleAddressAccount singleAddressAccount = (SingleAddressAccount) account;
-                singleAddressAccount.forgetPrivateKey(cipher);
-                _backing.deleteSingleAddressAccountContext(id);
-                _walletAccounts.remove(id);
-                if (_spvBalanceFetcher != null) {
-                    _spvBalanceFetcher.requestUnrelatedAccountRemoval(id.toString());
-                }
-            } else if (account instanceof Bip44Account) {
-                Bip44Account hdAccount = (Bip44Account) account;
-                if (hdAccount.isDerivedFromInternalMasterseed()) {
-                    throw new RuntimeException("cant delete masterseed based accounts");
+        // Wait for a running synchronization of the account to finish
+        synchronized (getSyncLock(id)) {
+            synchronized (_walletAccounts) {
+                WalletAccount account = _walletAccounts.get(id);
+                if (account instanceof AbstractAccount) {
+                    AbstractAccount abstractAccount = (AbstractAccount) account;
+                    abstractAccount.setEventHandler(null);
                 }
-                hdAccount.clearBacking();
-                _bip44Accounts.remove(hdAccount);
-                _backing.deleteBip44AccountContext(id);
-                _walletAccounts.remove(id);
-                if (_spvBalanceFetcher != null) {
-                    _spvBalanceFetcher.requestHdWalletAccountRemoval(((Bip44Account) account).getAccountIndex());
+                if (account instanceof SingleAddressAccount) {
+                    SingleAddressAccount singleAddressAccount = (SingleAddressAccount) account;
+                    singleAddressAccount.forgetPrivateKey(cipher);
+                    _backing.deleteSingleAddressAccountContext(id);
+                    _walletAccounts.remove(id);
+                    if (_spvBalanceFetcher != null) {
+                        _spvBalanceFetcher.requestUnrelatedAccountRemoval(id.toString());
+                    }
+                } else if (account instanceof Bip44Account) {
+                    Bip44Account hdAccount = (Bip44Account) account;
+                    if (hdAccount.isDerivedFromInternalMasterseed()) {
+                        throw new RuntimeException("cant delete masterseed based accounts");
+                    }
+                    hdAccount.clearBacking();
+                    _bip44Accounts.remove(hdAccount);
+                    _backing.deleteBip44AccountContext(id);
+                    _walletAccounts.remove(id);
+                    if (_spvBalanceFetcher != null) {
+                        _spvBalanceFetcher.requestHdWalletAccountRemoval(((Bip44Account) account).getAccountIndex());
+                    }
                 }
-            }
 
-            if (_btcToBchAccounts.containsKey(id)) {
-                _walletAccounts.remove(_btcToBchAccounts.get(id));
-                _btcToBchAccounts.remove(id);
+                if (_btcToBchAccounts.containsKey(id)) {
+                    _walletAccounts.remove(_btcToBchAccounts.get(id));
+                    _btcToBchAccounts.remove(id);
+                }
             }
         }
     }
@@ -817,6 +841,7 @@ public class WalletManager {
     public void addAccount(AbstractAccount account) {
         synchronized (_walletAccounts) {
             account.setEventHandler(_accountEventManager);
+            account.setTransactionCache(_transactionCache);
             _walletAccounts.put(account.getId(), account);
             _logger.logInfo("Account Added: " + account.getId());
         }
@@ -844,24 +869,24 @@ public class WalletManager {
         public void run() {
             setStateAndNotify(State.SYNCHRONIZING);
             try {
-                synchronized (_walletAccounts) {
-                    if (isNetworkConnected) {
-                        if (!syncMode.ignoreMinerFeeFetch &&
-                                (_lastFeeEstimations == null || _lastFeeEstimations.isExpired(MIN_AGE_FEE_ESTIMATION))) {
-                            // only fetch the fee estimations if the latest available fee is older than MIN_AGE_FEE_ESTIMATION
-                            fetchFeeEstimation();
-                        }
-
-                        // If we have any lingering outgoing transactions broadcast them now
-                        // this function goes over all accounts - it is reasonable to
-                        // exclude this from SyncMode.onlyActiveAccount behaviour
-                        if (!broadcastOutgoingTransactions()) {
-                            return;
-                        }
+                // Accounts are not held by a global lock while synchronizing,
+                // every account is locked on its own, see synchronizeAccounts()
+                if (isNetworkConnected) {
+                    if (!syncMode.ignoreMinerFeeFetch &&
+                            (_lastFeeEstimations == null || _lastFeeEstimations.isExpired(MIN_AGE_FEE_ESTIMATION))) {
+                        // only fetch the fee estimations if the latest available fee is older than MIN_AGE_FEE_ESTIMATION
+                        fetchFeeEstimation();
+                    }
 
-                        // Synchronize selected accounts with the blockchain
-                        synchronize();
+                    // If we have any lingering outgoing transactions broadcast them now
+                    // this function goes over all accounts - it is reasonable to
+                    // exclude this from SyncMode.onlyActiveAccount behaviour
+                    if (!broadcastOutgoingTransactions()) {
+                        return;
                     }
+
+                    // Synchronize selected accounts with the blockchain
+                    synchronize();
                 }
             } finally {
                 _synchronizationThread = null;
@@ -912,44 +937,113 @@ public class WalletManager {
                     _spvBalanceFetcher.requestTransactionsFromUnrelatedAccountAsync(currentAccount.getId().toString(), /* IntentContract.UNRELATED_ACCOUNT_TYPE_SA */ 2);
                 }
 
+                List<WalletAccount> accounts = new ArrayList<>();
                 for (WalletAccount account : getAllAccounts()) {
                     if (account instanceof Bip44Account) {
                         //_transactionFetcher.getTransactions(((Bip44Account) account).getAccountIndex());
                     } else {
                         // TODO: 28.09.17 sync single address accounts using spv, too.
                         if (!account.isArchived()) {
-                            if (!account.synchronize(syncMode)) {
-                                // We failed to sync due to API error, we will have to try
-                                // again later
-                                return false;
-                            }
+                            accounts.add(account);
                         }
                     }
                 }
+                if (!synchronizeAccounts(accounts)) {
+                    // We failed to sync due to API error, we will have to try
+                    // again later
+                    return false;
+                }
             }
             if (syncMode.onlyActiveAccount) {
                 if (currentAccount != null && !currentAccount.isArchived() && !(currentAccount instanceof Bip44BCHAccount || currentAccount instanceof SingleAddressBCHAccount)) {
-                    return currentAccount.synchronize(syncMode);
+                    return synchronizeAccount(currentAccount);
                 }
             } else {
+                List<WalletAccount> accounts = new ArrayList<>();
                 for (WalletAccount account : getAllAccounts()) {
                     if (account.isArchived() || account instanceof Bip44BCHAccount || account instanceof SingleAddressBCHAccount) {
                         continue;
                     }
-                    if (!account.synchronize(syncMode)) {
-                        // We failed to sync due to API error, we will have to try
-                        // again later
-                        return false;
-                    }
+                    accounts.add(account);
                 }
+                // We failed to sync due to API error if this returns false, we
+                // will have to try again later
+                return synchronizeAccounts(accounts);
             }
             return true;
         }
+
+        private boolean synchronizeAccount(WalletAccount account) {
+            synchronized (getSyncLock(account.getId())) {
+                return account.synchronize(syncMode);
+            }
+        }
+
+        /**
+         * Synchronize accounts concurrently on the sync executor, so that the
+         * whole sync takes about as long as the slowest account. Returns false
+         * if any of them failed, after all of them have finished.
+         */
+        private boolean synchronizeAccounts(List<WalletAccount> accounts) {
+            if (accounts.size() == 1) {
+                return synchronizeAccount(accounts.get(0));
+            }
+            List<Future<Boolean>> futures = new ArrayList<>(accounts.size());
+            for (final WalletAccount account : accounts) {
+                futures.add(SyncExecutorHolder.EXECUTOR.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return synchronizeAccount(account);
+                    }
+                }));
+            }
+            boolean success = true;
+            try {
+                for (Future<Boolean> future : futures) {
+                    success &= future.get();
+                }
+            } catch (InterruptedException e) {
+                for (Future<Boolean> future : futures) {
+                    future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+            return success;
+        }
+    }
+
+    /**
+     * Get the lock that is held while an account synchronizes. It is taken
+     * before _walletAccounts where both are needed.
+     */
+    private Object getSyncLock(UUID accountId) {
+        Object lock = _syncLocks.get(accountId);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = _syncLocks.putIfAbsent(accountId, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
     }
 
     private Iterable<WalletAccount> getAllAccounts() {
         //New collection should be created to prevent concurrent modification of iterator
-        Map<UUID, WalletAccount> walletAccounts = new HashMap<>(_walletAccounts);
+        Map<UUID, WalletAccount> walletAccounts;
+        synchronized (_walletAccounts) {
+            walletAccounts = new HashMap<>(_walletAccounts);
+        }
         Map<UUID, WalletAccount> extraAccounts = new HashMap<>(_extraAccounts);
         return Iterables.concat(walletAccounts.values(), extraAccounts.values());
     }
@@ -1075,14 +1169,17 @@ public class WalletManager {
             return;
         }
         //if its unused, we can remove it from the manager
-        synchronized (_walletAccounts) {
-            _bip44Accounts.remove(account);
-            _walletAccounts.remove(account.getId());
-            _backing.deleteBip44AccountContext(account.getId());
-
-            if (_btcToBchAccounts.containsKey(account.getId())) {
-                _walletAccounts.remove(_btcToBchAccounts.get(account.getId()));
-                _btcToBchAccounts.remove(account.getId());
+        // Wait for a running synchronization of the account to finish
+        synchronized (getSyncLock(account.getId())) {
+            synchronized (_walletAccounts) {
+                _bip44Accounts.remove(account);
+                _walletAccounts.remove(account.getId());
+                _backing.deleteBip44AccountContext(account.getId());
+
+                if (_btcToBchAccounts.containsKey(account.getId())) {
+                    _walletAccounts.remove(_btcToBchAccounts.get(account.getId()));
+                    _btcToBchAccounts.remove(account.getId());
+                }
             }
         }
     }
@@ -25,9 +25,14 @@ import com.google.common.collect.Lists;
 import com.mrd.bitlib.crypto.InMemoryPrivateKey;
 import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.AddressIndex;
+import com.mrd.bitlib.model.HdDerivedAddress;
+import com.mrd.bitlib.model.LazyTransaction;
 import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
 import com.mrd.bitlib.model.ScriptOutput;
 import com.mrd.bitlib.model.Transaction;
+import com.mrd.bitlib.model.Transaction.TransactionParsingException;
 import com.mrd.bitlib.model.TransactionOutput;
 import com.mrd.bitlib.util.Sha256Hash;
 import com.mycelium.wapi.api.Wapi;
@@ -47,8 +52,10 @@ import com.mycelium.wapi.wallet.WalletManager.Event;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 public class Bip44Account extends AbstractAccount implements ExportableAccount {
@@ -57,12 +64,16 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
     private static final int EXTERNAL_MINIMAL_ADDRESS_LOOK_AHEAD_LENGTH = 4;
     private static final int INTERNAL_MINIMAL_ADDRESS_LOOK_AHEAD_LENGTH = 1;
     private static final long FORCED_DISCOVERY_INTERVAL_MS = 1000 * 60 * 60 * 24;
+    // How many look ahead windows discovery queries in one round trip
+    private static final int DISCOVERY_LOOK_AHEAD_WINDOWS = 4;
 
     protected final Bip44AccountBacking _backing;
     protected Bip44AccountContext _context;
     protected final Bip44AccountKeyManager _keyManager;
     protected BiMap<Address, Integer> _externalAddresses;
     protected BiMap<Address, Integer> _internalAddresses;
+    // All addresses of both chains, for ownership lookups
+    protected AddressIndex _ownAddresses;
     private Address _currentReceivingAddress;
     protected volatile boolean _isSynchronizing;
 
@@ -84,6 +95,7 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
     protected void initAddressCache() {
         _externalAddresses = HashBiMap.create();
         _internalAddresses = HashBiMap.create();
+        _ownAddresses = new AddressIndex();
     }
 
     @Override
@@ -140,8 +152,10 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
 
     private void clearInternalStateInt(boolean isArchived) {
         _backing.clear();
+        resetLocalBalance();
         _externalAddresses.clear();
         _internalAddresses.clear();
+        _ownAddresses.clear();
         _currentReceivingAddress = null;
         _cachedBalance = null;
         initContext(isArchived);
@@ -210,12 +224,29 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
             }
             addressMap = _externalAddresses;
         }
-        while (index >= 0) {
-            if (addressMap.inverse().containsKey(index)) {
-                return;
-            }
-            addressMap.put(Preconditions.checkNotNull(_keyManager.getAddress(isChangeChain, index)), index);
-            index--;
+        ensureAddressIndex(isChangeChain, index);
+    }
+
+    /**
+     * Ensure that all addresses of a chain up to and including the given index
+     * have been created
+     */
+    private void ensureAddressIndex(boolean isChangeChain, int index) {
+        BiMap<Address, Integer> addressMap = isChangeChain ? _internalAddresses : _externalAddresses;
+        // Walk down to the highest index we already know and derive everything above it in bulk
+        int fromIndex = index;
+        while (fromIndex >= 0 && !addressMap.inverse().containsKey(fromIndex)) {
+            fromIndex--;
+        }
+        fromIndex++;
+        if (fromIndex > index) {
+            return;
+        }
+        List<HdDerivedAddress> addresses = _keyManager.deriveRange(isChangeChain, fromIndex, index);
+        for (int i = 0; i < addresses.size(); i++) {
+            Address address = Preconditions.checkNotNull(addresses.get(i));
+            addressMap.put(address, fromIndex + i);
+            _ownAddresses.put(address, fromIndex + i);
         }
     }
 
@@ -263,11 +294,7 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
 
     protected List<Address> getAddressRange(boolean isChangeChain, int fromIndex, int toIndex) {
         fromIndex = Math.max(0, fromIndex); // clip at zero
-        ArrayList<Address> ret = new ArrayList<Address>(toIndex - fromIndex + 1);
-        for (int i = fromIndex; i <= toIndex; i++) {
-            ret.add(_keyManager.getAddress(isChangeChain, i));
-        }
-        return ret;
+        return new ArrayList<Address>(_keyManager.deriveRange(isChangeChain, fromIndex, toIndex));
     }
 
     @Override
@@ -314,18 +341,69 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
     }
 
     /**
-     * Do a look ahead on the external address chain. If any transactions were
-     * found the external and internal last active addresses are updated, and the
+     * Do a look ahead on both address chains. If any transactions were found
+     * the external and internal last active addresses are updated, and the
      * transactions and their parent transactions stored.
+     * <p>
+     * To save round trips the look ahead covers the next
+     * DISCOVERY_LOOK_AHEAD_WINDOWS windows at once. The transactions found are
+     * then only kept as far as the address gap limit would have reached them
+     * one window at a time, see {@link #selectWithinGapLimit(List, int, int)}.
      *
-     * @return true if something was found and the call should be repeated.
+     * @return true if the look ahead has to be repeated from the new last
+     * active addresses.
      * @throws com.mycelium.wapi.api.WapiException
      */
     private boolean doDiscovery() throws WapiException {
-        // Ensure that all addresses in the look ahead window have been created
+        int lastExternalIndex = _context.getLastExternalIndexWithActivity();
+        int lastInternalIndex = _context.getLastInternalIndexWithActivity();
+        int externalEnd = lastExternalIndex + EXTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH * DISCOVERY_LOOK_AHEAD_WINDOWS;
+        int internalEnd = lastInternalIndex + INTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH * DISCOVERY_LOOK_AHEAD_WINDOWS;
+
+        // Ensure that all addresses in the look ahead windows have been created
         ensureAddressIndexes();
+        ensureAddressIndex(false, externalEnd);
+        ensureAddressIndex(true, internalEnd);
 
         // Make look ahead address list
+        List<Address> lookAhead = new ArrayList<>(externalEnd - lastExternalIndex + internalEnd - lastInternalIndex);
+        final BiMap<Integer, Address> extInverse = _externalAddresses.inverse();
+        final BiMap<Integer, Address> intInverse = _internalAddresses.inverse();
+        for (int i = lastExternalIndex + 1; i <= externalEnd; i++) {
+            lookAhead.add(extInverse.get(i));
+        }
+        for (int i = lastInternalIndex + 1; i <= internalEnd; i++) {
+            lookAhead.add(intInverse.get(i));
+        }
+
+        // Do look ahead query
+        final QueryTransactionInventoryResponse result = _wapi.queryTransactionInventory(
+                new QueryTransactionInventoryRequest(Wapi.VERSION, lookAhead, Wapi.MAX_TRANSACTION_INVENTORY_LIMIT)).getResult();
+        setBlockChainHeight(result.height);
+        List<Sha256Hash> ids = result.txIds;
+        if (ids.isEmpty()) {
+            // nothing found, not even in the first window
+            return false;
+        }
+        if (ids.size() >= Wapi.MAX_TRANSACTION_INVENTORY_LIMIT) {
+            // The inventory may be cut off, so an empty window cannot be told
+            // apart from a missing one. Fall back to a single window.
+            return doDiscoveryForAddresses(getLookAheadWindow());
+        }
+
+        Collection<TransactionExApi> transactions = getTransactionsBatched(ids).getResult().transactions;
+        handleNewExternalTransactions(selectWithinGapLimit(new ArrayList<>(transactions), lastExternalIndex, lastInternalIndex));
+
+        // Repeat if the window after the new last active addresses reaches
+        // beyond what was queried
+        return _context.getLastExternalIndexWithActivity() + EXTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH > externalEnd
+                || _context.getLastInternalIndexWithActivity() + INTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH > internalEnd;
+    }
+
+    /**
+     * Get the addresses of a single look ahead window on both chains
+     */
+    private List<Address> getLookAheadWindow() {
         List<Address> lookAhead = new ArrayList<>(EXTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH + INTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH);
 
         final BiMap<Integer, Address> extInverse = _externalAddresses.inverse();
@@ -340,7 +418,78 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
         for (int i = 0; i < INTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH; i++) {
             lookAhead.add(intInverse.get(_context.getLastInternalIndexWithActivity() + 1 + i));
         }
-        return doDiscoveryForAddresses(lookAhead);
+        return lookAhead;
+    }
+
+    /**
+     * Select the transactions that discovery would have found by looking ahead
+     * one window at a time. A transaction is found if it pays to an address
+     * within the look ahead of the last active addresses, which then move up
+     * to the highest address it pays to, or if it spends one of our outputs of
+     * a transaction that has been found, or one of our stored unspent outputs.
+     * Transactions that only concern addresses beyond the gap limit are
+     * dropped.
+     */
+    private List<TransactionExApi> selectWithinGapLimit(List<TransactionExApi> transactions, int lastExternalIndex,
+                                                        int lastInternalIndex) {
+        List<LazyTransaction> parsed = new ArrayList<>(transactions.size());
+        for (TransactionExApi tex : transactions) {
+            try {
+                parsed.add(LazyTransaction.fromBytes(tex.binary));
+            } catch (TransactionParsingException e) {
+                // We hit a transaction that we cannot parse. Log but otherwise ignore it
+                _logger.logError("Received transaction that we cannot parse: " + tex.txid.toString());
+                parsed.add(null);
+            }
+        }
+
+        List<TransactionExApi> selected = new ArrayList<>(transactions.size());
+        // Our outputs of the selected transactions
+        Set<OutPoint> foundOutputs = new HashSet<>();
+        boolean[] isSelected = new boolean[transactions.size()];
+        boolean hasChanged = true;
+        while (hasChanged) {
+            hasChanged = false;
+            for (int i = 0; i < transactions.size(); i++) {
+                LazyTransaction transaction = parsed.get(i);
+                if (isSelected[i] || transaction == null) {
+                    continue;
+                }
+                boolean isFound = false;
+                int maxExternalIndex = -1;
+                int maxInternalIndex = -1;
+                List<Integer> ownOutputs = new ArrayList<>();
+                for (int j = 0; j < transaction.getOutputCount(); j++) {
+                    Address address = transaction.getOutput(j).script.getAddress(_network);
+                    Integer externalIndex = _externalAddresses.get(address);
+                    Integer internalIndex = _internalAddresses.get(address);
+                    if (externalIndex != null) {
+                        isFound |= externalIndex <= lastExternalIndex + EXTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH;
+                        maxExternalIndex = Math.max(maxExternalIndex, externalIndex);
+                        ownOutputs.add(j);
+                    } else if (internalIndex != null) {
+                        isFound |= internalIndex <= lastInternalIndex + INTERNAL_FULL_ADDRESS_LOOK_AHEAD_LENGTH;
+                        maxInternalIndex = Math.max(maxInternalIndex, internalIndex);
+                        ownOutputs.add(j);
+                    }
+                }
+                for (int j = 0; j < transaction.getInputCount() && !isFound; j++) {
+                    OutPoint outPoint = transaction.getOutPoint(j);
+                    isFound = foundOutputs.contains(outPoint) || _backing.getUnspentOutput(outPoint) != null;
+                }
+                if (isFound) {
+                    isSelected[i] = true;
+                    selected.add(transactions.get(i));
+                    for (int index : ownOutputs) {
+                        foundOutputs.add(new OutPoint(transaction.getId(), index));
+                    }
+                    lastExternalIndex = Math.max(lastExternalIndex, maxExternalIndex);
+                    lastInternalIndex = Math.max(lastInternalIndex, maxInternalIndex);
+                    hasChanged = true;
+                }
+            }
+        }
+        return selected;
     }
 
     @Override
@@ -393,6 +542,10 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
             }
         }
 
+        if (mode.mode == SyncMode.Mode.FULL_SYNC) {
+            // Check the tracked balance once in a while
+            verifyLocalBalance();
+        }
         updateLocalBalance();
 
         _context.persistIfNecessary(_backing);
@@ -468,7 +621,25 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
     @Override
     public boolean isMine(Address address) {
         Preconditions.checkNotNull(address);
-        return _internalAddresses.containsKey(address) || _externalAddresses.containsKey(address);
+        return _ownAddresses.contains(address);
+    }
+
+    @Override
+    protected boolean isMine(ScriptOutput script) {
+        byte[] scriptBytes = script.getScriptBytes();
+        if (AddressIndex.isHashScript(scriptBytes)) {
+            return _ownAddresses.getByScript(scriptBytes, _network) != -1;
+        }
+        return super.isMine(script);
+    }
+
+    @Override
+    protected boolean isMine(byte[] script) {
+        if (AddressIndex.isHashScript(script)) {
+            // Look up the hash in the script without parsing it
+            return _ownAddresses.getByScript(script, _network) != -1;
+        }
+        return super.isMine(script);
     }
 
     @Override
@@ -17,6 +17,7 @@
 package com.mycelium.wapi.wallet.bip44;
 
 import com.google.common.base.Preconditions;
+import com.mrd.bitlib.crypto.HdKeyDeriver;
 import com.mrd.bitlib.crypto.HdKeyNode;
 import com.mrd.bitlib.crypto.InMemoryPrivateKey;
 import com.mrd.bitlib.crypto.PublicKey;
@@ -32,6 +33,8 @@ import com.mycelium.wapi.wallet.KeyCipher;
 import com.mycelium.wapi.wallet.SecureKeyValueStore;
 import com.mycelium.wapi.wallet.SecureSubKeyValueStore;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -165,12 +168,7 @@ public class Bip44AccountKeyManager {
       // See if we have it in the store
       byte[] id = getLeafNodeId(_network, _accountIndex, isChangeChain, index, false);
       byte[] addressNodeBytes = _secureKeyValueStore.getPlaintextValue(id);
-      final Bip44Address path = HdKeyPath
-            .BIP44
-            .getCoinTypeBitcoin(_network.isTestnet())
-            .getAccount(_accountIndex)
-            .getChain(!isChangeChain)
-            .getAddress(index);
+      final Bip44Address path = getAddressPath(isChangeChain, index);
 
       if (addressNodeBytes != null) {
          // We have it already, no need to calculate it
@@ -186,6 +184,69 @@ public class Bip44AccountKeyManager {
       return address;
    }
 
+   /**
+    * Get the addresses for a range of indexes. Addresses that are not in the store yet are derived in bulk, on
+    * multiple threads for large ranges, and then stored for next time.
+    *
+    * @param isChangeChain whether to use the change chain or the external chain
+    * @param fromIndex     the first index
+    * @param toIndex       the last index, inclusive
+    * @return the addresses in index order
+    */
+   public List<HdDerivedAddress> deriveRange(boolean isChangeChain, int fromIndex, int toIndex) {
+      HdDerivedAddress[] addresses = new HdDerivedAddress[Math.max(0, toIndex - fromIndex + 1)];
+
+      // Take what we have from the store and find the span of indexes that is missing
+      int firstMissing = -1;
+      int lastMissing = -1;
+      for (int i = 0; i < addresses.length; i++) {
+         int index = fromIndex + i;
+         byte[] addressNodeBytes = _secureKeyValueStore.getPlaintextValue(getLeafNodeId(_network, _accountIndex, isChangeChain, index, false));
+         if (addressNodeBytes != null) {
+            addresses[i] = bytesToAddress(addressNodeBytes, getAddressPath(isChangeChain, index));
+         } else {
+            if (firstMissing == -1) {
+               firstMissing = index;
+            }
+            lastMissing = index;
+         }
+      }
+
+      if (firstMissing != -1) {
+         // Calculate the missing span from the chain node in one go, and store the results for next time
+         HdKeyNode chainNode = isChangeChain ? _publicChangeChainRoot : _publicExternalChainRoot;
+         List<HdKeyNode> publicLeafNodes = HdKeyDeriver.deriveRange(chainNode, firstMissing, lastMissing);
+         for (int index = firstMissing; index <= lastMissing; index++) {
+            if (addresses[index - fromIndex] != null) {
+               continue;
+            }
+            HdKeyNode publicLeafNode = publicLeafNodes.get(index - firstMissing);
+            _secureKeyValueStore.storePlaintextValue(getLeafNodeId(_network, _accountIndex, isChangeChain, index, true),
+                  publicLeafNode.toCustomByteFormat());
+            HdDerivedAddress address = new HdDerivedAddress(publicLeafNode.getPublicKey().toAddress(_network),
+                  getAddressPath(isChangeChain, index));
+            _secureKeyValueStore.storePlaintextValue(getLeafNodeId(_network, _accountIndex, isChangeChain, index, false),
+                  addressToBytes(address));
+            addresses[index - fromIndex] = address;
+         }
+      }
+
+      List<HdDerivedAddress> result = new ArrayList<>(addresses.length);
+      for (HdDerivedAddress address : addresses) {
+         result.add(address);
+      }
+      return result;
+   }
+
+   private Bip44Address getAddressPath(boolean isChangeChain, int index) {
+      return HdKeyPath
+            .BIP44
+            .getCoinTypeBitcoin(_network.isTestnet())
+            .getAccount(_accountIndex)
+            .getChain(!isChangeChain)
+            .getAddress(index);
+   }
+
    protected static byte[] getAccountNodeId(NetworkParameters network, int accountIndex) {
       // Create a compact unique account ID
       byte[] id = new byte[1 + 1 + 4];
@@ -106,6 +106,7 @@ public class SingleAddressAccount extends AbstractAccount implements ExportableA
 
    private void clearInternalStateInt(boolean isArchived) {
       _backing.clear();
+      resetLocalBalance();
       _context = new SingleAddressAccountContext(_context.getId(), _context.getAddress(), isArchived, 0);
       _context.persist(_backing);
       _cachedBalance = null;
@@ -139,6 +140,11 @@ public class SingleAddressAccount extends AbstractAccount implements ExportableA
             }
          }
 
+         if (mode.mode == SyncMode.Mode.FULL_SYNC) {
+            // Check the tracked balance once in a while
+            verifyLocalBalance();
+         }
+
          // recalculate cached Balance
          updateLocalBalance();
 
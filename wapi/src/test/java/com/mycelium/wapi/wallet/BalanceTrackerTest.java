@@ -0,0 +1,187 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.model.ScriptInput;
+import com.mrd.bitlib.model.ScriptOutputStandard;
+import com.mrd.bitlib.model.Transaction;
+import com.mrd.bitlib.model.TransactionInput;
+import com.mrd.bitlib.model.TransactionOutput;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.WapiLogger;
+import com.mycelium.wapi.model.TransactionEx;
+import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.wallet.single.SingleAddressAccountContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class BalanceTrackerTest {
+   private static final byte[] OUR_HASH = new byte[20];
+   private static final byte[] THEIR_HASH = new byte[]{
+         1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20};
+   private static final byte[] OURS = new ScriptOutputStandard(OUR_HASH).getScriptBytes();
+
+   private AccountBacking backing;
+   private BalanceTracker tracker;
+
+   @Before
+   public void setup() {
+      InMemoryWalletManagerBacking walletBacking = new InMemoryWalletManagerBacking();
+      UUID id = UUID.randomUUID();
+      walletBacking.createSingleAddressAccountContext(new SingleAddressAccountContext(id,
+            Address.fromStandardBytes(OUR_HASH, NetworkParameters.productionNetwork), false, 0));
+      backing = walletBacking.getSingleAddressAccountBacking(id);
+      tracker = newTracker();
+   }
+
+   private BalanceTracker newTracker() {
+      return new BalanceTracker(backing, WapiLogger.NULL_LOGGER) {
+         @Override
+         boolean isMine(TransactionOutputEx output) {
+            return isMine(output.script);
+         }
+
+         @Override
+         boolean isMine(byte[] script) {
+            return Arrays.equals(OURS, script);
+         }
+
+         @Override
+         boolean isFromMe(Sha256Hash txid) {
+            Transaction t = TransactionEx.toTransaction(backing.getTransaction(txid));
+            if (t == null) {
+               return false;
+            }
+            for (TransactionInput input : t.inputs) {
+               TransactionOutputEx parent = backing.getParentTransactionOutput(input.outPoint);
+               if (parent != null && isMine(parent)) {
+                  return true;
+               }
+            }
+            return false;
+         }
+
+         @Override
+         boolean isColuDustOutput(TransactionOutputEx output) {
+            return false;
+         }
+      };
+   }
+
+   private static Transaction transaction(OutPoint spent, long... values) {
+      TransactionInput[] inputs = {new TransactionInput(spent, ScriptInput.EMPTY)};
+      TransactionOutput[] outputs = new TransactionOutput[values.length];
+      for (int i = 0; i < values.length; i++) {
+         // negative values pay to someone else
+         byte[] hash = values[i] < 0 ? THEIR_HASH : OUR_HASH;
+         outputs[i] = new TransactionOutput(Math.abs(values[i]), new ScriptOutputStandard(hash));
+      }
+      return new Transaction(1, inputs, outputs, 0, false);
+   }
+
+   private void putTransaction(Transaction t, int height) {
+      backing.putTransaction(new TransactionEx(t.getId(), t.getHash(), height, 0, t.toBytes()));
+      tracker.onTransactionChanged(t.getId());
+   }
+
+   private void putUnspent(Transaction t, int index, int height) {
+      TransactionOutput output = t.outputs[index];
+      TransactionOutputEx unspent = new TransactionOutputEx(new OutPoint(t.getId(), index), height, output.value,
+            output.script.getScriptBytes(), false);
+      backing.putUnspentOutput(unspent);
+      tracker.onUnspentOutputPut(unspent);
+   }
+
+   private void spend(Transaction t, int index) {
+      OutPoint outPoint = new OutPoint(t.getId(), index);
+      backing.putParentTransactionOutput(backing.getUnspentOutput(outPoint));
+      backing.deleteUnspentOutput(outPoint);
+      tracker.onUnspentOutputDeleted(outPoint);
+   }
+
+   private void assertBalance(long confirmed, long pendingReceiving, long pendingSending, long pendingChange) {
+      tracker.update();
+      assertEquals(confirmed, tracker.getConfirmed());
+      assertEquals(pendingReceiving, tracker.getPendingReceiving());
+      assertEquals(pendingSending, tracker.getPendingSending());
+      assertEquals(pendingChange, tracker.getPendingChange());
+
+      // Reading everything from the backing gives the same
+      BalanceTracker fresh = newTracker();
+      fresh.update();
+      assertEquals(confirmed, fresh.getConfirmed());
+      assertEquals(pendingReceiving, fresh.getPendingReceiving());
+      assertEquals(pendingSending, fresh.getPendingSending());
+      assertEquals(pendingChange, fresh.getPendingChange());
+   }
+
+   @Test
+   public void tracksSpendingAndConfirmations() {
+      Transaction funding = transaction(new OutPoint(Sha256Hash.ZERO_HASH, 7), 100000);
+      putTransaction(funding, 10);
+      putUnspent(funding, 0, 10);
+      assertBalance(100000, 0, 0, 0);
+
+      // Send some and get change, storing the change before its transaction
+      Transaction payment = transaction(new OutPoint(funding.getId(), 0), -30000, 60000);
+      spend(funding, 0);
+      putUnspent(payment, 1, -1);
+      putTransaction(payment, -1);
+      assertBalance(0, 0, 100000, 60000);
+
+      // Spend the change before the payment confirms
+      Transaction second = transaction(new OutPoint(payment.getId(), 1), -55000);
+      spend(payment, 1);
+      putTransaction(second, -1);
+      assertBalance(0, 0, 40000 + 60000, 0);
+
+      // Confirm the first payment, and receive something
+      putTransaction(payment, 11);
+      Transaction incoming = transaction(new OutPoint(Sha256Hash.ZERO_HASH, 8), 5000, -1000);
+      putTransaction(incoming, -1);
+      putUnspent(incoming, 0, -1);
+      assertBalance(0, 5000, 60000, 0);
+
+      // Confirm everything
+      putTransaction(second, 12);
+      putTransaction(incoming, 12);
+      putUnspent(incoming, 0, 12);
+      assertBalance(5000, 0, 0, 0);
+   }
+
+   @Test
+   public void parentsStoredLater() {
+      Transaction funding = transaction(new OutPoint(Sha256Hash.ZERO_HASH, 7), 100000);
+      Transaction payment = transaction(new OutPoint(funding.getId(), 0), -30000, 60000);
+      putUnspent(payment, 1, -1);
+      putTransaction(payment, -1);
+      // Without the parent output the change looks like it is received
+      assertBalance(0, 60000, 0, 0);
+
+      backing.putParentTransactionOutput(new TransactionOutputEx(new OutPoint(funding.getId(), 0), 10, 100000,
+            OURS, false));
+      tracker.onTransactionChanged(payment.getId());
+      assertBalance(0, 0, 100000, 60000);
+   }
+
+   @Test
+   public void resetReadsBackingAgain() {
+      Transaction funding = transaction(new OutPoint(Sha256Hash.ZERO_HASH, 7), 100000);
+      putTransaction(funding, 10);
+      putUnspent(funding, 0, 10);
+      assertBalance(100000, 0, 0, 0);
+
+      // a change that was not reported
+      backing.deleteUnspentOutput(new OutPoint(funding.getId(), 0));
+      tracker.update();
+      assertEquals(100000, tracker.getConfirmed());
+      tracker.reset();
+      assertBalance(0, 0, 0, 0);
+   }
+}
@@ -0,0 +1,130 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.WapiLogger;
+import com.mycelium.wapi.api.Wapi;
+import com.mycelium.wapi.api.WapiResponse;
+import com.mycelium.wapi.api.request.QueryTransactionInventoryRequest;
+import com.mycelium.wapi.api.request.QueryUnspentOutputsRequest;
+import com.mycelium.wapi.api.response.QueryTransactionInventoryResponse;
+import com.mycelium.wapi.api.response.QueryUnspentOutputsResponse;
+import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.wallet.single.PublicPrivateKeyStore;
+import com.mycelium.wapi.wallet.single.SingleAddressAccount;
+import com.mycelium.wapi.wallet.single.SingleAddressAccountContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Accounts of a wallet manager synchronize at the same time, and must not
+ * overwrite each other's contexts in the shared backing
+ */
+public class ConcurrentSyncTest {
+   private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+   private static final int ACCOUNTS = 8;
+   private static final int ROUNDS = 50;
+
+   private InMemoryWalletManagerBacking backing;
+   private final List<SingleAddressAccount> accounts = new ArrayList<>();
+   private final Map<Address, Integer> addressIndexes = new HashMap<>();
+   private volatile int round;
+
+   @Before
+   public void setup() {
+      Wapi wapi = mock(Wapi.class);
+      when(wapi.getLogger()).thenReturn(WapiLogger.NULL_LOGGER);
+      when(wapi.queryUnspentOutputs(any(QueryUnspentOutputsRequest.class))).thenAnswer(
+            new Answer<WapiResponse<QueryUnspentOutputsResponse>>() {
+               @Override
+               public WapiResponse<QueryUnspentOutputsResponse> answer(InvocationOnMock invocation) {
+                  QueryUnspentOutputsRequest request = (QueryUnspentOutputsRequest) invocation.getArguments()[0];
+                  int height = expectedHeight(request.addresses.iterator().next());
+                  return new WapiResponse<>(new QueryUnspentOutputsResponse(height,
+                        Collections.<TransactionOutputEx>emptyList()));
+               }
+            });
+      when(wapi.queryTransactionInventory(any(QueryTransactionInventoryRequest.class))).thenAnswer(
+            new Answer<WapiResponse<QueryTransactionInventoryResponse>>() {
+               @Override
+               public WapiResponse<QueryTransactionInventoryResponse> answer(InvocationOnMock invocation) {
+                  QueryTransactionInventoryRequest request = (QueryTransactionInventoryRequest) invocation.getArguments()[0];
+                  int height = expectedHeight(request.addresses.get(0));
+                  return new WapiResponse<>(new QueryTransactionInventoryResponse(height,
+                        Collections.<Sha256Hash>emptyList()));
+               }
+            });
+
+      backing = new InMemoryWalletManagerBacking();
+      PublicPrivateKeyStore keyStore = new PublicPrivateKeyStore(
+            new SecureKeyValueStore(backing, mock(RandomSource.class)));
+      for (int i = 0; i < ACCOUNTS; i++) {
+         byte[] hash = new byte[20];
+         hash[0] = (byte) i;
+         Address address = Address.fromStandardBytes(hash, NETWORK);
+         addressIndexes.put(address, i);
+         SingleAddressAccountContext context = new SingleAddressAccountContext(
+               SingleAddressAccount.calculateId(address), address, false, 0);
+         backing.createSingleAddressAccountContext(context);
+         accounts.add(new SingleAddressAccount(context, keyStore, NETWORK,
+               backing.getSingleAddressAccountBacking(context.getId()), wapi));
+      }
+   }
+
+   private int expectedHeight(Address address) {
+      return round * 100 + addressIndexes.get(address);
+   }
+
+   @Test
+   public void accountsKeepTheirOwnContexts() throws Exception {
+      ExecutorService executor = Executors.newFixedThreadPool(ACCOUNTS);
+      try {
+         for (round = 1; round <= ROUNDS; round++) {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (final SingleAddressAccount account : accounts) {
+               futures.add(executor.submit(new Callable<Boolean>() {
+                  @Override
+                  public Boolean call() {
+                     return account.doSynchronization(SyncMode.NORMAL);
+                  }
+               }));
+            }
+            for (Future<Boolean> future : futures) {
+               assertTrue(future.get());
+            }
+
+            Collection<SingleAddressAccountContext> contexts = backing.loadSingleAddressAccountContexts();
+            assertEquals(ACCOUNTS, contexts.size());
+            for (SingleAddressAccountContext context : contexts) {
+               assertEquals(expectedHeight(context.getAddress()), context.getBlockHeight());
+            }
+            for (SingleAddressAccount account : accounts) {
+               assertEquals(expectedHeight(account.getAddress()), account.getBlockChainHeight());
+            }
+         }
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+}
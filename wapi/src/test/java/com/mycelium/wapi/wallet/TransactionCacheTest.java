@@ -0,0 +1,224 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.model.ScriptInput;
+import com.mrd.bitlib.model.ScriptOutputStandard;
+import com.mrd.bitlib.model.Transaction;
+import com.mrd.bitlib.model.TransactionInput;
+import com.mrd.bitlib.model.TransactionOutput;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.WapiLogger;
+import com.mycelium.wapi.api.Wapi;
+import com.mycelium.wapi.api.WapiResponse;
+import com.mycelium.wapi.api.lib.TransactionExApi;
+import com.mycelium.wapi.api.request.GetTransactionsRequest;
+import com.mycelium.wapi.api.response.GetTransactionsResponse;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TransactionCacheTest {
+   /**
+    * Answers getTransactions from a fixed set of transactions and records the
+    * requested ids
+    */
+   private static class FakeServer implements Answer<WapiResponse<GetTransactionsResponse>> {
+      final Map<Sha256Hash, TransactionExApi> transactions = new HashMap<>();
+      final List<Set<Sha256Hash>> requests = Collections.synchronizedList(new ArrayList<Set<Sha256Hash>>());
+      volatile CountDownLatch release;
+
+      @Override
+      public WapiResponse<GetTransactionsResponse> answer(InvocationOnMock invocation) throws Throwable {
+         GetTransactionsRequest request = (GetTransactionsRequest) invocation.getArguments()[0];
+         requests.add(new HashSet<>(request.txIds));
+         if (release != null) {
+            release.await();
+         }
+         List<TransactionExApi> result = new ArrayList<>();
+         for (Sha256Hash txid : request.txIds) {
+            if (transactions.containsKey(txid)) {
+               result.add(transactions.get(txid));
+            }
+         }
+         return new WapiResponse<>(new GetTransactionsResponse(result));
+      }
+
+      Wapi wapi() {
+         Wapi wapi = mock(Wapi.class);
+         when(wapi.getLogger()).thenReturn(WapiLogger.NULL_LOGGER);
+         when(wapi.getTransactions(any(GetTransactionsRequest.class))).thenAnswer(this);
+         return wapi;
+      }
+   }
+
+   private static TransactionExApi transaction(int index, int height) {
+      TransactionInput[] inputs = {new TransactionInput(new OutPoint(Sha256Hash.ZERO_HASH, index), ScriptInput.EMPTY)};
+      TransactionOutput[] outputs = {new TransactionOutput(1000, new ScriptOutputStandard(new byte[20]))};
+      Transaction t = new Transaction(1, inputs, outputs, 0, false);
+      return new TransactionExApi(t.getId(), t.getHash(), height, 0, t.toBytes(), -1, false);
+   }
+
+   private static Set<Sha256Hash> ids(GetTransactionsResponse response) {
+      Set<Sha256Hash> ids = new HashSet<>();
+      for (TransactionExApi tx : response.transactions) {
+         ids.add(tx.txid);
+      }
+      return ids;
+   }
+
+   @Test
+   public void cachesConfirmedTransactions() throws Exception {
+      FakeServer server = new FakeServer();
+      TransactionExApi confirmed = transaction(0, 100);
+      TransactionExApi unconfirmed = transaction(1, -1);
+      server.transactions.put(confirmed.txid, confirmed);
+      server.transactions.put(unconfirmed.txid, unconfirmed);
+      TransactionCache cache = new TransactionCache(server.wapi());
+
+      List<Sha256Hash> both = Arrays.asList(confirmed.txid, unconfirmed.txid);
+      assertEquals(new HashSet<>(both), ids(cache.getTransactions(both).getResult()));
+      assertEquals(new HashSet<>(both), ids(cache.getTransactions(both).getResult()));
+      assertEquals(2, server.requests.size());
+      assertEquals(Collections.singleton(unconfirmed.txid), server.requests.get(1));
+   }
+
+   @Test
+   public void dropsLeastRecentlyUsed() throws Exception {
+      FakeServer server = new FakeServer();
+      TransactionExApi[] transactions = new TransactionExApi[3];
+      for (int i = 0; i < transactions.length; i++) {
+         transactions[i] = transaction(i, 100);
+         server.transactions.put(transactions[i].txid, transactions[i]);
+      }
+      // room for two of them
+      TransactionCache cache = new TransactionCache(server.wapi(), transactions[0].binary.length * 2);
+
+      cache.getTransactions(Arrays.asList(transactions[0].txid, transactions[1].txid)).getResult();
+      cache.getTransactions(Collections.singletonList(transactions[0].txid)).getResult();
+      cache.getTransactions(Collections.singletonList(transactions[2].txid)).getResult();
+      assertEquals(2, server.requests.size());
+
+      cache.getTransactions(Arrays.asList(transactions[0].txid, transactions[1].txid)).getResult();
+      assertEquals(3, server.requests.size());
+      assertEquals(Collections.singleton(transactions[1].txid), server.requests.get(2));
+   }
+
+   @Test
+   public void returnsDuplicateIdsOnce() throws Exception {
+      FakeServer server = new FakeServer();
+      TransactionExApi confirmed = transaction(0, 100);
+      server.transactions.put(confirmed.txid, confirmed);
+      TransactionCache cache = new TransactionCache(server.wapi());
+
+      List<Sha256Hash> twice = Arrays.asList(confirmed.txid, confirmed.txid);
+      assertEquals(1, cache.getTransactions(twice).getResult().transactions.size());
+      assertEquals(1, cache.getTransactions(twice).getResult().transactions.size());
+      assertEquals(1, server.requests.size());
+   }
+
+   @Test
+   public void refreshUpdatesHeightAfterReorg() throws Exception {
+      FakeServer server = new FakeServer();
+      TransactionExApi tx = transaction(0, 100);
+      server.transactions.put(tx.txid, tx);
+      TransactionCache cache = new TransactionCache(server.wapi());
+      List<Sha256Hash> txids = Collections.singletonList(tx.txid);
+      cache.getTransactions(txids).getResult();
+
+      // A reorg moves it to another block
+      server.transactions.put(tx.txid, new TransactionExApi(tx.txid, tx.hash, 101, 0, tx.binary, -1, false));
+      assertEquals(100, cache.getTransactions(txids).getResult().transactions.iterator().next().height);
+      assertEquals(101, cache.getTransactions(txids, true).getResult().transactions.iterator().next().height);
+      assertEquals(101, cache.getTransactions(txids).getResult().transactions.iterator().next().height);
+      assertEquals(2, server.requests.size());
+
+      // Or back to the memory pool
+      server.transactions.put(tx.txid, new TransactionExApi(tx.txid, tx.hash, -1, 0, tx.binary, -1, false));
+      assertEquals(-1, cache.getTransactions(txids, true).getResult().transactions.iterator().next().height);
+      assertEquals(-1, cache.getTransactions(txids).getResult().transactions.iterator().next().height);
+      assertEquals(4, server.requests.size());
+   }
+
+   @Test
+   public void failsOnTransactionsWithWrongHash() throws Exception {
+      FakeServer server = new FakeServer();
+      TransactionExApi good = transaction(0, 100);
+      TransactionExApi other = transaction(1, 100);
+      TransactionExApi bad = new TransactionExApi(other.txid, other.hash, 100, 0, good.binary, -1, false);
+      server.transactions.put(good.txid, good);
+      server.transactions.put(bad.txid, bad);
+      TransactionCache cache = new TransactionCache(server.wapi());
+
+      assertEquals(Wapi.ERROR_CODE_INTERNAL_SERVER_ERROR,
+            cache.getTransactions(Arrays.asList(good.txid, bad.txid)).getErrorCode());
+      // Nothing of the failed request was cached
+      server.transactions.remove(bad.txid);
+      assertEquals(Collections.singleton(good.txid),
+            ids(cache.getTransactions(Collections.singletonList(good.txid)).getResult()));
+      assertEquals(2, server.requests.size());
+   }
+
+   @Test
+   public void concurrentRequestsShareOneFetch() throws Exception {
+      final FakeServer server = new FakeServer();
+      final TransactionExApi first = transaction(0, 100);
+      final TransactionExApi second = transaction(1, 100);
+      server.transactions.put(first.txid, first);
+      server.transactions.put(second.txid, second);
+      server.release = new CountDownLatch(1);
+      final TransactionCache cache = new TransactionCache(server.wapi());
+
+      final AtomicReference<Set<Sha256Hash>> results = new AtomicReference<>();
+      Thread fetching = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               results.set(ids(cache.getTransactions(Arrays.asList(first.txid, second.txid)).getResult()));
+            } catch (Exception e) {
+               throw new RuntimeException(e);
+            }
+         }
+      });
+      fetching.start();
+      while (server.requests.isEmpty()) {
+         Thread.sleep(1);
+      }
+
+      // Wait for the running request instead of sending another
+      Thread waiting = new Thread(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            server.release.countDown();
+         }
+      });
+      waiting.start();
+      Set<Sha256Hash> waited = ids(cache.getTransactions(Collections.singletonList(second.txid)).getResult());
+      fetching.join();
+      waiting.join();
+
+      assertEquals(Collections.singleton(second.txid), waited);
+      assertTrue(results.get().contains(first.txid));
+      assertEquals(1, server.requests.size());
+   }
+}
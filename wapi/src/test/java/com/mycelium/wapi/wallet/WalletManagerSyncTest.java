@@ -0,0 +1,330 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.crypto.HdKeyNode;
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.WapiLogger;
+import com.mycelium.wapi.api.Wapi;
+import com.mycelium.wapi.api.WapiResponse;
+import com.mycelium.wapi.api.request.QueryTransactionInventoryRequest;
+import com.mycelium.wapi.api.request.QueryUnspentOutputsRequest;
+import com.mycelium.wapi.api.response.QueryTransactionInventoryResponse;
+import com.mycelium.wapi.api.response.QueryUnspentOutputsResponse;
+import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.wallet.bip44.Bip44Account;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives the synchronizer of a wallet manager, which synchronizes several
+ * accounts on a pool and every account under its own lock
+ */
+public class WalletManagerSyncTest {
+   private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+   private static final int HEIGHT = 500000;
+   private static final long TIMEOUT_SECONDS = 10;
+   // How long to wait for something that must not happen
+   private static final long BLOCKED_MILLIS = 200;
+   // The thread that the wallet manager synchronizes on
+   private static final String SYNC_THREAD = "Synchronizer";
+
+   private WalletManager walletManager;
+   // The addresses whose requests fail, or throw
+   private final Set<Address> failing = Collections.synchronizedSet(new HashSet<Address>());
+   private final Set<Address> throwing = Collections.synchronizedSet(new HashSet<Address>());
+   private final RuntimeException crash = new RuntimeException("crash");
+   // While set, other requests wait for it
+   private volatile CountDownLatch gate;
+   private volatile CountDownLatch entered = new CountDownLatch(0);
+   private final Set<String> syncThreads = Collections.synchronizedSet(new HashSet<String>());
+   private volatile CountDownLatch ready;
+   private final CountDownLatch connectionError = new CountDownLatch(1);
+   private final ExecutorService executor = Executors.newCachedThreadPool();
+
+   @Before
+   public void setup() {
+      Wapi wapi = mock(Wapi.class);
+      when(wapi.getLogger()).thenReturn(WapiLogger.NULL_LOGGER);
+      when(wapi.queryUnspentOutputs(any(QueryUnspentOutputsRequest.class))).thenAnswer(
+            new Answer<WapiResponse<QueryUnspentOutputsResponse>>() {
+               @Override
+               public WapiResponse<QueryUnspentOutputsResponse> answer(InvocationOnMock invocation) throws Throwable {
+                  QueryUnspentOutputsRequest request = (QueryUnspentOutputsRequest) invocation.getArguments()[0];
+                  if (!enter(request.addresses.iterator().next())) {
+                     return new WapiResponse<>(Wapi.ERROR_CODE_NO_SERVER_CONNECTION, null);
+                  }
+                  return new WapiResponse<>(new QueryUnspentOutputsResponse(HEIGHT,
+                        Collections.<TransactionOutputEx>emptyList()));
+               }
+            });
+      when(wapi.queryTransactionInventory(any(QueryTransactionInventoryRequest.class))).thenAnswer(
+            new Answer<WapiResponse<QueryTransactionInventoryResponse>>() {
+               @Override
+               public WapiResponse<QueryTransactionInventoryResponse> answer(InvocationOnMock invocation) throws Throwable {
+                  QueryTransactionInventoryRequest request = (QueryTransactionInventoryRequest) invocation.getArguments()[0];
+                  if (!enter(request.addresses.get(0))) {
+                     return new WapiResponse<>(Wapi.ERROR_CODE_NO_SERVER_CONNECTION, null);
+                  }
+                  return new WapiResponse<>(new QueryTransactionInventoryResponse(HEIGHT,
+                        Collections.<Sha256Hash>emptyList()));
+               }
+            });
+
+      InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      SecureKeyValueStore store = new SecureKeyValueStore(backing, mock(RandomSource.class));
+      walletManager = new WalletManager(store, backing, NETWORK, wapi, null, null, true);
+      walletManager.addObserver(new WalletManager.Observer() {
+         @Override
+         public void onWalletStateChanged(WalletManager wallet, WalletManager.State state) {
+            if (state == WalletManager.State.READY) {
+               ready.countDown();
+            }
+         }
+
+         @Override
+         public void onAccountEvent(WalletManager wallet, UUID accountId, WalletManager.Event events) {
+            if (events == WalletManager.Event.SERVER_CONNECTION_ERROR) {
+               connectionError.countDown();
+            }
+         }
+      });
+   }
+
+   @After
+   public void tearDown() {
+      executor.shutdownNow();
+   }
+
+   /**
+    * Answer a request for an address
+    *
+    * @return false if the request fails
+    */
+   private boolean enter(Address address) throws InterruptedException {
+      if (failing.contains(address)) {
+         return false;
+      }
+      if (throwing.contains(address)) {
+         throw crash;
+      }
+      syncThreads.add(Thread.currentThread().getName());
+      entered.countDown();
+      CountDownLatch gate = this.gate;
+      if (gate != null) {
+         gate.await();
+      }
+      return true;
+   }
+
+   private UUID createAccount(int index) {
+      byte[] hash = new byte[20];
+      hash[0] = (byte) index;
+      return walletManager.createSingleAddressAccount(Address.fromStandardBytes(hash, NETWORK));
+   }
+
+   private List<UUID> createAccounts(int count) {
+      List<UUID> ids = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+         ids.add(createAccount(i));
+      }
+      return ids;
+   }
+
+   private Address getAddress(UUID id) {
+      return walletManager.getAccount(id).getReceivingAddress().get();
+   }
+
+   private int getHeight(UUID id) {
+      return ((AbstractAccount) walletManager.getAccount(id)).getBlockChainHeight();
+   }
+
+   private void startSynchronization() {
+      ready = new CountDownLatch(1);
+      walletManager.startSynchronization(SyncMode.NORMAL_ALL_ACCOUNTS_FORCED);
+   }
+
+   private void awaitReady() throws InterruptedException {
+      assertTrue(ready.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+   }
+
+   private void synchronize() throws InterruptedException {
+      startSynchronization();
+      awaitReady();
+   }
+
+   private static HdKeyNode accountRoot() {
+      byte[] seed = new byte[32];
+      for (int i = 0; i < seed.length; i++) {
+         seed[i] = (byte) i;
+      }
+      return HdKeyNode.fromSeed(seed);
+   }
+
+   @Test
+   public void synchronizesAccountsConcurrently() throws Exception {
+      List<UUID> ids = createAccounts(3);
+      gate = new CountDownLatch(1);
+      entered = new CountDownLatch(3);
+      startSynchronization();
+
+      // All of them are in flight at once, on the pool
+      assertTrue(entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      assertFalse(syncThreads.contains(SYNC_THREAD));
+      gate.countDown();
+      awaitReady();
+      for (UUID id : ids) {
+         assertEquals(HEIGHT, getHeight(id));
+      }
+   }
+
+   @Test
+   public void failsOnlyAfterAllAccountsFinished() throws Exception {
+      List<UUID> ids = createAccounts(3);
+      failing.add(getAddress(ids.get(0)));
+      gate = new CountDownLatch(1);
+      entered = new CountDownLatch(2);
+      startSynchronization();
+
+      // The failed account does not end the sync of the others
+      assertTrue(entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      assertTrue(connectionError.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      assertFalse(ready.await(BLOCKED_MILLIS, TimeUnit.MILLISECONDS));
+      gate.countDown();
+      awaitReady();
+      assertEquals(0, getHeight(ids.get(0)));
+      assertEquals(HEIGHT, getHeight(ids.get(1)));
+      assertEquals(HEIGHT, getHeight(ids.get(2)));
+   }
+
+   @Test
+   public void rethrowsWhatAnAccountThrew() throws Exception {
+      List<UUID> ids = createAccounts(2);
+      throwing.add(getAddress(ids.get(1)));
+      final AtomicReference<Throwable> thrown = new AtomicReference<>();
+      final CountDownLatch died = new CountDownLatch(1);
+      Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+      Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+         @Override
+         public void uncaughtException(Thread t, Throwable e) {
+            thrown.set(e);
+            died.countDown();
+         }
+      });
+      try {
+         synchronize();
+         assertTrue(died.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      } finally {
+         Thread.setDefaultUncaughtExceptionHandler(previous);
+      }
+      // Not wrapped in an ExecutionException
+      assertSame(crash, thrown.get());
+
+      // The next sync starts again
+      throwing.clear();
+      synchronize();
+      assertEquals(HEIGHT, getHeight(ids.get(1)));
+   }
+
+   @Test
+   public void synchronizesSingleAccountOnSyncThread() throws Exception {
+      UUID id = createAccount(0);
+      synchronize();
+      assertEquals(Collections.singleton(SYNC_THREAD), syncThreads);
+      assertEquals(HEIGHT, getHeight(id));
+   }
+
+   @Test
+   public void deletingWaitsForRunningSync() throws Exception {
+      final UUID id = createAccount(0);
+      assertWaitsForRunningSync(new Callable<Void>() {
+         @Override
+         public Void call() throws Exception {
+            walletManager.deleteUnrelatedAccount(id, AesKeyCipher.defaultKeyCipher());
+            return null;
+         }
+      });
+      assertFalse(walletManager.hasAccount(id));
+   }
+
+   @Test
+   public void upgradingWaitsForRunningSync() throws Exception {
+      final HdKeyNode accountRoot = accountRoot();
+      final UUID id = walletManager.createUnrelatedBip44Account(accountRoot.getPublicNode());
+      assertFalse(walletManager.getAccount(id).canSpend());
+      assertWaitsForRunningSync(new Callable<Void>() {
+         @Override
+         public Void call() {
+            assertEquals(id, walletManager.createUnrelatedBip44Account(accountRoot));
+            return null;
+         }
+      });
+      assertTrue(walletManager.getAccount(id).canSpend());
+   }
+
+   @Test
+   public void removingWaitsForRunningSync() throws Exception {
+      final UUID id = walletManager.createUnrelatedBip44Account(accountRoot().getPublicNode());
+      final Bip44Account account = (Bip44Account) walletManager.getAccount(id);
+      assertWaitsForRunningSync(new Callable<Void>() {
+         @Override
+         public Void call() {
+            walletManager.removeUnusedBip44Account(account);
+            return null;
+         }
+      });
+      assertFalse(walletManager.hasAccount(id));
+   }
+
+   /**
+    * Check that a change of the only account waits for its running sync,
+    * without holding the accounts of the wallet manager meanwhile
+    */
+   private void assertWaitsForRunningSync(Callable<Void> change) throws Exception {
+      gate = new CountDownLatch(1);
+      entered = new CountDownLatch(1);
+      startSynchronization();
+      assertTrue(entered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+      Future<Void> changed = executor.submit(change);
+      Thread.sleep(BLOCKED_MILLIS);
+      assertFalse(changed.isDone());
+      // Taking the sync lock before the accounts keeps them available
+      executor.submit(new Callable<List<UUID>>() {
+         @Override
+         public List<UUID> call() {
+            return walletManager.getAccountIds();
+         }
+      }).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+      gate.countDown();
+      changed.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      awaitReady();
+   }
+}
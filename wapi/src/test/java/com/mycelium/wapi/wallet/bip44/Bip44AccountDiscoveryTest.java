@@ -0,0 +1,280 @@
+package com.mycelium.wapi.wallet.bip44;
+
+import com.mrd.bitlib.crypto.Bip39;
+import com.mrd.bitlib.crypto.HdKeyNode;
+import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.model.OutPoint;
+import com.mrd.bitlib.model.ScriptInput;
+import com.mrd.bitlib.model.ScriptOutputStandard;
+import com.mrd.bitlib.model.Transaction;
+import com.mrd.bitlib.model.TransactionInput;
+import com.mrd.bitlib.model.TransactionOutput;
+import com.mrd.bitlib.model.hdpath.HdKeyPath;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.WapiLogger;
+import com.mycelium.wapi.api.Wapi;
+import com.mycelium.wapi.api.WapiResponse;
+import com.mycelium.wapi.api.lib.TransactionExApi;
+import com.mycelium.wapi.api.request.GetTransactionsRequest;
+import com.mycelium.wapi.api.request.QueryTransactionInventoryRequest;
+import com.mycelium.wapi.api.request.QueryUnspentOutputsRequest;
+import com.mycelium.wapi.api.response.GetTransactionsResponse;
+import com.mycelium.wapi.api.response.QueryTransactionInventoryResponse;
+import com.mycelium.wapi.api.response.QueryUnspentOutputsResponse;
+import com.mycelium.wapi.model.TransactionOutputEx;
+import com.mycelium.wapi.wallet.AesKeyCipher;
+import com.mycelium.wapi.wallet.Bip44AccountBacking;
+import com.mycelium.wapi.wallet.InMemoryWalletManagerBacking;
+import com.mycelium.wapi.wallet.KeyCipher;
+import com.mycelium.wapi.wallet.SecureKeyValueStore;
+import com.mycelium.wapi.wallet.SyncMode;
+import com.mycelium.wapi.wallet.WalletManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Discovery looks ahead several windows in one request, and must keep only
+ * what a look ahead of one window at a time would have found
+ */
+public class Bip44AccountDiscoveryTest {
+    private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+    private static final String MASTER_SEED_WORDS = "degree rain vendor coffee push math onion inside pyramid blush stick treat";
+    private static final int BLOCK_HEIGHT = 500;
+    private static final int TRANSACTION_HEIGHT = 100;
+    private static final int LOOK_AHEAD = 20;
+
+    private HdKeyNode accountRoot;
+    private WapiLogger logger;
+    private Bip44Account account;
+    private Bip44AccountBacking backing;
+    // Everything the server knows about, in the order it reports them
+    private final Map<Sha256Hash, TransactionExApi> serverTransactions = new LinkedHashMap<>();
+    // Transactions that the server reports for an address whatever they contain
+    private final Map<Sha256Hash, Address> claimedInventory = new LinkedHashMap<>();
+    private final List<QueryTransactionInventoryRequest> inventoryRequests = new ArrayList<>();
+    private Transaction funding;
+    private int nextFundingOutput;
+
+    @Before
+    public void setup() throws Exception {
+        Bip39.MasterSeed masterSeed = Bip39.generateSeedFromWordList(MASTER_SEED_WORDS.split(" "), "");
+        accountRoot = HdKeyNode.fromSeed(masterSeed.getBip32Seed()).createChildNode(HdKeyPath.valueOf("m/44'/0'/0'"));
+
+        // A foreign transaction whose outputs fund the test transactions
+        TransactionOutput[] outputs = new TransactionOutput[50];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = new TransactionOutput(100000, new ScriptOutputStandard(foreignAddress().getTypeSpecificBytes()));
+        }
+        funding = new Transaction(1, new TransactionInput[]{
+                new TransactionInput(new OutPoint(Sha256Hash.ZERO_HASH, 1), ScriptInput.EMPTY)}, outputs, 0, false);
+        putOnServer(funding);
+
+        Wapi wapi = mock(Wapi.class);
+        logger = mock(WapiLogger.class);
+        when(wapi.getLogger()).thenReturn(logger);
+        when(wapi.queryTransactionInventory(any(QueryTransactionInventoryRequest.class))).thenAnswer(
+                new Answer<WapiResponse<QueryTransactionInventoryResponse>>() {
+                    @Override
+                    public WapiResponse<QueryTransactionInventoryResponse> answer(InvocationOnMock invocation) throws Exception {
+                        QueryTransactionInventoryRequest request = (QueryTransactionInventoryRequest) invocation.getArguments()[0];
+                        inventoryRequests.add(request);
+                        return new WapiResponse<>(new QueryTransactionInventoryResponse(BLOCK_HEIGHT,
+                                inventory(new HashSet<>(request.addresses))));
+                    }
+                });
+        when(wapi.getTransactions(any(GetTransactionsRequest.class))).thenAnswer(
+                new Answer<WapiResponse<GetTransactionsResponse>>() {
+                    @Override
+                    public WapiResponse<GetTransactionsResponse> answer(InvocationOnMock invocation) {
+                        GetTransactionsRequest request = (GetTransactionsRequest) invocation.getArguments()[0];
+                        List<TransactionExApi> result = new ArrayList<>();
+                        for (Sha256Hash txid : request.txIds) {
+                            if (serverTransactions.containsKey(txid)) {
+                                result.add(serverTransactions.get(txid));
+                            }
+                        }
+                        return new WapiResponse<>(new GetTransactionsResponse(result));
+                    }
+                });
+        when(wapi.queryUnspentOutputs(any(QueryUnspentOutputsRequest.class))).thenReturn(
+                new WapiResponse<>(new QueryUnspentOutputsResponse(BLOCK_HEIGHT,
+                        Collections.<TransactionOutputEx>emptyList())));
+
+        InMemoryWalletManagerBacking walletBacking = new InMemoryWalletManagerBacking();
+        SecureKeyValueStore store = new SecureKeyValueStore(walletBacking, mock(RandomSource.class));
+        KeyCipher cipher = AesKeyCipher.defaultKeyCipher();
+        WalletManager walletManager = new WalletManager(store, walletBacking, NETWORK, wapi, null, null, false);
+        walletManager.configureBip32MasterSeed(masterSeed, cipher);
+        UUID accountId = walletManager.createAdditionalBip44Account(cipher);
+        account = (Bip44Account) walletManager.getAccount(accountId);
+        backing = walletBacking.getBip44AccountBacking(accountId);
+    }
+
+    private Address address(boolean isChange, int index) {
+        return accountRoot.createChildNode(isChange ? 1 : 0).createChildNode(index).getPublicKey().toAddress(NETWORK);
+    }
+
+    private static Address foreignAddress() {
+        return Address.fromStandardBytes(new byte[20], NETWORK);
+    }
+
+    private void putOnServer(Transaction t) {
+        byte[] binary = t.toBytes();
+        serverTransactions.put(t.getId(), new TransactionExApi(t.getId(), t.getHash(), TRANSACTION_HEIGHT, 0, binary, -1, false));
+    }
+
+    /**
+     * Put a transaction on the server that spends the given output and pays
+     * to the given addresses
+     */
+    private Transaction send(OutPoint spent, Address... to) {
+        TransactionOutput[] outputs = new TransactionOutput[to.length];
+        for (int i = 0; i < to.length; i++) {
+            outputs[i] = new TransactionOutput(10000, new ScriptOutputStandard(to[i].getTypeSpecificBytes()));
+        }
+        Transaction t = new Transaction(1, new TransactionInput[]{new TransactionInput(spent, ScriptInput.EMPTY)},
+                outputs, 0, false);
+        putOnServer(t);
+        return t;
+    }
+
+    private Transaction receive(Address... to) {
+        return send(new OutPoint(funding.getId(), nextFundingOutput++), to);
+    }
+
+    /**
+     * The transactions that pay to or spend from the given addresses, newest
+     * first
+     */
+    private List<Sha256Hash> inventory(Set<Address> addresses) throws Exception {
+        List<Sha256Hash> ids = new ArrayList<>();
+        for (TransactionExApi tex : serverTransactions.values()) {
+            if (claimedInventory.containsKey(tex.txid)) {
+                if (addresses.contains(claimedInventory.get(tex.txid))) {
+                    ids.add(0, tex.txid);
+                }
+                continue;
+            }
+            Transaction t = Transaction.fromBytes(tex.binary);
+            boolean touches = false;
+            for (TransactionOutput output : t.outputs) {
+                touches |= addresses.contains(output.script.getAddress(NETWORK));
+            }
+            for (TransactionInput input : t.inputs) {
+                TransactionExApi parent = serverTransactions.get(input.outPoint.txid);
+                if (parent != null) {
+                    TransactionOutput spent = Transaction.fromBytes(parent.binary).outputs[input.outPoint.index];
+                    touches |= addresses.contains(spent.script.getAddress(NETWORK));
+                }
+            }
+            if (touches) {
+                ids.add(0, tex.txid);
+            }
+        }
+        return ids;
+    }
+
+    private void synchronize() {
+        assertTrue(account.doSynchronization(SyncMode.FULL_SYNC_CURRENT_ACCOUNT_FORCED));
+    }
+
+    @Test
+    public void findsActivityAcrossWindowsUpToTheGapLimit() throws Exception {
+        List<Transaction> withinGap = new ArrayList<>();
+        for (int index = 0; index <= 3 * LOOK_AHEAD; index += LOOK_AHEAD) {
+            withinGap.add(receive(address(false, index)));
+        }
+        // One address too far after the last active one
+        Transaction beyondGap = receive(address(false, 3 * LOOK_AHEAD + LOOK_AHEAD + 1));
+
+        synchronize();
+
+        for (Transaction t : withinGap) {
+            assertTrue(backing.hasTransaction(t.getId()));
+        }
+        assertFalse(backing.hasTransaction(beyondGap.getId()));
+        assertEquals(address(false, 3 * LOOK_AHEAD + 1), account.getReceivingAddress().get());
+        assertEquals(address(true, 0), account.getChangeAddress());
+
+        // The first request already covered four windows on each chain,
+        // the second one the windows after the last active address
+        assertEquals(2 * 4 * LOOK_AHEAD, inventoryRequests.get(0).addresses.size());
+        assertTrue(inventoryRequests.get(1).addresses.contains(address(false, 3 * LOOK_AHEAD + 1)));
+        assertEquals(2, countDiscoveryRequests());
+    }
+
+    @Test
+    public void findsTransactionsThatSpendFoundOutputs() throws Exception {
+        Transaction received = receive(address(false, 5), address(true, 3));
+        // pays to someone else only
+        Transaction spending = send(new OutPoint(received.getId(), 0), foreignAddress());
+
+        // Activity beyond the gap limit, and a transaction spending from it
+        Transaction beyondGap = receive(address(false, 5 + LOOK_AHEAD + 1));
+        Transaction spendingBeyondGap = send(new OutPoint(beyondGap.getId(), 0), foreignAddress());
+
+        synchronize();
+
+        assertTrue(backing.hasTransaction(received.getId()));
+        assertTrue(backing.hasTransaction(spending.getId()));
+        assertFalse(backing.hasTransaction(beyondGap.getId()));
+        assertFalse(backing.hasTransaction(spendingBeyondGap.getId()));
+        assertEquals(address(false, 6), account.getReceivingAddress().get());
+        assertEquals(address(true, 4), account.getChangeAddress());
+        assertEquals(1, countDiscoveryRequests());
+    }
+
+    @Test
+    public void logsTransactionsThatCannotBeParsed() throws Exception {
+        Transaction received = receive(address(false, 0));
+        byte[] garbage = {1, 2, 3};
+        Sha256Hash garbageId = HashUtils.doubleSha256(garbage).reverse();
+        serverTransactions.put(garbageId, new TransactionExApi(garbageId, garbageId, TRANSACTION_HEIGHT, 0, garbage, -1, false));
+
+        // The server claims that it concerns our first address
+        claimedInventory.put(garbageId, address(false, 0));
+
+        synchronize();
+
+        assertTrue(backing.hasTransaction(received.getId()));
+        assertFalse(backing.hasTransaction(garbageId));
+        verify(logger).logError(contains(garbageId.toString()));
+    }
+
+    /**
+     * Count the inventory requests of the discovery, which are the ones that
+     * reach beyond the current address windows
+     */
+    private int countDiscoveryRequests() {
+        int count = 0;
+        for (QueryTransactionInventoryRequest request : inventoryRequests) {
+            if (request.addresses.size() > 2 * LOOK_AHEAD) {
+                count++;
+            }
+        }
+        return count;
+    }
+}